@@ -0,0 +1,184 @@
+package com.example.hexeditor;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Буфер добавленных данных для {@link PieceTable}.
+ * Данные только дописываются в конец и хранятся блоками фиксированного размера,
+ * поэтому уже записанные байты никогда не перемещаются и не копируются.
+ * В памяти держатся блоки в пределах бюджета; при его превышении самые старые
+ * заполненные блоки вытесняются во временный файл и дальше читаются из него,
+ * поэтому вставка гигабайт не исчерпывает кучу. Данные правок, выпавших
+ * из истории отмены, остаются в буфере до закрытия файла: на них могут
+ * ссылаться снимки и записи журнала.
+ * Дописывает один поток за раз, а чтение идет без блокировок: массив блоков
+ * заменяется копией при росте и публикуется через volatile, а длина
+ * публикуется после того, как данные и новый блок записаны. Чтение сначала
+ * берет длину, поэтому видит все байты до нее; вытесненный блок убирается
+ * из массива только после записи в файл.
+ */
+public class AddBuffer implements Closeable {
+    /** Размер блока буфера (1 МиБ) */
+    public static final int CHUNK_SIZE = 1024 * 1024;
+    /** Бюджет памяти буфера; задается свойством {@code hexeditor.added.budget} */
+    public static final long DEFAULT_MEMORY_BUDGET = Long.getLong("hexeditor.added.budget", 256L * 1024 * 1024);
+
+    private static final Logger logger = LoggerFactory.getLogger(AddBuffer.class);
+
+    /** Блоки в памяти; null — блок в файле вытеснения по смещению index * CHUNK_SIZE */
+    private volatile AtomicReferenceArray<byte[]> chunks = new AtomicReferenceArray<>(16);
+    private int chunkCount;
+    /** Первый блок, еще не вытесненный в файл */
+    private int firstInMemory;
+    private final int maxInMemory;
+    private volatile long length;
+    private File spillFile;
+    private volatile FileChannel spill;
+
+    public AddBuffer() {
+        this(DEFAULT_MEMORY_BUDGET);
+    }
+
+    /**
+     * @param memoryBudget объем памяти под блоки в байтах (не меньше одного блока)
+     */
+    public AddBuffer(long memoryBudget) {
+        this.maxInMemory = (int) Math.max(1, Math.min(Integer.MAX_VALUE, memoryBudget / CHUNK_SIZE));
+    }
+
+    /**
+     * Дописывает данные в конец буфера.
+     *
+     * @param src данные
+     * @param off смещение в массиве
+     * @param len количество байт
+     * @return смещение записанных данных в буфере
+     * @throws IOException если не удалось вытеснить блок в файл
+     */
+    public synchronized long append(byte[] src, int off, int len) throws IOException {
+        long start = length;
+        long end = start;
+        int done = 0;
+        while (done < len) {
+            int index = (int) (end % CHUNK_SIZE);
+            if (index == 0) {
+                if (chunkCount - firstInMemory == maxInMemory) {
+                    spillOldest();
+                }
+                if (chunkCount == chunks.length()) {
+                    AtomicReferenceArray<byte[]> grown = new AtomicReferenceArray<>(chunkCount * 2);
+                    for (int i = firstInMemory; i < chunkCount; i++) {
+                        grown.set(i, chunks.get(i));
+                    }
+                    chunks = grown;
+                }
+                chunks.set(chunkCount++, new byte[CHUNK_SIZE]);
+            }
+            byte[] chunk = chunks.get(chunkCount - 1);
+            int n = Math.min(len - done, CHUNK_SIZE - index);
+            System.arraycopy(src, off + done, chunk, index, n);
+            done += n;
+            end += n;
+        }
+        length = end;
+        return start;
+    }
+
+    /**
+     * Читает данные из буфера.
+     *
+     * @param position смещение в буфере
+     * @param dst буфер назначения
+     * @param off смещение в буфере назначения
+     * @param len количество байт
+     * @throws IOException если не удалось прочитать вытесненный блок
+     */
+    public void read(long position, byte[] dst, int off, int len) throws IOException {
+        if (position < 0 || position + len > length) {
+            throw new IndexOutOfBoundsException("Диапазон вне буфера: " + position + "+" + len);
+        }
+        AtomicReferenceArray<byte[]> published = chunks;
+        int done = 0;
+        while (done < len) {
+            long pos = position + done;
+            int index = (int) (pos % CHUNK_SIZE);
+            int n = Math.min(len - done, CHUNK_SIZE - index);
+            byte[] chunk = published.get((int) (pos / CHUNK_SIZE));
+            if (chunk != null) {
+                System.arraycopy(chunk, index, dst, off + done, n);
+            } else {
+                readSpilled(pos, dst, off + done, n);
+            }
+            done += n;
+        }
+    }
+
+    /**
+     * @return объем данных в буфере
+     */
+    public long length() {
+        return length;
+    }
+
+    /**
+     * @return объем блоков в памяти
+     */
+    public synchronized long getMemoryUsed() {
+        return (long) (chunkCount - firstInMemory) * CHUNK_SIZE;
+    }
+
+    /**
+     * Закрывает и удаляет файл вытеснения.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (spill != null) {
+            spill.close();
+            spill = null;
+            if (!spillFile.delete()) {
+                logger.warn("Не удалось удалить файл вставленных данных {}", spillFile);
+            }
+        }
+    }
+
+    /**
+     * Пишет самый старый блок в памяти в файл и убирает его из массива;
+     * читатели, уже взявшие блок, дочитывают его из памяти.
+     */
+    private void spillOldest() throws IOException {
+        FileChannel channel = spill;
+        if (channel == null) {
+            spillFile = File.createTempFile("hexeditor-added", ".buffer");
+            spillFile.deleteOnExit();
+            channel = FileChannel.open(spillFile.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+            spill = channel;
+            logger.info("Вставленные данные вытесняются в {}", spillFile);
+        }
+        int index = firstInMemory;
+        ByteBuffer data = ByteBuffer.wrap(chunks.get(index));
+        long at = (long) index * CHUNK_SIZE;
+        while (data.hasRemaining()) {
+            channel.write(data, at + data.position());
+        }
+        chunks.set(index, null);
+        firstInMemory++;
+    }
+
+    private void readSpilled(long position, byte[] dst, int off, int len) throws IOException {
+        ByteBuffer target = ByteBuffer.wrap(dst, off, len);
+        while (target.hasRemaining()) {
+            if (spill.read(target, position + target.position() - off) < 0) {
+                throw new EOFException("Файл вставленных данных короче ожидаемого: " + spillFile);
+            }
+        }
+    }
+}
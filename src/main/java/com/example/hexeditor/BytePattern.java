@@ -0,0 +1,319 @@
+package com.example.hexeditor;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Скомпилированный шаблон поиска байт с необязательной маской.
+ * Байт данных d совпадает с позицией j шаблона, если
+ * {@code (d & mask[j]) == (pattern[j] & mask[j])}.
+ * Алгоритм выбирается по форме шаблона:
+ *   короткий точный шаблон — поиск первого байта по 8 байт за шаг (SWAR, как memchr);
+ *   точный шаблон — Бойер-Мур-Хорспул;
+ *   шаблон с маской — поиск по опорному байту с полной маской, если сдвиги
+ *   Хорспула с учетом маски в среднем короче слова (пропуски ?? их ограничивают),
+ *   иначе Хорспул с таблицей сдвигов, построенной с учетом маски; шаблон без
+ *   байт с полной маской — Хорспул, если он вообще дает сдвиги.
+ * Слова для поиска байта читаются через ByteBuffer (getLong — интринсик);
+ * при многократном поиске в одном буфере представление создается один раз
+ * ({@link #words(byte[])}) и передается в {@link #indexOf(ByteBuffer, int, int)}.
+ */
+public final class BytePattern {
+    /** Точные шаблоны короче этой длины ищутся по первому байту без Хорспула */
+    private static final int MIN_HORSPOOL_LENGTH = 4;
+    /** Средний сдвиг, ниже которого Хорспул с маской не выгоднее посимвольной проверки */
+    private static final double MIN_USEFUL_SHIFT = 2.0;
+    /** Средний сдвиг, ниже которого Хорспул с маской медленнее поиска опорного байта по 8 байт за шаг */
+    private static final double MIN_SCAN_SHIFT = Long.BYTES;
+
+    private static final long ONES = 0x0101010101010101L;
+    private static final long HIGHS = 0x8080808080808080L;
+
+    /**
+     * Алгоритм поиска.
+     */
+    public enum Algorithm {
+        /** Поиск опорного байта по словам с проверкой совпадения */
+        BYTE_SCAN,
+        /** Бойер-Мур-Хорспул */
+        HORSPOOL,
+        /** Хорспул с таблицей сдвигов по маске */
+        MASKED_HORSPOOL,
+        /** Посимвольная проверка каждой позиции (маска без байт с полной маской) */
+        NAIVE
+    }
+
+    private final byte[] pattern;
+    private final byte[] mask;
+    private final int length;
+    private final boolean exact;
+    private final int[] shift;
+    private final int[] backShift;
+    private final int anchor;
+    private final Algorithm algorithm;
+
+    /**
+     * Компилирует шаблон.
+     *
+     * @param pattern байты шаблона
+     * @param mask маска; null или маска другой длины означает точное совпадение
+     */
+    public BytePattern(byte[] pattern, byte[] mask) {
+        if (pattern == null || pattern.length == 0) {
+            throw new IllegalArgumentException("Пустой шаблон поиска");
+        }
+        this.length = pattern.length;
+        this.mask = new byte[length];
+        if (mask != null && mask.length == length) {
+            System.arraycopy(mask, 0, this.mask, 0, length);
+        } else {
+            Arrays.fill(this.mask, (byte) 0xFF);
+        }
+        this.pattern = new byte[length];
+        boolean allFull = true;
+        int lastFull = -1;
+        for (int j = 0; j < length; j++) {
+            this.pattern[j] = (byte) (pattern[j] & this.mask[j]);
+            if (this.mask[j] == (byte) 0xFF) {
+                lastFull = j;
+            } else {
+                allFull = false;
+            }
+        }
+        this.exact = allFull;
+        this.anchor = lastFull;
+        this.shift = buildShiftTable();
+        this.backShift = buildBackShiftTable();
+
+        if (exact) {
+            algorithm = length < MIN_HORSPOOL_LENGTH ? Algorithm.BYTE_SCAN : Algorithm.HORSPOOL;
+        } else if (anchor >= 0) {
+            algorithm = averageShift() >= MIN_SCAN_SHIFT ? Algorithm.MASKED_HORSPOOL : Algorithm.BYTE_SCAN;
+        } else {
+            algorithm = averageShift() >= MIN_USEFUL_SHIFT ? Algorithm.MASKED_HORSPOOL : Algorithm.NAIVE;
+        }
+    }
+
+    /**
+     * @return длина шаблона
+     */
+    public int length() {
+        return length;
+    }
+
+    /**
+     * @return байт шаблона в позиции j (с наложенной маской)
+     */
+    byte valueAt(int j) {
+        return pattern[j];
+    }
+
+    /**
+     * @return маска позиции j
+     */
+    byte maskAt(int j) {
+        return mask[j];
+    }
+
+    /**
+     * @return выбранный алгоритм поиска
+     */
+    public Algorithm getAlgorithm() {
+        return algorithm;
+    }
+
+    /**
+     * Ищет первое совпадение, целиком лежащее в диапазоне [from, to).
+     *
+     * @param data данные
+     * @param from начало диапазона
+     * @param to конец диапазона (не включая)
+     * @return позиция начала совпадения или -1
+     */
+    public int indexOf(byte[] data, int from, int to) {
+        return indexOf(data, null, from, to);
+    }
+
+    /**
+     * Ищет первое совпадение в буфере представления {@link #words(byte[])}
+     * без создания нового представления на каждый вызов.
+     *
+     * @param words представление буфера данных
+     * @param from начало диапазона
+     * @param to конец диапазона (не включая)
+     * @return позиция начала совпадения или -1
+     */
+    int indexOf(ByteBuffer words, int from, int to) {
+        return indexOf(words.array(), words, from, to);
+    }
+
+    /**
+     * @return представление буфера для словного чтения при поиске
+     */
+    static ByteBuffer words(byte[] data) {
+        return ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private int indexOf(byte[] data, ByteBuffer words, int from, int to) {
+        if (to - from < length) {
+            return -1;
+        }
+        switch (algorithm) {
+            case HORSPOOL:
+            case MASKED_HORSPOOL:
+                return horspool(data, from, to);
+            case BYTE_SCAN:
+                return byteScan(words != null ? words : words(data), data, from, to);
+            default:
+                for (int i = from; i <= to - length; i++) {
+                    if (matchesAt(data, i)) {
+                        return i;
+                    }
+                }
+                return -1;
+        }
+    }
+
+    /**
+     * Ищет последнее совпадение, целиком лежащее в диапазоне [from, to).
+     * Используется обратный Хорспул: окно сдвигается влево по первому байту окна.
+     *
+     * @param data данные
+     * @param from начало диапазона
+     * @param to конец диапазона (не включая)
+     * @return позиция начала совпадения или -1
+     */
+    public int lastIndexOf(byte[] data, int from, int to) {
+        int[] table = backShift;
+        byte firstPattern = pattern[0];
+        byte firstMask = mask[0];
+        int i = to - length;
+        while (i >= from) {
+            byte c = data[i];
+            if ((c & firstMask) == firstPattern && matchesAt(data, i)) {
+                return i;
+            }
+            i -= table[c & 0xFF];
+        }
+        return -1;
+    }
+
+    /**
+     * Проверяет совпадение шаблона в позиции.
+     *
+     * @param data данные
+     * @param position позиция начала (совпадение должно целиком помещаться в массив)
+     * @return true, если шаблон совпадает
+     */
+    public boolean matchesAt(byte[] data, int position) {
+        for (int j = 0; j < length; j++) {
+            if ((data[position + j] & mask[j]) != pattern[j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int horspool(byte[] data, int from, int to) {
+        int last = length - 1;
+        byte lastPattern = pattern[last];
+        byte lastMask = mask[last];
+        int i = from;
+        int limit = to - length;
+        while (i <= limit) {
+            byte c = data[i + last];
+            if ((c & lastMask) == lastPattern && matchesAt(data, i)) {
+                return i;
+            }
+            i += shift[c & 0xFF];
+        }
+        return -1;
+    }
+
+    private int byteScan(ByteBuffer words, byte[] data, int from, int to) {
+        byte anchorByte = pattern[anchor];
+        int position = from + anchor;
+        int limit = to - length + anchor;
+        while (position <= limit) {
+            int found = indexOfByte(words, data, position, limit + 1, anchorByte);
+            if (found < 0) {
+                return -1;
+            }
+            if (matchesAt(data, found - anchor)) {
+                return found - anchor;
+            }
+            position = found + 1;
+        }
+        return -1;
+    }
+
+    /**
+     * Ищет байт, сравнивая по 8 байт за шаг (SWAR-вариант memchr).
+     */
+    static int indexOfByte(ByteBuffer words, byte[] data, int from, int to, byte value) {
+        long broadcast = (value & 0xFFL) * ONES;
+        int i = from;
+        for (; i + Long.BYTES <= to; i += Long.BYTES) {
+            long word = words.getLong(i) ^ broadcast;
+            long zeros = (word - ONES) & ~word & HIGHS;
+            if (zeros != 0) {
+                return i + (Long.numberOfTrailingZeros(zeros) >>> 3);
+            }
+        }
+        for (; i < to; i++) {
+            if (data[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Таблица сдвигов Хорспула: для байта c, стоящего под последней позицией окна,
+     * сдвиг равен расстоянию до ближайшей справа позиции шаблона (кроме последней),
+     * с которой c совместим с учетом маски.
+     */
+    private int[] buildShiftTable() {
+        int[] table = new int[256];
+        Arrays.fill(table, length);
+        for (int j = 0; j < length - 1; j++) {
+            int distance = length - 1 - j;
+            if (mask[j] == (byte) 0xFF) {
+                table[pattern[j] & 0xFF] = distance;
+            } else {
+                for (int c = 0; c < 256; c++) {
+                    if ((c & mask[j]) == (pattern[j] & 0xFF)) {
+                        table[c] = distance;
+                    }
+                }
+            }
+        }
+        return table;
+    }
+
+    /**
+     * Таблица сдвигов обратного Хорспула: для байта c под первой позицией окна
+     * сдвиг влево равен ближайшей позиции шаблона (кроме первой), совместимой с c.
+     */
+    private int[] buildBackShiftTable() {
+        int[] table = new int[256];
+        Arrays.fill(table, length);
+        for (int j = length - 1; j >= 1; j--) {
+            for (int c = 0; c < 256; c++) {
+                if ((c & mask[j]) == (pattern[j] & 0xFF)) {
+                    table[c] = j;
+                }
+            }
+        }
+        return table;
+    }
+
+    private double averageShift() {
+        long sum = 0;
+        for (int s : shift) {
+            sum += s;
+        }
+        return sum / 256.0;
+    }
+}
@@ -0,0 +1,111 @@
+package com.example.hexeditor;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Бэкенд на RandomAccessFile, читающий файл страницами через {@link PageCache}.
+ * Чтение и запись идут позиционно через FileChannel, не трогая указатель файла,
+ * поэтому упреждающее чтение кэша и запросы из разных потоков идут параллельно.
+ */
+public class CachedFileBackend implements FileBackend {
+    /** Чтения от этого размера идут мимо кэша, чтобы не вытеснять из него просматриваемые страницы */
+    public static final int DIRECT_READ_SIZE = 1024 * 1024;
+
+    private static final Logger logger = LoggerFactory.getLogger(CachedFileBackend.class);
+
+    private final RandomAccessFile file;
+    private final PageCache cache;
+
+    /**
+     * Открывает файл для чтения и записи.
+     *
+     * @param f файл
+     * @param cacheBudget объем памяти под кэш страниц в байтах
+     */
+    public CachedFileBackend(File f, long cacheBudget) throws IOException {
+        this.file = new RandomAccessFile(f, "rw");
+        this.cache = new PageCache(this::loadPage, PageCache.DEFAULT_PAGE_SIZE, cacheBudget,
+                PageCache.DEFAULT_PREFETCH_PAGES);
+    }
+
+    @Override
+    public long length() throws IOException {
+        return file.getChannel().size();
+    }
+
+    @Override
+    public int read(long position, byte[] dst, int off, int len) throws IOException {
+        if (len < DIRECT_READ_SIZE) {
+            return cache.read(position, dst, off, len);
+        }
+        // кэш обновляется при каждой записи, поэтому файл всегда актуален
+        int done = 0;
+        while (done < len) {
+            int n = loadPage(position + done, dst, off + done, len - done);
+            if (n <= 0) {
+                break;
+            }
+            done += n;
+        }
+        return done;
+    }
+
+    @Override
+    public void write(long position, byte[] src, int off, int len) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(src, off, len);
+        while (buffer.hasRemaining()) {
+            file.getChannel().write(buffer, position + buffer.position() - off);
+        }
+        cache.update(position, src, off, len);
+    }
+
+    @Override
+    public void setLength(long length) throws IOException {
+        file.setLength(length);
+        cache.invalidateAll();
+    }
+
+    @Override
+    public void force() throws IOException {
+        file.getChannel().force(false);
+    }
+
+    @Override
+    public void transferTo(long position, long count, WritableByteChannel target) throws IOException {
+        FileChannel channel = file.getChannel();
+        long done = 0;
+        while (done < count) {
+            long n = channel.transferTo(position + done, count - done, target);
+            if (n <= 0) {
+                throw new EOFException("Файл короче ожидаемого: позиция " + (position + done));
+            }
+            done += n;
+        }
+    }
+
+    /**
+     * @return кэш страниц (для просмотра статистики попаданий)
+     */
+    public PageCache getPageCache() {
+        return cache;
+    }
+
+    @Override
+    public void close() throws IOException {
+        cache.close();
+        logger.info("Статистика кэша страниц: {}", cache);
+        file.close();
+    }
+
+    private int loadPage(long position, byte[] buffer, int offset, int length) throws IOException {
+        return file.getChannel().read(ByteBuffer.wrap(buffer, offset, length), position);
+    }
+}
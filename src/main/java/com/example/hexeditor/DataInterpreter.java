@@ -2,120 +2,427 @@ package com.example.hexeditor;
 
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 /**
- * Утилитарный класс для преобразования двумерных массивов байт
- * в примитивные типы данных с little-endian порядком байт.
+ * Утилитарный класс для чтения типов данных прямо из буфера по смещению.
  * Поддерживает преобразование в следующие типы:
- *   Целочисленные: short, int, long
- *   Числа с плавающей точкой: float, double
- *   Беззнаковые целые (unsigned int)
- * Нулевые массивы и подмассивы обрабатываются корректно (возвращаются как пустые данные).
+ *   Целочисленные 16, 32 и 64 бита, знаковые и беззнаковые, в обоих порядках байт
+ *   Числа с плавающей точкой: half (16 бит), float, double
+ *   Varint (LEB128, в том числе zigzag из protobuf), упакованный BCD
+ *   Метки времени Unix (32 и 64 бита) и Windows FILETIME
+ * Для инспектора значений набор {@link #DECODERS} описывает все типы
+ * как готовые декодеры, которые создаются один раз при загрузке класса.
+ * Методы без параметра порядка байт читают little-endian.
+ * Методы не выделяют память: значение собирается из байт буфера сдвигами,
+ * поэтому их можно вызывать на каждое событие выделения. Беззнаковые
+ * значения возвращаются в более широком типе; беззнаковое 64-битное значение
+ * возвращается как long с тем же набором бит (см. {@link Long#toUnsignedString(long)}).
+ * Варианты для {@link ByteBuffer} используют абсолютные индексы и не зависят
+ * от позиции и порядка байт буфера.
  */
 public class DataInterpreter {
+    /** Наибольшее число байт, которое читает декодер из {@link #DECODERS} */
+    public static final int MAX_DECODER_SIZE = 10;
+    /** Разница между эпохой FILETIME (1601-01-01) и эпохой Unix в интервалах по 100 нс */
+    private static final long FILETIME_EPOCH_OFFSET = 116444736000000000L;
 
     /**
-     * Преобразует двумерный массив байт в значение типа short.
+     * Декодер одного типа для инспектора значений.
+     */
+    public interface Decoder {
+        /**
+         * @return название типа
+         */
+        String getName();
+
+        /**
+         * @param data буфер
+         * @param offset смещение первого байта
+         * @param length сколько байт доступно с offset
+         * @param order выбранный порядок байт
+         * @return текстовое значение или null, если данных не хватает или они не подходят под тип
+         */
+        String decode(byte[] data, int offset, int length, ByteOrder order);
+    }
+
+    /**
+     * Декодер значения фиксированной длины.
+     */
+    private interface FixedFormat {
+        String format(byte[] data, int offset, ByteOrder order);
+    }
+
+    /**
+     * Декодер varint: длина определяется по данным.
+     */
+    private interface VarintFormat {
+        String format(byte[] data, int offset);
+    }
+
+    /** Все поддерживаемые типы в порядке отображения */
+    public static final List<Decoder> DECODERS;
+
+    static {
+        List<Decoder> decoders = new ArrayList<>();
+        decoders.add(fixed("int8", 1, (d, o, order) -> Integer.toString(d[o])));
+        decoders.add(fixed("uint8", 1, (d, o, order) -> Integer.toString(d[o] & 0xFF)));
+        decoders.add(fixed("int16", 2, (d, o, order) -> Integer.toString(getInt16(d, o, true, order))));
+        decoders.add(fixed("uint16", 2, (d, o, order) -> Integer.toString(getInt16(d, o, false, order))));
+        decoders.add(fixed("int32", 4, (d, o, order) -> Long.toString(getInt32(d, o, true, order))));
+        decoders.add(fixed("uint32", 4, (d, o, order) -> Long.toString(getInt32(d, o, false, order))));
+        decoders.add(fixed("int64", 8, (d, o, order) -> Long.toString(getInt64(d, o, order))));
+        decoders.add(fixed("uint64", 8, (d, o, order) -> Long.toUnsignedString(getInt64(d, o, order))));
+        decoders.add(fixed("float16", 2, (d, o, order) -> Float.toString(getFloat16(d, o, order))));
+        decoders.add(fixed("float32", 4, (d, o, order) -> Float.toString(getFloat(d, o, order))));
+        decoders.add(fixed("float64", 8, (d, o, order) -> Double.toString(getDouble(d, o, order))));
+        decoders.add(varint("varint", (d, o) -> Long.toUnsignedString(getVarint(d, o))));
+        decoders.add(varint("varint zigzag", (d, o) -> Long.toString(decodeZigZag(getVarint(d, o)))));
+        decoders.add(varint("sleb128", (d, o) -> Long.toString(getSignedLeb128(d, o))));
+        decoders.add(fixed("bcd (4 байта)", 4, (d, o, order) -> {
+            long value = getPackedBcd(d, o, 4, order);
+            return value < 0 ? null : Long.toString(value);
+        }));
+        decoders.add(fixed("time_t32 (UTC)", 4, (d, o, order) -> {
+            Instant instant = unixTimeToInstant(getInt32(d, o, true, order));
+            return instant == null ? null : instant.toString();
+        }));
+        decoders.add(fixed("time_t64 (UTC)", 8, (d, o, order) -> {
+            Instant instant = unixTimeToInstant(getInt64(d, o, order));
+            return instant == null ? null : instant.toString();
+        }));
+        decoders.add(fixed("FILETIME (UTC)", 8, (d, o, order) -> {
+            Instant instant = fileTimeToInstant(getInt64(d, o, order));
+            return instant == null ? null : instant.toString();
+        }));
+        DECODERS = Collections.unmodifiableList(decoders);
+    }
+
+    private static Decoder fixed(String name, int size, FixedFormat format) {
+        return new Decoder() {
+            @Override
+            public String getName() {
+                return name;
+            }
+
+            @Override
+            public String decode(byte[] data, int offset, int length, ByteOrder order) {
+                return length < size ? null : format.format(data, offset, order);
+            }
+        };
+    }
+
+    private static Decoder varint(String name, VarintFormat format) {
+        return new Decoder() {
+            @Override
+            public String getName() {
+                return name;
+            }
+
+            @Override
+            public String decode(byte[] data, int offset, int length, ByteOrder order) {
+                int size = varintLength(data, offset, offset + length);
+                return size < 0 ? null : format.format(data, offset) + " (" + size + " байт)";
+            }
+        };
+    }
+
+    /**
+     * Читает 16-битное целое.
      *
-     * @param data двумерный массив байт (может быть null или содержать null-подмассивы)
+     * @param data буфер
+     * @param offset смещение первого байта
      * @param signed если true - интерпретировать как знаковое число
-     * @return преобразованное значение short
-     * @see ByteBuffer#getShort()
+     * @return значение в диапазоне short или 0..65535
      */
-    public static short toShort(byte[][] data, boolean signed) {
-        return ByteBuffer.wrap(flatten(data))
-                .order(ByteOrder.LITTLE_ENDIAN)
-                .getShort();
+    public static int getInt16(byte[] data, int offset, boolean signed) {
+        int value = (data[offset] & 0xFF) | (data[offset + 1] & 0xFF) << 8;
+        return signed ? (short) value : value;
     }
 
     /**
-     * Преобразует двумерный массив байт в значение типа int.
+     * Читает 32-битное целое.
      *
-     * @param data двумерный массив байт (может быть null или содержать null-подмассивы)
+     * @param data буфер
+     * @param offset смещение первого байта
      * @param signed если true - интерпретировать как знаковое число
-     * @return преобразованное значение int
-     * @see ByteBuffer#getInt()
+     * @return значение в диапазоне int или 0..2^32-1
      */
-    public static int toInt(byte[][] data, boolean signed) {
-        return ByteBuffer.wrap(flatten(data))
-                .order(ByteOrder.LITTLE_ENDIAN)
-                .getInt();
+    public static long getInt32(byte[] data, int offset, boolean signed) {
+        int value = (data[offset] & 0xFF)
+                | (data[offset + 1] & 0xFF) << 8
+                | (data[offset + 2] & 0xFF) << 16
+                | (data[offset + 3] & 0xFF) << 24;
+        return signed ? value : value & 0xFFFFFFFFL;
     }
 
     /**
-     * Преобразует двумерный массив байт в беззнаковое значение типа long (32 бита).
+     * Читает 64-битное целое (знаковость определяется при выводе).
      *
-     * @param data двумерный массив байт (может быть null или содержать null-подмассивы)
-     * @return преобразованное беззнаковое значение в диапазоне long
+     * @param data буфер
+     * @param offset смещение первого байта
+     * @return значение
      */
-    public static long toUnsignedInt(byte[][] data) {
-        return toInt(data, false) & 0xFFFFFFFFL;
+    public static long getInt64(byte[] data, int offset) {
+        return getInt32(data, offset, false) | getInt32(data, offset + 4, false) << 32;
     }
 
     /**
-     * Преобразует двумерный массив байт в значение типа long.
+     * Читает 16-битное целое в заданном порядке байт.
      *
-     * @param data двумерный массив байт (может быть null или содержать null-подмассивы)
-     * @return преобразованное значение long
-     * @see ByteBuffer#getLong()
+     * @param data буфер
+     * @param offset смещение первого байта
+     * @param signed если true - интерпретировать как знаковое число
+     * @param order порядок байт
+     * @return значение в диапазоне short или 0..65535
      */
-    public static long toLong(byte[][] data) {
-        return ByteBuffer.wrap(flatten(data))
-                .order(ByteOrder.LITTLE_ENDIAN)
-                .getLong();
+    public static int getInt16(byte[] data, int offset, boolean signed, ByteOrder order) {
+        if (order == ByteOrder.LITTLE_ENDIAN) {
+            return getInt16(data, offset, signed);
+        }
+        int value = (data[offset] & 0xFF) << 8 | (data[offset + 1] & 0xFF);
+        return signed ? (short) value : value;
     }
 
     /**
-     * Преобразует двумерный массив байт в значение типа float.
+     * Читает 32-битное целое в заданном порядке байт.
      *
-     * @param data двумерный массив байт (может быть null или содержать null-подмассивы)
-     * @return преобразованное значение float
-     * @see ByteBuffer#getFloat()
+     * @param data буфер
+     * @param offset смещение первого байта
+     * @param signed если true - интерпретировать как знаковое число
+     * @param order порядок байт
+     * @return значение в диапазоне int или 0..2^32-1
+     */
+    public static long getInt32(byte[] data, int offset, boolean signed, ByteOrder order) {
+        if (order == ByteOrder.LITTLE_ENDIAN) {
+            return getInt32(data, offset, signed);
+        }
+        int value = (data[offset] & 0xFF) << 24
+                | (data[offset + 1] & 0xFF) << 16
+                | (data[offset + 2] & 0xFF) << 8
+                | (data[offset + 3] & 0xFF);
+        return signed ? value : value & 0xFFFFFFFFL;
+    }
+
+    /**
+     * @return 64-битное целое в заданном порядке байт
      */
-    public static float toFloat(byte[][] data) {
-        return ByteBuffer.wrap(flatten(data))
-                .order(ByteOrder.LITTLE_ENDIAN)
-                .getFloat();
+    public static long getInt64(byte[] data, int offset, ByteOrder order) {
+        if (order == ByteOrder.LITTLE_ENDIAN) {
+            return getInt64(data, offset);
+        }
+        return getInt32(data, offset, false, order) << 32 | getInt32(data, offset + 4, false, order);
     }
 
     /**
-     * Преобразует двумерный массив байт в значение типа double.
+     * @return значение float в заданном порядке байт
+     */
+    public static float getFloat(byte[] data, int offset, ByteOrder order) {
+        return Float.intBitsToFloat((int) getInt32(data, offset, true, order));
+    }
+
+    /**
+     * @return значение double в заданном порядке байт
+     */
+    public static double getDouble(byte[] data, int offset, ByteOrder order) {
+        return Double.longBitsToDouble(getInt64(data, offset, order));
+    }
+
+    /**
+     * Читает число половинной точности IEEE 754 (binary16).
      *
-     * @param data двумерный массив байт (может быть null или содержать null-подмассивы)
-     * @return преобразованное значение double
-     * @see ByteBuffer#getDouble()
+     * @return значение, расширенное до float
      */
-    public static double toDouble(byte[][] data) {
-        return ByteBuffer.wrap(flatten(data))
-                .order(ByteOrder.LITTLE_ENDIAN)
-                .getDouble();
+    public static float getFloat16(byte[] data, int offset, ByteOrder order) {
+        int bits = getInt16(data, offset, false, order);
+        int sign = bits >>> 15;
+        int exponent = bits >>> 10 & 0x1F;
+        int mantissa = bits & 0x3FF;
+        if (exponent == 0) {
+            float value = Math.scalb((float) mantissa, -24);
+            return sign == 0 ? value : -value;
+        }
+        if (exponent == 0x1F) {
+            return Float.intBitsToFloat(sign << 31 | 0x7F800000 | mantissa << 13);
+        }
+        return Float.intBitsToFloat(sign << 31 | (exponent + 127 - 15) << 23 | mantissa << 13);
     }
 
     /**
-     * Преобразует двумерный массив байт в одномерный.
-     * Обрабатывает null-значения:
-     *   Если входной массив null - возвращает пустой массив
-     *   Если подмассивы null - они пропускаются
+     * Определяет длину varint (LEB128): байты с установленным старшим битом
+     * продолжают число.
      *
-     * @param data двумерный массив байт (может быть null)
-     * @return одномерный массив байт (никогда не null)
+     * @param limit конец данных в буфере (исключительно)
+     * @return длина в байтах или -1, если число не завершено до limit
+     *         или длиннее 10 байт
      */
-    private static byte[] flatten(byte[][] data) {
-        if (data == null) return new byte[0];
+    public static int varintLength(byte[] data, int offset, int limit) {
+        int end = Math.min(limit, offset + 10);
+        for (int i = offset; i < end; i++) {
+            if (data[i] >= 0) {
+                return i - offset + 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Читает беззнаковый varint (LEB128, protobuf uint64); биты за 64-м отбрасываются.
+     * Длину нужно предварительно проверить через {@link #varintLength}.
+     */
+    public static long getVarint(byte[] data, int offset) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = data[offset++];
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                break;
+            }
+        }
+        return value;
+    }
 
-        int length = 0;
-        for (byte[] arr : data) {
-            length += arr != null ? arr.length : 0;
+    /**
+     * Читает знаковое число SLEB128 (знак берется из последнего байта).
+     * Длину нужно предварительно проверить через {@link #varintLength}.
+     */
+    public static long getSignedLeb128(byte[] data, int offset) {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = data[offset++];
+            if (shift < 64) {
+                value |= (long) (b & 0x7F) << shift;
+            }
+            shift += 7;
+        } while (b < 0);
+        if (shift < 64 && (b & 0x40) != 0) {
+            value |= -1L << shift;
         }
+        return value;
+    }
+
+    /**
+     * Раскодирует zigzag-представление знаковых чисел protobuf (sint32/sint64).
+     */
+    public static long decodeZigZag(long value) {
+        return value >>> 1 ^ -(value & 1);
+    }
 
-        byte[] result = new byte[length];
-        int pos = 0;
-        for (byte[] arr : data) {
-            if (arr != null) {
-                System.arraycopy(arr, 0, result, pos, arr.length);
-                pos += arr.length;
+    /**
+     * Читает упакованный BCD: две десятичные цифры на байт, старшая в старшей тетраде.
+     * При little-endian первым идет младший байт числа.
+     *
+     * @param length количество байт (не больше 9)
+     * @return значение или -1, если встретилась тетрада больше 9
+     */
+    public static long getPackedBcd(byte[] data, int offset, int length, ByteOrder order) {
+        long value = 0;
+        for (int i = 0; i < length; i++) {
+            int b = data[order == ByteOrder.BIG_ENDIAN ? offset + i : offset + length - 1 - i] & 0xFF;
+            int high = b >>> 4;
+            int low = b & 0x0F;
+            if (high > 9 || low > 9) {
+                return -1;
             }
+            value = value * 100 + high * 10 + low;
         }
-        return result;
+        return value;
+    }
+
+    /**
+     * Переводит Windows FILETIME (интервалы по 100 нс с 1601-01-01 UTC) в момент времени.
+     *
+     * @param fileTime значение FILETIME как беззнаковое 64-битное число
+     * @return момент времени или null, если значение вне диапазона {@link Instant}
+     */
+    public static Instant fileTimeToInstant(long fileTime) {
+        if (fileTime < 0) {
+            return null;
+        }
+        long ticks = fileTime - FILETIME_EPOCH_OFFSET;
+        return Instant.ofEpochSecond(Math.floorDiv(ticks, 10_000_000L), Math.floorMod(ticks, 10_000_000L) * 100);
+    }
+
+    /**
+     * @return момент времени для секунд Unix или null, если значение вне диапазона {@link Instant}
+     */
+    public static Instant unixTimeToInstant(long seconds) {
+        try {
+            return Instant.ofEpochSecond(seconds);
+        } catch (DateTimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return значение float по смещению
+     * @see Float#intBitsToFloat(int)
+     */
+    public static float getFloat(byte[] data, int offset) {
+        return Float.intBitsToFloat((int) getInt32(data, offset, true));
+    }
+
+    /**
+     * @return значение double по смещению
+     * @see Double#longBitsToDouble(long)
+     */
+    public static double getDouble(byte[] data, int offset) {
+        return Double.longBitsToDouble(getInt64(data, offset));
+    }
+
+    /**
+     * Читает 16-битное целое.
+     *
+     * @param buffer буфер
+     * @param index абсолютный индекс первого байта
+     * @param signed если true - интерпретировать как знаковое число
+     * @return значение в диапазоне short или 0..65535
+     */
+    public static int getInt16(ByteBuffer buffer, int index, boolean signed) {
+        int value = (buffer.get(index) & 0xFF) | (buffer.get(index + 1) & 0xFF) << 8;
+        return signed ? (short) value : value;
+    }
+
+    /**
+     * Читает 32-битное целое.
+     *
+     * @param buffer буфер
+     * @param index абсолютный индекс первого байта
+     * @param signed если true - интерпретировать как знаковое число
+     * @return значение в диапазоне int или 0..2^32-1
+     */
+    public static long getInt32(ByteBuffer buffer, int index, boolean signed) {
+        int value = (buffer.get(index) & 0xFF)
+                | (buffer.get(index + 1) & 0xFF) << 8
+                | (buffer.get(index + 2) & 0xFF) << 16
+                | (buffer.get(index + 3) & 0xFF) << 24;
+        return signed ? value : value & 0xFFFFFFFFL;
+    }
+
+    /**
+     * @return 64-битное целое по абсолютному индексу
+     */
+    public static long getInt64(ByteBuffer buffer, int index) {
+        return getInt32(buffer, index, false) | getInt32(buffer, index + 4, false) << 32;
+    }
+
+    /**
+     * @return значение float по абсолютному индексу
+     */
+    public static float getFloat(ByteBuffer buffer, int index) {
+        return Float.intBitsToFloat((int) getInt32(buffer, index, true));
+    }
+
+    /**
+     * @return значение double по абсолютному индексу
+     */
+    public static double getDouble(ByteBuffer buffer, int index) {
+        return Double.longBitsToDouble(getInt64(buffer, index));
     }
 }
@@ -0,0 +1,467 @@
+package com.example.hexeditor;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.TreeMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Журнал правок для отмены и повтора.
+ * Правка описывается позицией, числом удаленных и вставленных байт и данными
+ * для обратного применения:
+ *   в режиме таблицы фрагментов — таблицы до и после правки; таблицы неизменяемы
+ *   и разделяют общие узлы, поэтому запись стоит O(log n) памяти, а отмена — O(1);
+ *   в режиме прямой записи — байты, которые правка затерла, и вставленные байты.
+ * Байты хранятся в памяти в пределах бюджета; при его превышении данные самых
+ * старых записей вытесняются во временный файл журнала. Данные больше бюджета
+ * копируются из файла в журнал сразу, минуя память.
+ * Журнал знает, какие участки файла журнала заняты живыми записями: место
+ * записей, выпавших из истории, освобождается — свободный хвост файла
+ * отрезается, а когда дыр больше, чем живых данных (и больше бюджета памяти),
+ * живые данные сдвигаются к началу файла.
+ */
+public class EditJournal implements Closeable {
+    /** Бюджет памяти под данные правок; задается свойством {@code hexeditor.undo.budget} */
+    public static final long DEFAULT_MEMORY_BUDGET = Long.getLong("hexeditor.undo.budget", 64L * 1024 * 1024);
+    /** Максимальное число шагов отмены; задается свойством {@code hexeditor.undo.limit} */
+    public static final int DEFAULT_MAX_ENTRIES = Integer.getInteger("hexeditor.undo.limit", 1000);
+    /** Размер блока копирования между файлом и журналом (1 МиБ) */
+    private static final int BLOCK_SIZE = 1024 * 1024;
+
+    private static final Logger logger = LoggerFactory.getLogger(EditJournal.class);
+
+    /**
+     * Данные правки в режиме прямой записи: байты в памяти, в файле журнала или нули.
+     */
+    public static final class Payload {
+        private final long length;
+        private final boolean zeros;
+        private byte[] data;
+        private long spillOffset = -1;
+
+        private Payload(long length, boolean zeros, byte[] data) {
+            this.length = length;
+            this.zeros = zeros;
+            this.data = data;
+        }
+
+        public long length() {
+            return length;
+        }
+
+        private long memory() {
+            return data == null ? 0 : data.length;
+        }
+    }
+
+    /**
+     * Запись журнала об одной правке.
+     */
+    public static final class Entry {
+        final long position;
+        final long removedLength;
+        final long insertedLength;
+        final PieceTable before;
+        final PieceTable after;
+        final Payload removed;
+        final Payload inserted;
+
+        private Entry(long position, long removedLength, long insertedLength,
+                      PieceTable before, PieceTable after, Payload removed, Payload inserted) {
+            this.position = position;
+            this.removedLength = removedLength;
+            this.insertedLength = insertedLength;
+            this.before = before;
+            this.after = after;
+            this.removed = removed;
+            this.inserted = inserted;
+        }
+
+        private long memory() {
+            return (removed == null ? 0 : removed.memory()) + (inserted == null ? 0 : inserted.memory());
+        }
+    }
+
+    private final long memoryBudget;
+    private final int maxEntries;
+    private final Deque<Entry> undo = new ArrayDeque<>();
+    private final Deque<Entry> redo = new ArrayDeque<>();
+    private long memoryUsed;
+    private File spillFile;
+    private RandomAccessFile spill;
+    /** Данные в файле журнала по смещению; остальное место файла свободно */
+    private final TreeMap<Long, Payload> spilled = new TreeMap<>();
+    /** Объем живых данных в файле журнала */
+    private long spillUsed;
+    private byte[] block;
+
+    public EditJournal() {
+        this(DEFAULT_MEMORY_BUDGET, DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * @param memoryBudget объем памяти под данные правок в байтах
+     * @param maxEntries максимальное число шагов отмены
+     */
+    public EditJournal(long memoryBudget, int maxEntries) {
+        this.memoryBudget = memoryBudget;
+        this.maxEntries = Math.max(1, maxEntries);
+    }
+
+    /**
+     * Создает запись о правке таблицы фрагментов.
+     */
+    public static Entry pieces(long position, long removedLength, long insertedLength,
+                               PieceTable before, PieceTable after) {
+        return new Entry(position, removedLength, insertedLength, before, after, null, null);
+    }
+
+    /**
+     * Создает запись о правке, примененной прямо к файлу.
+     *
+     * @param removed затертые данные
+     * @param inserted записанные данные
+     */
+    public static Entry data(long position, Payload removed, Payload inserted) {
+        return new Entry(position, removed.length, inserted.length, null, null, removed, inserted);
+    }
+
+    /**
+     * @return данные из копии массива
+     */
+    public static Payload bytes(byte[] src, int length) {
+        return new Payload(length, false, Arrays.copyOf(src, length));
+    }
+
+    /**
+     * @return данные из нулей заданной длины (память не занимают)
+     */
+    public static Payload zeros(long length) {
+        return new Payload(length, true, null);
+    }
+
+    /**
+     * Сохраняет диапазон файла до его изменения.
+     * Диапазон больше бюджета памяти копируется прямо в файл журнала.
+     *
+     * @param backend файл
+     * @param position начало диапазона
+     * @param length длина диапазона
+     * @return данные диапазона
+     */
+    public synchronized Payload copyOf(FileBackend backend, long position, long length) throws IOException {
+        if (length <= Math.min(memoryBudget, Integer.MAX_VALUE - 8)) {
+            byte[] data = new byte[(int) length];
+            readFully(backend, position, data, (int) length);
+            return new Payload(length, false, data);
+        }
+        Payload payload = new Payload(length, false, null);
+        openSpill();
+        allocate(payload);
+        byte[] buffer = block();
+        try {
+            for (long done = 0; done < length; ) {
+                int n = (int) Math.min(length - done, buffer.length);
+                readFully(backend, position + done, buffer, n);
+                spill.seek(payload.spillOffset + done);
+                spill.write(buffer, 0, n);
+                done += n;
+            }
+        } catch (IOException e) {
+            discard(payload);
+            throw e;
+        }
+        logger.debug("Данные правки ({} байт) записаны в журнал {}", length, spillFile);
+        return payload;
+    }
+
+    /**
+     * Освобождает данные, так и не попавшие в журнал (правка не состоялась).
+     */
+    public synchronized void discard(Payload payload) throws IOException {
+        release(payload);
+        reclaim();
+    }
+
+    /**
+     * Получатель данных, передаваемых блоками.
+     */
+    public interface BlockSink {
+        /**
+         * @param offset смещение блока от начала данных
+         * @param data буфер (действителен только во время вызова)
+         * @param length длина блока
+         */
+        void write(long offset, byte[] data, int length) throws IOException;
+    }
+
+    /**
+     * Записывает данные в файл.
+     *
+     * @param payload данные
+     * @param backend файл
+     * @param position позиция записи
+     */
+    public void writeTo(Payload payload, FileBackend backend, long position) throws IOException {
+        copy(payload, (offset, data, length) -> backend.write(position + offset, data, 0, length));
+    }
+
+    /**
+     * Передает данные получателю блоками не больше 1 МиБ
+     * (данные в памяти — одним блоком).
+     */
+    public synchronized void copy(Payload payload, BlockSink sink) throws IOException {
+        if (payload.data != null) {
+            sink.write(0, payload.data, payload.data.length);
+            return;
+        }
+        byte[] buffer = block();
+        if (payload.zeros) {
+            Arrays.fill(buffer, (byte) 0);
+        }
+        for (long done = 0; done < payload.length; ) {
+            int n = (int) Math.min(payload.length - done, buffer.length);
+            if (!payload.zeros) {
+                spill.seek(payload.spillOffset + done);
+                spill.readFully(buffer, 0, n);
+            }
+            sink.write(done, buffer, n);
+            done += n;
+        }
+    }
+
+    /**
+     * @return true, если данные — нули (хранится только длина)
+     */
+    public static boolean isZeros(Payload payload) {
+        return payload.zeros;
+    }
+
+    /**
+     * Добавляет правку; история повтора при этом сбрасывается.
+     */
+    public synchronized void record(Entry entry) throws IOException {
+        for (Entry dropped : redo) {
+            drop(dropped);
+        }
+        redo.clear();
+        undo.addLast(entry);
+        memoryUsed += entry.memory();
+        while (undo.size() > maxEntries) {
+            drop(undo.removeFirst());
+        }
+        enforceBudget();
+        reclaim();
+    }
+
+    /**
+     * @return правка для отмены (переносится в историю повтора) или null
+     */
+    public synchronized Entry undo() {
+        Entry entry = undo.pollLast();
+        if (entry != null) {
+            redo.addLast(entry);
+        }
+        return entry;
+    }
+
+    /**
+     * @return правка для повтора (возвращается в историю отмены) или null
+     */
+    public synchronized Entry redo() {
+        Entry entry = redo.pollLast();
+        if (entry != null) {
+            undo.addLast(entry);
+        }
+        return entry;
+    }
+
+    public synchronized boolean canUndo() {
+        return !undo.isEmpty();
+    }
+
+    public synchronized boolean canRedo() {
+        return !redo.isEmpty();
+    }
+
+    /**
+     * @return объем данных правок в памяти
+     */
+    public synchronized long getMemoryUsed() {
+        return memoryUsed;
+    }
+
+    /**
+     * @return размер файла журнала в байтах (0, если данные не вытеснялись)
+     */
+    public synchronized long getSpillSize() throws IOException {
+        return spill == null ? 0 : spill.length();
+    }
+
+    /**
+     * Удаляет всю историю и файл журнала.
+     */
+    public synchronized void clear() throws IOException {
+        undo.clear();
+        redo.clear();
+        memoryUsed = 0;
+        spilled.clear();
+        spillUsed = 0;
+        closeSpill();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        clear();
+    }
+
+    /**
+     * Вытесняет данные самых старых правок в файл журнала, пока объем
+     * данных в памяти больше бюджета.
+     */
+    private void enforceBudget() throws IOException {
+        Iterator<Entry> oldest = undo.iterator();
+        while (memoryUsed > memoryBudget && oldest.hasNext()) {
+            Entry entry = oldest.next();
+            spill(entry.removed);
+            spill(entry.inserted);
+        }
+    }
+
+    private void spill(Payload payload) throws IOException {
+        // пустые данные памяти не занимают и места в файле не получают
+        if (payload == null || payload.data == null || payload.data.length == 0) {
+            return;
+        }
+        RandomAccessFile file = openSpill();
+        allocate(payload);
+        file.seek(payload.spillOffset);
+        file.write(payload.data);
+        memoryUsed -= payload.data.length;
+        payload.data = null;
+    }
+
+    /**
+     * Отводит данным место в конце живой части файла журнала.
+     */
+    private void allocate(Payload payload) {
+        payload.spillOffset = spillEnd();
+        spilled.put(payload.spillOffset, payload);
+        spillUsed += payload.length;
+    }
+
+    private void drop(Entry entry) {
+        memoryUsed -= entry.memory();
+        release(entry.removed);
+        release(entry.inserted);
+    }
+
+    private void release(Payload payload) {
+        if (payload != null && payload.spillOffset >= 0 && spilled.remove(payload.spillOffset) != null) {
+            spillUsed -= payload.length;
+            payload.spillOffset = -1;
+        }
+    }
+
+    /**
+     * @return конец последних живых данных в файле журнала
+     */
+    private long spillEnd() {
+        if (spilled.isEmpty()) {
+            return 0;
+        }
+        Payload last = spilled.lastEntry().getValue();
+        return last.spillOffset + last.length;
+    }
+
+    /**
+     * Возвращает место освобожденных записей: сжимает файл, если дыр больше,
+     * чем живых данных, и отрезает свободный хвост. Сжатие копирует не больше
+     * живых данных, чем до него было освобождено, поэтому его стоимость
+     * делится между освобожденными записями.
+     */
+    private void reclaim() throws IOException {
+        if (spill == null) {
+            return;
+        }
+        long end = spillEnd();
+        if (end - spillUsed > Math.max(spillUsed, memoryBudget)) {
+            compact();
+            end = spillUsed;
+        }
+        if (spill.length() > end) {
+            logger.debug("Журнал отмены {} сокращен с {} до {} байт", spillFile, spill.length(), end);
+            spill.setLength(end);
+        }
+    }
+
+    /**
+     * Сдвигает живые данные к началу файла журнала в порядке смещений;
+     * данные переносятся только влево, поэтому копирование блоками вперед
+     * не затирает еще не перенесенное.
+     */
+    private void compact() throws IOException {
+        TreeMap<Long, Payload> moved = new TreeMap<>();
+        byte[] buffer = block();
+        long target = 0;
+        for (Payload payload : spilled.values()) {
+            if (payload.spillOffset != target) {
+                for (long done = 0; done < payload.length; ) {
+                    int n = (int) Math.min(payload.length - done, buffer.length);
+                    spill.seek(payload.spillOffset + done);
+                    spill.readFully(buffer, 0, n);
+                    spill.seek(target + done);
+                    spill.write(buffer, 0, n);
+                    done += n;
+                }
+                payload.spillOffset = target;
+            }
+            moved.put(target, payload);
+            target += payload.length;
+        }
+        spilled.clear();
+        spilled.putAll(moved);
+        logger.debug("Журнал отмены {} сжат: {} байт живых данных", spillFile, target);
+    }
+
+    private RandomAccessFile openSpill() throws IOException {
+        if (spill == null) {
+            spillFile = File.createTempFile("hexeditor-undo", ".journal");
+            spillFile.deleteOnExit();
+            spill = new RandomAccessFile(spillFile, "rw");
+            logger.info("Журнал отмены вытесняется в {}", spillFile);
+        }
+        return spill;
+    }
+
+    private void closeSpill() throws IOException {
+        if (spill != null) {
+            spill.close();
+            spill = null;
+            if (!spillFile.delete()) {
+                logger.warn("Не удалось удалить журнал отмены {}", spillFile);
+            }
+        }
+    }
+
+    private byte[] block() {
+        if (block == null) {
+            block = new byte[BLOCK_SIZE];
+        }
+        return block;
+    }
+
+    private static void readFully(FileBackend backend, long position, byte[] dst, int length) throws IOException {
+        if (backend.read(position, dst, 0, length) < length) {
+            throw new EOFException("Файл короче ожидаемого: позиция " + position);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.example.hexeditor;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Низкоуровневый доступ к содержимому файла для {@link HexFileModel}.
+ * Все смещения и длины — long, поэтому реализации работают с файлами
+ * больше 2 ГиБ.
+ */
+public interface FileBackend extends Closeable {
+
+    /**
+     * Способ доступа к файлу.
+     */
+    enum Kind {
+        /** RandomAccessFile с кэшем страниц ({@link CachedFileBackend}) */
+        CACHED,
+        /** Скользящие окна MappedByteBuffer ({@link MappedFileBackend}) */
+        MAPPED
+    }
+
+    /**
+     * @return текущая длина файла в байтах
+     */
+    long length() throws IOException;
+
+    /**
+     * Читает блок байт.
+     *
+     * @param position позиция в файле
+     * @param dst буфер назначения
+     * @param off смещение в буфере
+     * @param len количество байт
+     * @return количество прочитанных байт (меньше len в конце файла)
+     */
+    int read(long position, byte[] dst, int off, int len) throws IOException;
+
+    /**
+     * Записывает блок байт; запись за концом файла увеличивает его длину.
+     *
+     * @param position позиция в файле
+     * @param src данные
+     * @param off смещение в массиве
+     * @param len количество байт
+     */
+    void write(long position, byte[] src, int off, int len) throws IOException;
+
+    /**
+     * Изменяет длину файла.
+     *
+     * @param length новая длина в байтах
+     */
+    void setLength(long length) throws IOException;
+
+    /**
+     * Сбрасывает записанные данные на диск (fsync).
+     */
+    void force() throws IOException;
+
+    /**
+     * Передает диапазон файла в канал средствами ОС (FileChannel.transferTo),
+     * минуя Java heap.
+     *
+     * @param position позиция в файле
+     * @param count количество байт
+     * @param target канал назначения
+     */
+    void transferTo(long position, long count, WritableByteChannel target) throws IOException;
+
+    /**
+     * Открывает файл с указанным способом доступа.
+     *
+     * @param file файл
+     * @param kind способ доступа
+     * @param cacheBudget бюджет памяти кэша страниц (для {@link Kind#CACHED})
+     * @return открытый бэкенд
+     */
+    static FileBackend open(File file, Kind kind, long cacheBudget) throws IOException {
+        switch (kind) {
+            case MAPPED:
+                return new MappedFileBackend(file, MappedFileBackend.DEFAULT_WINDOW_SIZE,
+                        MappedFileBackend.DEFAULT_MAX_WINDOWS);
+            case CACHED:
+            default:
+                return new CachedFileBackend(file, cacheBudget);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.example.hexeditor;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Сохранение содержимого {@link HexFileModel} в файл без загрузки его в память.
+ * Данные пишутся потоково во временный файл рядом с целевым, который после
+ * успешной записи атомарно переименовывается поверх целевого: прерванное
+ * сохранение не портит существующий файл.
+ */
+public class FileSaver {
+    /** Размер буфера для записи добавленных данных (1 МиБ) */
+    public static final int BUFFER_SIZE = 1024 * 1024;
+    /** Максимальный объем одного вызова transferTo (между проверками отмены) */
+    public static final long TRANSFER_SIZE = 64L * 1024 * 1024;
+
+    private static final Logger logger = LoggerFactory.getLogger(FileSaver.class);
+
+    /**
+     * Получатель прогресса сохранения.
+     */
+    public interface Progress {
+        /**
+         * @param written записано байт
+         * @param total всего байт
+         */
+        void update(long written, long total);
+
+        /**
+         * @return true, если сохранение нужно прервать
+         */
+        boolean isCancelled();
+    }
+
+    private FileSaver() {
+    }
+
+    /**
+     * Сохраняет содержимое модели в файл.
+     *
+     * @param model модель с данными
+     * @param target целевой файл (может совпадать с открытым в модели)
+     * @param progress получатель прогресса и признака отмены
+     * @return количество записанных байт
+     * @throws java.io.InterruptedIOException если сохранение отменено
+     */
+    public static long save(HexFileModel model, File target, Progress progress) throws IOException {
+        return save(model.snapshot(), target, progress);
+    }
+
+    /**
+     * Сохраняет снимок содержимого в файл; модель тем временем можно править.
+     *
+     * @param snapshot снимок содержимого
+     * @param target целевой файл (может совпадать с открытым в модели)
+     * @param progress получатель прогресса и признака отмены
+     * @return количество записанных байт
+     * @throws java.io.InterruptedIOException если сохранение отменено
+     */
+    public static long save(HexFileModel.Snapshot snapshot, File target, Progress progress) throws IOException {
+        Path targetPath = target.getAbsoluteFile().toPath();
+        Path temp = Files.createTempFile(targetPath.getParent(), "." + target.getName() + ".", ".tmp");
+        logger.info("Сохранение версии {} в {} через {}", snapshot.getVersion(), targetPath, temp);
+        long started = System.nanoTime();
+        boolean success = false;
+        try {
+            long written;
+            try (FileChannel out = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                written = snapshot.writeTo(out, progress);
+                out.force(true);
+            }
+            copyPermissions(targetPath, temp);
+            try {
+                Files.move(temp, targetPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                logger.warn("Атомарное переименование не поддерживается, замена файла обычным перемещением");
+                Files.move(temp, targetPath, StandardCopyOption.REPLACE_EXISTING);
+            }
+            success = true;
+            double seconds = (System.nanoTime() - started) / 1e9;
+            logger.info("Сохранено {} байт за {} с ({} МиБ/с)", written, String.format("%.2f", seconds),
+                    String.format("%.1f", throughput(written, seconds)));
+            return written;
+        } finally {
+            if (!success) {
+                Files.deleteIfExists(temp);
+            }
+        }
+    }
+
+    /**
+     * @return скорость в МиБ/с
+     */
+    public static double throughput(long bytes, double seconds) {
+        return seconds <= 0 ? 0 : bytes / seconds / (1024 * 1024);
+    }
+
+    private static void copyPermissions(Path from, Path to) {
+        if (!Files.exists(from)) {
+            return;
+        }
+        try {
+            Files.setPosixFilePermissions(to, Files.getPosixFilePermissions(from));
+        } catch (UnsupportedOperationException | IOException e) {
+            logger.debug("Права доступа не скопированы: {}", e.getMessage());
+        }
+    }
+}
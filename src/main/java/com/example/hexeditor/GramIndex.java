@@ -0,0 +1,728 @@
+package com.example.hexeditor;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Индекс 4-грамм исходного файла для повторного поиска без полного просмотра.
+ * Файл делится на блоки по {@link #BLOCK_SIZE}; для каждого блока хранится
+ * множество 16-битных хэшей 4-грамм, начинающихся в блоке или не дальше
+ * {@link #REACH} байт за его концом: отсортированный массив, если хэшей мало,
+ * или битовая карта на 2^16 бит (8 КиБ). На грамму блока приходится около двух
+ * бит карты, поэтому даже на случайных данных заполнено около 40% карты
+ * и каждая 4-грамма шаблона отсекает больше половины блоков.
+ * Совпадение, начинающееся в блоке, дает в его множество все свои 4-граммы
+ * с позиций шаблона до {@link #REACH}, поэтому блок-кандидат — тот, в множестве
+ * которого есть все такие 4-граммы шаблона без масок; соседний блок не нужен.
+ * Индекс описывает сам файл, а не правки: диапазоны кандидатов переводятся
+ * в логические позиции по фрагментам снимка, данные не из файла и стыки
+ * фрагментов просматриваются всегда. Поэтому правки таблицы фрагментов индекс
+ * не меняют, а прямая запись исправляет его (см. {@link #fileChanged}).
+ * Индекс пишется рядом с файлом ({@code <файл>.hexidx}) при построении и годится,
+ * пока у файла те же длина и время изменения. В памяти держатся множества
+ * блоков в пределах {@link #MEMORY_BUDGET} (на случайных данных это около
+ * четверти размера файла); множества остальных блоков читаются из файла
+ * индекса при вычислении кандидатов — это вчетверо меньше чтения, чем просмотр
+ * самих блоков.
+ */
+public final class GramIndex {
+    /** Суффикс файла индекса */
+    public static final String SUFFIX = ".hexidx";
+    /** Размер блока индекса (32 КиБ) */
+    public static final int BLOCK_SIZE = 32 * 1024;
+    /** Длина граммы */
+    public static final int GRAM = 4;
+    /** Граммы шаблона проверяются с позиций до REACH; блок хранит граммы на столько же байт за своим концом */
+    public static final int REACH = 1024;
+    /** Бюджет памяти индекса; задается свойством {@code hexeditor.index.budget} */
+    public static final long MEMORY_BUDGET = Long.getLong("hexeditor.index.budget", 512L * 1024 * 1024);
+    /** Прямая запись не длиннее этого числа блоков индексируется заново сразу */
+    public static final int PATCH_LIMIT = 64;
+
+    private static final long MAGIC = 0x4845_5849_4458_0002L;
+    private static final int HASH_SPACE = 1 << 16;
+    private static final int BITMAP_BYTES = HASH_SPACE / Byte.SIZE;
+    /** Больше хэшей в блоке — битовая карта (отсортированный массив был бы больше 8 КиБ) */
+    private static final int SPARSE_LIMIT = HASH_SPACE / Long.SIZE * 4;
+    private static final byte SPARSE = 1;
+    private static final byte DENSE = 2;
+    /** Больше различных 4-грамм шаблона не проверяется: фильтр уже достаточно строгий */
+    private static final int MAX_QUERY_GRAMS = 32;
+    /** Заголовок файла индекса: признак, блок, REACH, метка построения, длина, время изменения, число блоков */
+    private static final int STAMP_OFFSET = 16;
+    private static final int MODIFIED_OFFSET = 32;
+    private static final int HEADER = 44;
+    /** Самая длинная запись блока: тип, число хэшей и массив не больше карты */
+    private static final int MAX_RECORD = 3 + BITMAP_BYTES;
+
+    private static final Logger logger = LoggerFactory.getLogger(GramIndex.class);
+
+    /**
+     * Чтение данных файла.
+     */
+    public interface BlockReader {
+        /**
+         * @return количество прочитанных байт (меньше length в конце файла)
+         */
+        int read(long position, byte[] dst, int off, int length) throws IOException;
+    }
+
+    /** Отсортированные хэши блока в памяти или null */
+    private final char[][] sparse;
+    /** Битовая карта хэшей блока в памяти или null */
+    private final long[][] dense;
+    /** Позиция записи блока в файле индекса или 0; блок без множеств в памяти и записи неизвестен */
+    private final long[] records;
+    /** Бюджет памяти множеств */
+    private final long budget;
+    /** Метка построения в заголовке файла индекса: записи читаются, только пока она совпадает */
+    private final long stamp;
+    /** Проиндексировано блоков с начала файла; дальше блоки неизвестны */
+    private volatile int covered;
+    private long fileLength;
+    /** Версия файла (см. {@link HexFileModel.Snapshot#getFileVersion()}), которую описывает индекс */
+    private volatile long fileVersion;
+    private long memory;
+    /** Файл индекса с записями блоков или null */
+    private volatile File sidecar;
+    /** Файл индекса уже помечен устаревшим после прямой записи */
+    private boolean sidecarStale;
+
+    private GramIndex(long fileLength, long fileVersion, long budget, long stamp) {
+        int blocks = blockCount(fileLength);
+        this.sparse = new char[blocks][];
+        this.dense = new long[blocks][];
+        this.records = new long[blocks];
+        this.fileLength = fileLength;
+        this.fileVersion = fileVersion;
+        this.budget = budget;
+        this.stamp = stamp;
+    }
+
+    /**
+     * Строит индекс файла и пишет его рядом с файлом (через временный файл).
+     * Множества блоков сверх {@link #MEMORY_BUDGET} остаются только в файле индекса.
+     *
+     * @param file снимок самого файла (см. {@link HexFileModel#fileSnapshot()})
+     * @param target файл данных
+     * @param progress получатель прогресса; отмена проверяется между блоками
+     * @return индекс
+     * @throws InterruptedIOException если построение отменено
+     */
+    public static GramIndex build(HexFileModel.Snapshot file, File target, FileSaver.Progress progress)
+            throws IOException {
+        return build(file, target, MEMORY_BUDGET, progress);
+    }
+
+    static GramIndex build(HexFileModel.Snapshot file, File target, long budget, FileSaver.Progress progress)
+            throws IOException {
+        long length = file.getLength();
+        GramIndex index = new GramIndex(length, file.getFileVersion(), budget, ThreadLocalRandom.current().nextLong());
+        File sidecar = sidecarOf(target);
+        File temp = new File(sidecar.getPath() + ".tmp");
+        byte[] buffer = new byte[BLOCK_SIZE + REACH + GRAM - 1];
+        long[] bitmap = new long[HASH_SPACE / Long.SIZE];
+        long started = System.nanoTime();
+        int blocks = index.sparse.length;
+        int spilled = 0;
+        boolean built = false;
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    Files.newOutputStream(temp.toPath()), 64 * 1024))) {
+                out.writeLong(MAGIC);
+                out.writeInt(BLOCK_SIZE);
+                out.writeInt(REACH);
+                out.writeLong(index.stamp);
+                out.writeLong(length);
+                out.writeLong(target.lastModified());
+                out.writeInt(blocks);
+                long position = HEADER;
+                for (int b = 0; b < blocks; b++) {
+                    if (progress.isCancelled()) {
+                        throw new InterruptedIOException("Построение индекса отменено");
+                    }
+                    int read = file.readBlock((long) b * BLOCK_SIZE, buffer, 0, buffer.length);
+                    int distinct = collect(buffer, read, bitmap);
+                    index.records[b] = position;
+                    position += write(out, bitmap, distinct);
+                    if (index.memory + setSize(distinct) <= budget) {
+                        index.keep(b, bitmap, distinct);
+                    } else {
+                        spilled++;
+                    }
+                    Arrays.fill(bitmap, 0);
+                    index.covered = b + 1;
+                    progress.update(Math.min((long) (b + 1) * BLOCK_SIZE, length), length);
+                }
+            }
+            Files.move(temp.toPath(), sidecar.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            built = true;
+        } finally {
+            if (!built) {
+                Files.deleteIfExists(temp.toPath());
+            }
+        }
+        index.sidecar = sidecar;
+        double seconds = (System.nanoTime() - started) / 1e9;
+        logger.info("Индекс построен: {} блоков, {} КиБ в памяти, {} блоков только в {} ({} байт), {} МиБ/с",
+                blocks, index.memory / 1024, spilled, sidecar, sidecar.length(),
+                String.format("%.1f", FileSaver.throughput(length, seconds)));
+        return index;
+    }
+
+    /**
+     * @return файл индекса для файла данных
+     */
+    public static File sidecarOf(File target) {
+        return new File(target.getPath() + SUFFIX);
+    }
+
+    /**
+     * Загружает индекс, сохраненный рядом с файлом. Множества блоков сверх
+     * {@link #MEMORY_BUDGET} не читаются: они остаются в файле индекса.
+     *
+     * @param target файл данных
+     * @param file снимок самого файла: его длина и версия
+     * @return индекс или null, если файла индекса нет или он устарел
+     */
+    public static GramIndex load(File target, HexFileModel.Snapshot file) throws IOException {
+        return load(target, file, MEMORY_BUDGET);
+    }
+
+    static GramIndex load(File target, HexFileModel.Snapshot file, long budget) throws IOException {
+        File sidecar = sidecarOf(target);
+        if (!sidecar.isFile()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                Files.newInputStream(sidecar.toPath()), 64 * 1024))) {
+            if (in.readLong() != MAGIC || in.readInt() != BLOCK_SIZE || in.readInt() != REACH) {
+                logger.warn("Файл индекса {} другого формата, не используется", sidecar);
+                return null;
+            }
+            long stamp = in.readLong();
+            long length = in.readLong();
+            long modified = in.readLong();
+            if (length != file.getLength() || length != target.length() || modified != target.lastModified()) {
+                logger.info("Файл индекса {} устарел, не используется", sidecar);
+                return null;
+            }
+            GramIndex index = new GramIndex(length, file.getFileVersion(), budget, stamp);
+            int covered = in.readInt();
+            if (covered < 0 || covered > index.sparse.length) {
+                logger.warn("Файл индекса {} поврежден, не используется", sidecar);
+                return null;
+            }
+            long position = HEADER;
+            int spilled = 0;
+            for (int b = 0; b < covered; b++) {
+                index.records[b] = position;
+                byte type = in.readByte();
+                if (type == SPARSE) {
+                    int count = in.readChar();
+                    position += 3 + count * 2L;
+                    if (index.memory + count * 2L > budget) {
+                        skipFully(in, count * 2);
+                        spilled++;
+                        continue;
+                    }
+                    char[] hashes = new char[count];
+                    for (int i = 0; i < hashes.length; i++) {
+                        hashes[i] = in.readChar();
+                    }
+                    index.sparse[b] = hashes;
+                    index.memory += hashes.length * 2L;
+                } else if (type == DENSE) {
+                    position += 1 + BITMAP_BYTES;
+                    if (index.memory + BITMAP_BYTES > budget) {
+                        skipFully(in, BITMAP_BYTES);
+                        spilled++;
+                        continue;
+                    }
+                    long[] bitmap = new long[HASH_SPACE / Long.SIZE];
+                    for (int i = 0; i < bitmap.length; i++) {
+                        bitmap[i] = in.readLong();
+                    }
+                    index.dense[b] = bitmap;
+                    index.memory += BITMAP_BYTES;
+                } else {
+                    logger.warn("Файл индекса {} поврежден, не используется", sidecar);
+                    return null;
+                }
+            }
+            index.covered = covered;
+            index.sidecar = sidecar;
+            logger.info("Индекс загружен из {}: {} блоков, {} КиБ в памяти, {} блоков читается из файла",
+                    sidecar, covered, index.memory / 1024, spilled);
+            return index;
+        } catch (EOFException e) {
+            logger.warn("Файл индекса {} поврежден, не используется: {}", sidecar, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * @return версия файла, которую описывает индекс
+     */
+    public long getFileVersion() {
+        return fileVersion;
+    }
+
+    /**
+     * @return число проиндексированных блоков с начала файла
+     */
+    public int getCoveredBlocks() {
+        return covered;
+    }
+
+    /**
+     * @return число блоков файла
+     */
+    public int getBlockCount() {
+        return sparse.length;
+    }
+
+    /**
+     * @return объем множеств блоков в памяти
+     */
+    public long getMemoryUsed() {
+        return memory;
+    }
+
+    /**
+     * Учитывает правку, примененную прямо к файлу; вызывается под блокировкой
+     * записи модели после записи данных.
+     * Замена на месте индексирует затронутые блоки заново в памяти (не больше
+     * {@link #PATCH_LIMIT}, иначе они становятся неизвестными); сдвиг данных
+     * делает неизвестными все блоки начиная с позиции правки.
+     * Файл индекса помечается устаревшим, чтобы не загружаться для нового
+     * содержимого, но записи нетронутых блоков в нем по-прежнему читаются.
+     *
+     * @param reader чтение файла после правки
+     * @param position позиция правки
+     * @param removed удалено байт
+     * @param inserted вставлено байт
+     * @param newLength длина файла после правки
+     * @param version новая версия файла
+     */
+    synchronized void fileChanged(BlockReader reader, long position, long removed, long inserted,
+                                  long newLength, long version) throws IOException {
+        // граммы блока захватывают REACH + GRAM - 1 байт за его концом
+        int first = (int) (Math.max(0, position - (REACH + GRAM - 1)) / BLOCK_SIZE);
+        if (removed != inserted) {
+            for (int b = first; b < covered; b++) {
+                forget(b);
+            }
+            covered = Math.min(covered, first);
+            logger.debug("Индекс усечен до {} блоков после сдвига с позиции {}", covered, position);
+        } else if (inserted > 0) {
+            int last = (int) Math.min(covered - 1L, (position + inserted - 1) / BLOCK_SIZE);
+            if (last - first + 1 <= PATCH_LIMIT) {
+                byte[] buffer = new byte[BLOCK_SIZE + REACH + GRAM - 1];
+                long[] bitmap = new long[HASH_SPACE / Long.SIZE];
+                for (int b = first; b <= last; b++) {
+                    forget(b);
+                    int read = reader.read((long) b * BLOCK_SIZE, buffer, 0, buffer.length);
+                    keep(b, bitmap, collect(buffer, Math.max(0, read), bitmap));
+                    Arrays.fill(bitmap, 0);
+                }
+            } else {
+                for (int b = first; b <= last; b++) {
+                    forget(b);
+                }
+            }
+        }
+        fileLength = newLength;
+        fileVersion = version;
+        File file = sidecar;
+        if (file != null && !sidecarStale) {
+            sidecarStale = true;
+            try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+                out.seek(STAMP_OFFSET);
+                if (out.readLong() == stamp) {
+                    out.seek(MODIFIED_OFFSET);
+                    out.writeLong(Long.MIN_VALUE);
+                    logger.debug("Файл индекса {} помечен устаревшим после прямой записи", file);
+                }
+            } catch (IOException e) {
+                // без файла записи вытесненных блоков недоступны: такие блоки становятся неизвестными
+                logger.warn("Не удалось пометить файл индекса {} устаревшим: {}", file, e.getMessage());
+                Files.deleteIfExists(file.toPath());
+                sidecar = null;
+            }
+        }
+    }
+
+    /**
+     * Вычисляет диапазоны снимка, в которых могут начинаться совпадения шаблона.
+     *
+     * @param snapshot снимок содержимого
+     * @param pattern шаблон
+     * @return пары [начало, конец) логических позиций по возрастанию, без пересечений,
+     *         или null, если индекс не сужает поиск (нет 4-грамм без масок
+     *         или кандидатов больше половины содержимого)
+     */
+    public long[] candidates(HexFileModel.Snapshot snapshot, BytePattern pattern) throws IOException {
+        int[] grams = queryGrams(pattern);
+        long length = snapshot.getLength();
+        if (grams.length == 0) {
+            return null;
+        }
+        int tail = pattern.length() - 1;
+        int coveredBlocks = covered;
+        Ranges ranges = new Ranges();
+        long[] position = {0};
+        try (Records spilled = new Records(sidecar)) {
+            snapshot.visit((source, sourceOffset, pieceLength) -> {
+                long at = position[0];
+                if (source == PieceTable.Source.ORIGINAL) {
+                    long sourceEnd = sourceOffset + pieceLength;
+                    for (long b = sourceOffset / BLOCK_SIZE; b * BLOCK_SIZE < sourceEnd; b++) {
+                        if (b >= coveredBlocks || mayContain((int) b, grams, spilled)) {
+                            long start = Math.max(b * BLOCK_SIZE, sourceOffset);
+                            long end = Math.min((b + 1) * BLOCK_SIZE, sourceEnd);
+                            ranges.add(at + start - sourceOffset, at + end - sourceOffset);
+                        }
+                    }
+                } else {
+                    ranges.add(at, at + pieceLength);
+                }
+                // совпадения, пересекающие конец фрагмента
+                ranges.add(Math.max(0, at + pieceLength - tail), at + pieceLength);
+                position[0] = at + pieceLength;
+                return true;
+            });
+        }
+        long[] merged = ranges.merge();
+        long total = 0;
+        for (int i = 0; i < merged.length; i += 2) {
+            total += merged[i + 1] - merged[i];
+        }
+        if (total > length / 2) {
+            logger.debug("Индекс не сужает поиск: кандидатов {} байт из {}", total, length);
+            return null;
+        }
+        logger.debug("Кандидаты по индексу: {} диапазонов, {} байт из {}", merged.length / 2, total, length);
+        return merged;
+    }
+
+    /**
+     * Множество блока b содержит все граммы шаблона; неизвестный блок — кандидат.
+     */
+    private boolean mayContain(int b, int[] grams, Records spilled) throws IOException {
+        char[] hashes = sparse[b];
+        long[] bitmap = dense[b];
+        if (hashes == null && bitmap == null) {
+            long record = records[b];
+            return record == 0 || spilled.mayContain(record, grams);
+        }
+        for (int hash : grams) {
+            boolean present = hashes != null
+                    ? Arrays.binarySearch(hashes, (char) hash) >= 0
+                    : (bitmap[hash >>> 6] & 1L << hash) != 0;
+            if (!present) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Собирает хэши грамм блока в карту по его данным (с REACH + 3 байтами следующего блока).
+     *
+     * @return число различных хэшей
+     */
+    private static int collect(byte[] data, int read, long[] bitmap) {
+        int grams = Math.min(BLOCK_SIZE + REACH, read - (GRAM - 1));
+        int distinct = 0;
+        if (grams > 0) {
+            int gram = (data[0] & 0xFF) << 16 | (data[1] & 0xFF) << 8 | (data[2] & 0xFF);
+            for (int i = 0; i < grams; i++) {
+                gram = gram << 8 | (data[i + GRAM - 1] & 0xFF);
+                int hash = hash(gram);
+                long bit = 1L << hash;
+                if ((bitmap[hash >>> 6] & bit) == 0) {
+                    bitmap[hash >>> 6] |= bit;
+                    distinct++;
+                }
+            }
+        }
+        return distinct;
+    }
+
+    /**
+     * @return объем множества из distinct хэшей в памяти и в записи файла индекса
+     */
+    private static int setSize(int distinct) {
+        return distinct <= SPARSE_LIMIT ? distinct * 2 : BITMAP_BYTES;
+    }
+
+    /**
+     * Сохраняет собранное множество блока в памяти.
+     */
+    private void keep(int b, long[] bitmap, int distinct) {
+        if (distinct <= SPARSE_LIMIT) {
+            char[] hashes = new char[distinct];
+            int n = 0;
+            for (int w = 0; w < bitmap.length; w++) {
+                for (long word = bitmap[w]; word != 0; word &= word - 1) {
+                    hashes[n++] = (char) (w << 6 | Long.numberOfTrailingZeros(word));
+                }
+            }
+            sparse[b] = hashes;
+        } else {
+            dense[b] = bitmap.clone();
+        }
+        memory += setSize(distinct);
+    }
+
+    /**
+     * Пишет запись блока: тип, затем число и хэши по возрастанию или карта.
+     *
+     * @return длина записи
+     */
+    private static int write(DataOutputStream out, long[] bitmap, int distinct) throws IOException {
+        if (distinct <= SPARSE_LIMIT) {
+            out.writeByte(SPARSE);
+            out.writeChar(distinct);
+            for (int w = 0; w < bitmap.length; w++) {
+                for (long word = bitmap[w]; word != 0; word &= word - 1) {
+                    out.writeChar(w << 6 | Long.numberOfTrailingZeros(word));
+                }
+            }
+            return 3 + distinct * 2;
+        }
+        out.writeByte(DENSE);
+        for (long word : bitmap) {
+            out.writeLong(word);
+        }
+        return 1 + BITMAP_BYTES;
+    }
+
+    private void forget(int b) {
+        if (sparse[b] != null) {
+            memory -= sparse[b].length * 2L;
+        }
+        if (dense[b] != null) {
+            memory -= BITMAP_BYTES;
+        }
+        sparse[b] = null;
+        dense[b] = null;
+        records[b] = 0;
+    }
+
+    /**
+     * @return различные хэши 4-грамм шаблона с позиций до {@link #REACH}, все байты которых без масок
+     */
+    private static int[] queryGrams(BytePattern pattern) {
+        int[] hashes = new int[MAX_QUERY_GRAMS];
+        int count = 0;
+        for (int j = 0; j <= REACH && j + GRAM <= pattern.length() && count < MAX_QUERY_GRAMS; j++) {
+            int gram = 0;
+            boolean fixed = true;
+            for (int k = j; k < j + GRAM; k++) {
+                fixed &= pattern.maskAt(k) == (byte) 0xFF;
+                gram = gram << 8 | (pattern.valueAt(k) & 0xFF);
+            }
+            int hash = hash(gram);
+            if (fixed && !contains(hashes, count, hash)) {
+                hashes[count++] = hash;
+            }
+        }
+        return Arrays.copyOf(hashes, count);
+    }
+
+    private static boolean contains(int[] values, int count, int value) {
+        for (int i = 0; i < count; i++) {
+            if (values[i] == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int hash(int gram) {
+        return (gram * 0x9E3779B1) >>> 16;
+    }
+
+    private static int blockCount(long length) {
+        long blocks = (length + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        if (blocks > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Файл слишком велик для индекса: " + length);
+        }
+        return (int) blocks;
+    }
+
+    private static void skipFully(DataInputStream in, int count) throws IOException {
+        for (int left = count; left > 0; ) {
+            int skipped = in.skipBytes(left);
+            if (skipped <= 0) {
+                throw new EOFException("Запись блока обрезана");
+            }
+            left -= skipped;
+        }
+    }
+
+    /**
+     * Чтение записей вытесненных блоков из файла индекса на время одного
+     * вычисления кандидатов. Файл открывается при первой записи; если его нет
+     * или он перестроен другим индексом (метка не совпадает), вытесненные
+     * блоки считаются неизвестными.
+     */
+    private final class Records implements AutoCloseable {
+        private final File file;
+        private final ByteBuffer buffer = ByteBuffer.allocate(MAX_RECORD);
+        private FileChannel channel;
+        private boolean usable;
+
+        Records(File file) {
+            this.file = file;
+            this.usable = file != null;
+        }
+
+        boolean mayContain(long record, int[] grams) throws IOException {
+            if (!open()) {
+                return true;
+            }
+            buffer.clear();
+            readAt(record, buffer);
+            if (buffer.position() < 3) {
+                return true;
+            }
+            if (buffer.get(0) == SPARSE) {
+                int count = Math.min(buffer.getChar(1), (buffer.position() - 3) / 2);
+                for (int hash : grams) {
+                    if (!containsSorted(count, (char) hash)) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+            if (buffer.position() < 1 + BITMAP_BYTES) {
+                return true;
+            }
+            for (int hash : grams) {
+                if ((buffer.getLong(1 + (hash >>> 6) * Long.BYTES) & 1L << hash) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private boolean containsSorted(int count, char hash) {
+            int low = 0;
+            int high = count - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                char value = buffer.getChar(3 + mid * 2);
+                if (value < hash) {
+                    low = mid + 1;
+                } else if (value > hash) {
+                    high = mid - 1;
+                } else {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private boolean open() throws IOException {
+            if (channel != null || !usable) {
+                return usable;
+            }
+            try {
+                channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            } catch (NoSuchFileException e) {
+                logger.debug("Файла индекса {} нет, вытесненные блоки просматриваются", file);
+                usable = false;
+                return false;
+            }
+            ByteBuffer header = ByteBuffer.allocate(Long.BYTES);
+            readAt(STAMP_OFFSET, header);
+            usable = !header.hasRemaining() && header.getLong(0) == stamp;
+            if (!usable) {
+                logger.debug("Файл индекса {} перестроен, вытесненные блоки просматриваются", file);
+            }
+            return usable;
+        }
+
+        /**
+         * Читает с позиции до заполнения буфера или конца файла.
+         */
+        private void readAt(long position, ByteBuffer dst) throws IOException {
+            while (dst.hasRemaining()) {
+                if (channel.read(dst, position + dst.position()) < 0) {
+                    return;
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (channel != null) {
+                channel.close();
+            }
+        }
+    }
+
+    /**
+     * Накопитель диапазонов [начало, конец).
+     */
+    private static final class Ranges {
+        private long[] bounds = new long[64];
+        private int size;
+
+        void add(long start, long end) {
+            if (start >= end) {
+                return;
+            }
+            // соседние диапазоны обычно идут подряд: продлеваем последний
+            if (size > 0 && bounds[size - 2] <= start && start <= bounds[size - 1]) {
+                bounds[size - 1] = Math.max(bounds[size - 1], end);
+                return;
+            }
+            if (size == bounds.length) {
+                bounds = Arrays.copyOf(bounds, size * 2);
+            }
+            bounds[size++] = start;
+            bounds[size++] = end;
+        }
+
+        long[] merge() {
+            int count = size / 2;
+            long[][] pairs = new long[count][];
+            for (int i = 0; i < count; i++) {
+                pairs[i] = new long[]{bounds[2 * i], bounds[2 * i + 1]};
+            }
+            Arrays.sort(pairs, (a, b) -> Long.compare(a[0], b[0]));
+            long[] merged = new long[size];
+            int n = 0;
+            for (long[] pair : pairs) {
+                if (n > 0 && pair[0] <= merged[n - 1]) {
+                    merged[n - 1] = Math.max(merged[n - 1], pair[1]);
+                } else {
+                    merged[n++] = pair[0];
+                    merged[n++] = pair[1];
+                }
+            }
+            return Arrays.copyOf(merged, n);
+        }
+    }
+}
@@ -1,5 +1,8 @@
 package com.example.hexeditor;
 
+import javax.swing.AbstractAction;
+import javax.swing.Action;
+import javax.swing.ActionMap;
 import javax.swing.JPanel;
 import javax.swing.SwingWorker;
 import javax.swing.JLabel;
@@ -11,8 +14,12 @@ import javax.swing.ListSelectionModel;
 import javax.swing.JMenuBar;
 import javax.swing.JMenu;
 import javax.swing.JMenuItem;
+import javax.swing.JCheckBoxMenuItem;
+import javax.swing.JComboBox;
 import javax.swing.JFileChooser;
 import javax.swing.JOptionPane;
+import javax.swing.KeyStroke;
+import javax.swing.ProgressMonitor;
 import javax.swing.table.DefaultTableCellRenderer;
 import java.awt.GridLayout;
 import java.awt.Font;
@@ -20,13 +27,25 @@ import java.awt.BorderLayout;
 import java.awt.Component;
 import java.awt.Dimension;
 import java.awt.Color;
+import java.awt.event.ActionEvent;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+import java.awt.event.InputEvent;
+import java.awt.event.KeyEvent;
 import java.awt.event.MouseEvent;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 import java.io.File;
 import java.io.IOException;
-import java.io.OutputStream;
-import java.nio.file.Files;
+import java.io.InterruptedIOException;
+import java.nio.ByteOrder;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.BooleanSupplier;
 import static java.awt.Color.WHITE;
 import static java.awt.Color.YELLOW;
 import org.slf4j.Logger;
@@ -43,7 +62,7 @@ import org.slf4j.LoggerFactory;
  */
 public class HexEditorFrame extends JFrame {
     /** Ширина окна по умолчанию */
-    public static final int WIDTH = 900;
+    public static final int WIDTH = 1200;
     /** Высота окна по умолчанию */
     public static final int HEIGHT = 600;
     /** Количество байт в одной строке */
@@ -58,10 +77,31 @@ public class HexEditorFrame extends JFrame {
     private JTable table;
     private JLabel statusLabel;
     private JLabel valueLabel;
+    /** Байты выделения для расшифровки значений в статусной строке */
+    private final byte[] valueBytes = new byte[8];
+    private InspectorTableModel inspectorModel;
+    private JMenu fileMenu;
+    /** Порядок байт для статусной строки и инспектора */
+    private ByteOrder byteOrder = ByteOrder.LITTLE_ENDIAN;
     private byte[][] clipboard = null;
     private int clipboardRows = 0;
     private int clipboardCols = 0;
     HexTableModel tableModel = null;
+    private volatile SwingWorker<Long, Hit> searchWorker;
+    /** Поиск соседнего совпадения (F3) */
+    private SwingWorker<Long, Void> findWorker;
+    /** Построение индекса */
+    private SwingWorker<GramIndex, Void> indexWorker;
+    private BytePattern lastPattern;
+    private RowScrollBar rowScrollBar;
+    private JTable rowHeader;
+    private boolean updatingScrollBar;
+    /** Поток чтения данных для таблицы, чтобы поток Swing не ждал диска */
+    private final ExecutorService ioExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "hexeditor-io");
+        thread.setDaemon(true);
+        return thread;
+    });
     private static final Logger logger = LoggerFactory.getLogger(HexEditorFrame.class);
 
     /**
@@ -73,25 +113,40 @@ public class HexEditorFrame extends JFrame {
     public HexEditorFrame(File file) throws IOException {
         logger.info("Создание HexEditorFrame для файла: {}", file.getAbsolutePath());
         this.currentFile = file;
-        initializeEditor();
+        initializeEditor(new HexFileModel(file));
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent e) {
+                if (confirmDiscardChanges()) {
+                    cancelBackgroundWork();
+                    try {
+                        fileModel.close();
+                    } catch (IOException ex) {
+                        logger.warn("Ошибка закрытия файла", ex);
+                    }
+                    dispose();
+                    System.exit(0);
+                }
+            }
+        });
     }
 
     /**
-     * Инициализирует компоненты редактора.
+     * Инициализирует компоненты редактора для открытой модели файла.
      *
-     * @throws IOException если произошла ошибка при инициализации
+     * @param model модель файла {@link #currentFile}
      */
-    private void initializeEditor() throws IOException {
+    private void initializeEditor(HexFileModel model) {
         logger.debug("Инициализация редактора...");
-        this.fileModel = new HexFileModel(currentFile);
+        this.fileModel = model;
         setTitle("HEX редактор - " + currentFile.getName());
         setSize(WIDTH, HEIGHT);
-        setDefaultCloseOperation(EXIT_ON_CLOSE);
+        setDefaultCloseOperation(DO_NOTHING_ON_CLOSE);
         getContentPane().removeAll();
 
-        int rowCount = (int) (fileModel.getLength()/(BYTES_PER_ROW - 1));
-
-        tableModel = new HexTableModel(fileModel, BYTES_PER_ROW);
+        tableModel = new HexTableModel(fileModel, BYTES_PER_ROW, ioExecutor);
+        tableModel.setCellWriter(this::writeCell);
+        watchLength(fileModel);
         table = new JTable(tableModel) {
             @Override
             public String getToolTipText(MouseEvent e) {
@@ -99,18 +154,13 @@ public class HexEditorFrame extends JFrame {
                 int col = columnAtPoint(e.getPoint());
                 if (row < 0 || col < 0) return null;
 
-                long offset = (long) row * getColumnCount() + col;
-                try {
-                    int value = fileModel.readByte(offset);
-                    logger.info("Файл успешно загружен: {} (размер: {} байт)",
-                            currentFile.getName(), fileModel.getLength());
-                    int unsigned = value & 0xFF;
-
-                    return "<html>" + String.format("Offset: %08X\nHex: %02X\nSigned: %d\nUnsigned: %d\n", offset, unsigned, value, unsigned).replace("\n", "<br>") + "</html>";
-                } catch (IOException ex) {
-                    logger.error("Ошибка инициализации редактора для файла {} {}", currentFile.getName(), e);
-                    return "Ошибка чтения байта";
+                long offset = tableModel.getOffset(row, col);
+                int unsigned = tableModel.getByteAt(row, col);
+                if (unsigned < 0) {
+                    return null;
                 }
+                int value = (byte) unsigned;
+                return "<html>" + String.format("Offset: %08X\nHex: %02X\nSigned: %d\nUnsigned: %d\n", offset, unsigned, value, unsigned).replace("\n", "<br>") + "</html>";
             }
         };
 
@@ -122,16 +172,40 @@ public class HexEditorFrame extends JFrame {
         table.getSelectionModel().addListSelectionListener(e -> updateStatus());
         table.getColumnModel().getSelectionModel().addListSelectionListener(e -> updateStatus());
 
-        JScrollPane scrollPane = new JScrollPane(table);
+        JScrollPane scrollPane = new JScrollPane(table,
+                JScrollPane.VERTICAL_SCROLLBAR_NEVER, JScrollPane.HORIZONTAL_SCROLLBAR_AS_NEEDED);
 
-        JTable rowHeader = new JTable(new RowHeaderTableModel(rowCount, BYTES_PER_ROW));
-        rowHeader.setPreferredScrollableViewportSize(new Dimension(80, 0));
+        rowHeader = new JTable(new RowHeaderTableModel(tableModel));
+        rowHeader.setPreferredScrollableViewportSize(new Dimension(120, 0));
         rowHeader.setDefaultRenderer(Object.class, table.getTableHeader().getDefaultRenderer());
         rowHeader.setRowHeight(table.getRowHeight());
         rowHeader.setEnabled(false);
         scrollPane.setRowHeaderView(rowHeader);
 
-        add(scrollPane, BorderLayout.CENTER);
+        rowScrollBar = new RowScrollBar();
+        rowScrollBar.addAdjustmentListener(e -> {
+            if (!updatingScrollBar) {
+                scrollToRow(rowScrollBar.getFirstRow(), true);
+            }
+        });
+        scrollPane.setWheelScrollingEnabled(false);
+        scrollPane.addMouseWheelListener(e -> scrollToRow(
+                tableModel.getFirstRow() + e.getUnitsToScroll(), true));
+        scrollPane.getViewport().addComponentListener(new ComponentAdapter() {
+            @Override
+            public void componentResized(ComponentEvent e) {
+                int height = scrollPane.getViewport().getExtentSize().height;
+                tableModel.setVisibleRows(height / table.getRowHeight());
+                updateScrollBar();
+            }
+        });
+        installNavigationActions();
+
+        JPanel viewPanel = new JPanel(new BorderLayout());
+        viewPanel.add(scrollPane, BorderLayout.CENTER);
+        viewPanel.add(rowScrollBar, BorderLayout.EAST);
+        add(viewPanel, BorderLayout.CENTER);
+        updateScrollBar();
 
         table.setDefaultRenderer(Object.class, new DefaultTableCellRenderer() {
             @Override
@@ -144,12 +218,10 @@ public class HexEditorFrame extends JFrame {
                 Component c = super.getTableCellRendererComponent(table, value, isSelected, hasFocus, row, column);
 
                 HexTableModel model = (HexTableModel) table.getModel();
-                int bytesPerRow = table.getColumnCount();
-                int offset = row * bytesPerRow + column;
 
                 if (isSelected) {
                     c.setBackground(SELECTED_BLUE_COLOR);
-                } else if (model.isHighlighted(offset)) {
+                } else if (model.isHighlighted(row, column)) {
                     c.setBackground(YELLOW);
                 } else {
                     c.setBackground(WHITE);
@@ -167,6 +239,7 @@ public class HexEditorFrame extends JFrame {
         infoPanel.add(statusLabel);
         infoPanel.add(valueLabel);
         add(infoPanel, BorderLayout.SOUTH);
+        add(buildInspectorPanel(), BorderLayout.EAST);
 
         JMenuBar menuBar = new JMenuBar();
         menuBar.add(buildFileMenu());
@@ -174,8 +247,65 @@ public class HexEditorFrame extends JFrame {
         menuBar.add(buildEditMenu());
         setJMenuBar(menuBar);
 
+        // значения под курсором появляются, когда догружается блок строк
+        tableModel.addTableModelListener(e -> updateStatus());
+
         revalidate();
         repaint();
+        offerRecovery();
+        loadIndex();
+    }
+
+    /**
+     * Создает панель инспектора значений с выбором порядка байт.
+     *
+     * @return панель инспектора
+     */
+    private JPanel buildInspectorPanel() {
+        inspectorModel = new InspectorTableModel();
+        inspectorModel.setByteOrder(byteOrder);
+        JTable inspector = new JTable(inspectorModel);
+        inspector.setFont(new Font("Monospaced", Font.PLAIN, FONT_SIZE));
+        inspector.setFocusable(false);
+        inspector.getColumnModel().getColumn(0).setPreferredWidth(110);
+        inspector.getColumnModel().getColumn(1).setPreferredWidth(220);
+        JScrollPane inspectorScroll = new JScrollPane(inspector);
+        inspectorScroll.setPreferredSize(new Dimension(330, 0));
+
+        JComboBox<String> orderBox = new JComboBox<>(new String[]{"Little-endian", "Big-endian"});
+        orderBox.setSelectedIndex(byteOrder == ByteOrder.BIG_ENDIAN ? 1 : 0);
+        orderBox.addActionListener(e -> {
+            byteOrder = orderBox.getSelectedIndex() == 1 ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN;
+            inspectorModel.setByteOrder(byteOrder);
+            updateStatus();
+        });
+
+        JPanel panel = new JPanel(new BorderLayout());
+        panel.add(orderBox, BorderLayout.NORTH);
+        panel.add(inspectorScroll, BorderLayout.CENTER);
+        return panel;
+    }
+
+    /**
+     * Предлагает повторить правки, оставшиеся в журнале после сбоя.
+     */
+    private void offerRecovery() {
+        if (!fileModel.hasRecoverableEdits()) {
+            return;
+        }
+        int answer = JOptionPane.showConfirmDialog(this,
+                "Файл " + currentFile.getName() + " был закрыт аварийно. Восстановить несохраненные правки?",
+                "Восстановление", JOptionPane.YES_NO_OPTION, JOptionPane.QUESTION_MESSAGE);
+        try {
+            if (answer == JOptionPane.YES_OPTION) {
+                int count = fileModel.recoverEdits();
+                statusLabel.setText("Восстановлено правок: " + count);
+            } else {
+                fileModel.discardRecoverableEdits();
+            }
+        } catch (IOException ex) {
+            showError("Ошибка восстановления: " + ex.getMessage());
+        }
     }
 
     /**
@@ -189,6 +319,7 @@ public class HexEditorFrame extends JFrame {
         JMenuItem findItem = new JMenuItem("Найти...");
         JMenuItem clearHighlights = new JMenuItem("Снять выделение");
         clearHighlights.addActionListener(e -> {
+            cancelSearch();
             tableModel.clearSearchHighlights();
             table.repaint();
         });
@@ -199,10 +330,34 @@ public class HexEditorFrame extends JFrame {
             dialog.setVisible(true);
             if (!dialog.isConfirmed()) return;
 
-            byte[] pattern = dialog.getHexBytes();
-            byte[] mask = dialog.getMaskBytes();
+            if (dialog.getMode() != SearchDialog.Mode.HEX) {
+                TextPattern text;
+                try {
+                    text = dialog.getMode() == SearchDialog.Mode.TEXT
+                            ? TextPattern.literal(dialog.getText(), dialog.getEncoding(), dialog.isIgnoreCase())
+                            : TextPattern.regex(dialog.getText(), dialog.getEncoding(), dialog.isIgnoreCase());
+                } catch (IllegalArgumentException ex) {
+                    showError("Ошибка в шаблоне: " + ex.getMessage());
+                    return;
+                }
+                // переход к соседнему совпадению работает с байтовым шаблоном
+                lastPattern = text.toBytePattern();
+                startSearch((searcher, snapshot, listener) -> searcher.search(snapshot, text, listener));
+                return;
+            }
 
-            if ((pattern == null || pattern.length == 0) && (mask == null || mask.length == 0)) {
+            byte[] pattern;
+            byte[] mask;
+            try {
+                pattern = dialog.getHexBytes();
+                mask = dialog.getMaskBytes();
+            } catch (NumberFormatException ex) {
+                showError("Ошибка в шаблоне: " + ex.getMessage());
+                return;
+            }
+
+            // маска без байт шаблона ничего не ищет
+            if (pattern == null || pattern.length == 0) {
                 showError("Введите байты или маску для поиска.");
                 return;
             }
@@ -212,37 +367,552 @@ public class HexEditorFrame extends JFrame {
                 Arrays.fill(mask, (byte) 0xFF);
             }
 
-            byte[] finalPattern = pattern;
-            byte[] finalMask = mask;
+            BytePattern bytes = new BytePattern(pattern, mask);
+            lastPattern = bytes;
+            startSearch((searcher, snapshot, listener) -> searcher.search(snapshot, bytes, listener));
+        });
+
+        JMenuItem signaturesItem = new JMenuItem("Найти сигнатуры...");
+        signaturesItem.addActionListener(e -> {
+            JFileChooser chooser = new JFileChooser();
+            chooser.setDialogTitle("Файл сигнатур");
+            if (chooser.showOpenDialog(this) == JFileChooser.APPROVE_OPTION) {
+                startSignatureSearch(chooser.getSelectedFile());
+            }
+        });
+
+        JMenuItem indexItem = new JMenuItem("Построить индекс");
+        indexItem.addActionListener(e -> buildIndex());
+
+        JMenuItem findNextItem = new JMenuItem("Найти далее");
+        findNextItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_F3, 0));
+        findNextItem.addActionListener(e -> findAdjacent(true));
+        JMenuItem findPreviousItem = new JMenuItem("Найти предыдущее");
+        findPreviousItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_F3, InputEvent.SHIFT_DOWN_MASK));
+        findPreviousItem.addActionListener(e -> findAdjacent(false));
 
-            new SwingWorker<List<Integer>, Void>() {
-                @Override
-                protected List<Integer> doInBackground() throws Exception {
-                    SearchController searcher = new SearchController(fileModel);
-                    return searcher.searchWithMask(finalPattern, finalMask);
+
+        searchMenu.add(findItem);
+        searchMenu.add(signaturesItem);
+        searchMenu.add(findNextItem);
+        searchMenu.add(findPreviousItem);
+        searchMenu.addSeparator();
+        searchMenu.add(indexItem);
+        return searchMenu;
+    }
+
+    /**
+     * Совпадение, передаваемое из фонового поиска в поток Swing.
+     */
+    private static final class Hit {
+        final long offset;
+        final int length;
+
+        Hit(long offset, int length) {
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    /**
+     * Поиск по снимку содержимого, выполняемый в фоновом потоке.
+     */
+    private interface SearchJob {
+        long run(SearchController searcher, HexFileModel.Snapshot snapshot,
+                 SearchController.MatchListener listener) throws IOException;
+    }
+
+    /**
+     * Запускает поиск в фоновом потоке. Совпадения подсвечиваются по мере
+     * нахождения, не дожидаясь окончания просмотра файла.
+     *
+     * @param job поиск по снимку
+     */
+    private void startSearch(SearchJob job) {
+        cancelSearch();
+        tableModel.clearSearchHighlights();
+        table.repaint();
+        // поиск идет по снимку: правки во время поиска не смешивают версии;
+        // модель берется здесь же, в потоке Swing, — после открытия другого файла
+        // фоновый поток не должен смешать старый снимок с индексом новой модели
+        HexFileModel model = fileModel;
+        HexFileModel.Snapshot snapshot = model.snapshot();
+        tableModel.getSearchHits().setContentVersion(snapshot.getVersion());
+
+        SwingWorker<Long, Hit> worker = new SwingWorker<Long, Hit>() {
+            private long found;
+
+            @Override
+            protected Long doInBackground() throws Exception {
+                SwingWorker<Long, Hit> self = this;
+                SearchController searcher = new SearchController(model);
+                return job.run(searcher, snapshot, new SearchController.MatchListener() {
+                    @Override
+                    public void onMatch(long offset, int length) {
+                        publish(new Hit(offset, length));
+                    }
+
+                    @Override
+                    public void onProgress(long scanned, long total) {
+                        setProgress(total == 0 ? 100 : (int) (scanned * 100 / total));
+                    }
+
+                    @Override
+                    public boolean isCancelled() {
+                        return self.isCancelled();
+                    }
+                });
+            }
+
+            @Override
+            protected void process(List<Hit> hits) {
+                if (isCancelled()) {
+                    return;
                 }
+                for (Hit hit : hits) {
+                    tableModel.addSearchHit(hit.offset, hit.length);
+                }
+                found += hits.size();
+                table.repaint();
+                statusLabel.setText(String.format("Поиск: найдено %d (%d%%)", found, getProgress()));
+            }
 
-                @Override
-                protected void done() {
-                    try {
-                        List<Integer> result = get();
+            @Override
+            protected void done() {
+                if (searchWorker == this) {
+                    searchWorker = null;
+                }
+                if (isCancelled()) {
+                    return;
+                }
+                try {
+                    statusLabel.setText("Найдено совпадений: " + get() + staleNote(snapshot));
+                } catch (InterruptedException | ExecutionException ex) {
+                    Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+                    logger.error("Ошибка поиска", cause);
+                    showError("Ошибка поиска: " + cause.getMessage());
+                }
+            }
+        };
+        searchWorker = worker;
+        worker.execute();
+    }
 
-                        SwingUtilities.invokeLater(() -> {
-                            tableModel.setHighlightedOffsets(result);
-                            table.repaint();
-                        });
+    /**
+     * Загружает сигнатуры из файла и ищет их все за один проход в фоновом потоке.
+     * Совпадения подсвечиваются по мере нахождения, по окончании показывается
+     * сводка по каждой сигнатуре.
+     *
+     * @param signatureFile файл сигнатур (см. {@link SignatureSet})
+     */
+    private void startSignatureSearch(File signatureFile) {
+        cancelSearch();
+        tableModel.clearSearchHighlights();
+        table.repaint();
+        HexFileModel model = fileModel;
+        HexFileModel.Snapshot snapshot = model.snapshot();
+        tableModel.getSearchHits().setContentVersion(snapshot.getVersion());
+
+        SwingWorker<Long, Hit> worker = new SwingWorker<Long, Hit>() {
+            private SignatureSet signatures;
+            private long[] counts;
+            private long[] firstOffsets;
+            private long found;
+
+            @Override
+            protected Long doInBackground() throws Exception {
+                SwingWorker<Long, Hit> self = this;
+                signatures = SignatureSet.load(signatureFile);
+                counts = new long[signatures.size()];
+                firstOffsets = new long[signatures.size()];
+                Arrays.fill(firstOffsets, -1);
+                SearchController searcher = new SearchController(model);
+                return searcher.searchSignatures(snapshot, signatures, new SearchController.SignatureListener() {
+                    @Override
+                    public void onMatch(long offset, int length) {
+                        publish(new Hit(offset, length));
+                    }
 
-                    } catch (Exception ex) {
-                        ex.printStackTrace();
-                        showError("Ошибка поиска: " + ex.getMessage());
+                    @Override
+                    public void onSignature(int signature, long offset) {
+                        if (counts[signature]++ == 0) {
+                            firstOffsets[signature] = offset;
+                        }
+                    }
+
+                    @Override
+                    public void onProgress(long scanned, long total) {
+                        setProgress(total == 0 ? 100 : (int) (scanned * 100 / total));
                     }
+
+                    @Override
+                    public boolean isCancelled() {
+                        return self.isCancelled();
+                    }
+                });
+            }
+
+            @Override
+            protected void process(List<Hit> hits) {
+                if (isCancelled()) {
+                    return;
                 }
-            }.execute();
+                for (Hit hit : hits) {
+                    tableModel.addSearchHit(hit.offset, hit.length);
+                }
+                found += hits.size();
+                table.repaint();
+                statusLabel.setText(String.format("Поиск сигнатур: найдено %d (%d%%)", found, getProgress()));
+            }
+
+            @Override
+            protected void done() {
+                if (searchWorker == this) {
+                    searchWorker = null;
+                }
+                if (isCancelled()) {
+                    return;
+                }
+                try {
+                    statusLabel.setText("Найдено совпадений сигнатур: " + get() + staleNote(snapshot));
+                    showSignatureSummary(signatures, counts, firstOffsets);
+                } catch (InterruptedException | ExecutionException ex) {
+                    Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+                    logger.error("Ошибка поиска сигнатур", cause);
+                    showError("Ошибка поиска сигнатур: " + cause.getMessage());
+                }
+            }
+        };
+        searchWorker = worker;
+        worker.execute();
+    }
+
+    /**
+     * Показывает число совпадений и первое смещение для каждой найденной сигнатуры.
+     */
+    private void showSignatureSummary(SignatureSet signatures, long[] counts, long[] firstOffsets) {
+        int rows = 0;
+        for (long count : counts) {
+            if (count > 0) {
+                rows++;
+            }
+        }
+        if (rows == 0) {
+            return;
+        }
+        Object[][] data = new Object[rows][];
+        for (int k = 0, row = 0; k < counts.length; k++) {
+            if (counts[k] > 0) {
+                data[row++] = new Object[]{signatures.get(k).getName(), counts[k],
+                        String.format("%08X", firstOffsets[k])};
+            }
+        }
+        JTable summary = new JTable(data, new Object[]{"Сигнатура", "Совпадений", "Первое смещение"});
+        summary.setDefaultEditor(Object.class, null);
+        JScrollPane scroll = new JScrollPane(summary);
+        scroll.setPreferredSize(new Dimension(500, Math.min(400, 40 + rows * summary.getRowHeight())));
+        JOptionPane.showMessageDialog(this, scroll, "Найденные сигнатуры", JOptionPane.INFORMATION_MESSAGE);
+    }
+
+    /**
+     * Строит индекс 4-грамм открытого файла в фоновом потоке, сохраняет его
+     * рядом с файлом и подключает к модели: повторный поиск затем читает
+     * только блоки-кандидаты.
+     */
+    private void buildIndex() {
+        HexFileModel model = fileModel;
+        File target = currentFile;
+        HexFileModel.Snapshot file = model.fileSnapshot();
+        if (indexWorker != null) {
+            indexWorker.cancel(false);
+        }
+        SwingWorker<GramIndex, Void> worker = new SwingWorker<GramIndex, Void>() {
+            @Override
+            protected GramIndex doInBackground() throws Exception {
+                SwingWorker<GramIndex, Void> self = this;
+                GramIndex index = GramIndex.build(file, target, new FileSaver.Progress() {
+                    @Override
+                    public void update(long written, long total) {
+                        setProgress(total == 0 ? 100 : (int) (written * 100 / total));
+                    }
+
+                    @Override
+                    public boolean isCancelled() {
+                        return self.isCancelled();
+                    }
+                });
+                return index;
+            }
+
+            @Override
+            protected void done() {
+                if (indexWorker == this) {
+                    indexWorker = null;
+                }
+                if (model != fileModel || isCancelled()) {
+                    return;
+                }
+                try {
+                    GramIndex index = get();
+                    if (!model.setIndex(index)) {
+                        statusLabel.setText("Файл изменен во время построения индекса, индекс не подключен");
+                        return;
+                    }
+                    statusLabel.setText(String.format("Индекс построен: %d блоков, в памяти %d КиБ, в файле %d КиБ",
+                            index.getBlockCount(), index.getMemoryUsed() / 1024,
+                            GramIndex.sidecarOf(target).length() / 1024));
+                } catch (InterruptedException | ExecutionException ex) {
+                    Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+                    logger.error("Ошибка построения индекса", cause);
+                    showError("Ошибка построения индекса: " + cause.getMessage());
+                }
+            }
+        };
+        worker.addPropertyChangeListener(e -> {
+            if ("progress".equals(e.getPropertyName()) && model == fileModel) {
+                statusLabel.setText("Построение индекса: " + e.getNewValue() + "%");
+            }
         });
+        statusLabel.setText("Построение индекса...");
+        indexWorker = worker;
+        worker.execute();
+    }
 
+    /**
+     * Подключает сохраненный рядом с файлом индекс, если он соответствует файлу.
+     */
+    private void loadIndex() {
+        HexFileModel model = fileModel;
+        File target = currentFile;
+        if (!GramIndex.sidecarOf(target).isFile()) {
+            return;
+        }
+        HexFileModel.Snapshot file = model.fileSnapshot();
+        new SwingWorker<GramIndex, Void>() {
+            @Override
+            protected GramIndex doInBackground() throws Exception {
+                return GramIndex.load(target, file);
+            }
 
-        searchMenu.add(findItem);
-        return searchMenu;
+            @Override
+            protected void done() {
+                try {
+                    GramIndex index = get();
+                    if (index != null && model == fileModel && model.setIndex(index)) {
+                        statusLabel.setText("Индекс поиска загружен");
+                    }
+                } catch (InterruptedException | ExecutionException ex) {
+                    Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+                    logger.warn("Не удалось загрузить индекс {}: {}", GramIndex.sidecarOf(target), cause.getMessage());
+                }
+            }
+        }.execute();
+    }
+
+    /**
+     * Ищет ближайшее совпадение последнего шаблона после или перед выделенной
+     * ячейкой, без полного просмотра файла, и переходит к нему.
+     *
+     * @param forward true - искать следующее, false - предыдущее
+     */
+    private void findAdjacent(boolean forward) {
+        if (lastPattern == null) {
+            showError("Сначала задайте байты или строку через \"Найти...\"");
+            return;
+        }
+        BytePattern pattern = lastPattern;
+        int row = table.getSelectedRow();
+        int col = table.getSelectedColumn();
+        long cursor = row < 0 || col < 0 ? -1 : tableModel.getOffset(row, col);
+        long from = forward ? cursor + 1 : (cursor < 0 ? Long.MAX_VALUE : cursor);
+        statusLabel.setText(forward ? "Поиск следующего..." : "Поиск предыдущего...");
+        if (findWorker != null) {
+            findWorker.cancel(false);
+        }
+        HexFileModel model = fileModel;
+        HexFileModel.Snapshot snapshot = model.snapshot();
+
+        findWorker = new SwingWorker<Long, Void>() {
+            @Override
+            protected Long doInBackground() throws Exception {
+                SearchController searcher = new SearchController(model);
+                return forward ? searcher.findNext(snapshot, pattern, from, this::isCancelled)
+                        : searcher.findPrevious(snapshot, pattern, from, this::isCancelled);
+            }
+
+            @Override
+            protected void done() {
+                if (findWorker == this) {
+                    findWorker = null;
+                }
+                if (isCancelled()) {
+                    return;
+                }
+                try {
+                    long offset = get();
+                    if (offset < 0) {
+                        statusLabel.setText("Совпадений больше нет");
+                        return;
+                    }
+                    selectRange(offset, pattern.length());
+                    statusLabel.setText(String.format("Совпадение: %08X", offset) + staleNote(snapshot));
+                } catch (InterruptedException | ExecutionException ex) {
+                    Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+                    showError("Ошибка поиска: " + cause.getMessage());
+                }
+            }
+        };
+        findWorker.execute();
+    }
+
+    /**
+     * Выделяет диапазон байт (в пределах строки, где он начинается) и прокручивает к нему.
+     *
+     * @param offset позиция начала
+     * @param length длина диапазона
+     */
+    private void selectRange(long offset, int length) {
+        int columns = table.getColumnCount();
+        long fileRow = offset / columns;
+        if (fileRow < tableModel.getFirstRow() || fileRow >= tableModel.getFirstRow() + tableModel.getRowCount()) {
+            scrollToRow(fileRow - tableModel.getVisibleRows() / 2, false);
+        }
+        int row = (int) (fileRow - tableModel.getFirstRow());
+        int col = (int) (offset % columns);
+        int lastCol = Math.min(columns - 1, col + length - 1);
+        table.changeSelection(row, col, false, false);
+        table.changeSelection(row, lastCol, false, true);
+    }
+
+    /**
+     * Сдвигает видимое окно на указанную строку файла.
+     *
+     * @param row новая первая строка
+     * @param keepSelectionOnData true - выделение сдвигается вместе с данными,
+     *                            false - остается на тех же строках окна
+     */
+    private void scrollToRow(long row, boolean keepSelectionOnData) {
+        long oldFirst = tableModel.getFirstRow();
+        long newFirst = tableModel.setFirstRow(row);
+        long delta = newFirst - oldFirst;
+        if (delta != 0 && keepSelectionOnData) {
+            ListSelectionModel selection = table.getSelectionModel();
+            long anchor = selection.getAnchorSelectionIndex() - delta;
+            long lead = selection.getLeadSelectionIndex() - delta;
+            if (selection.isSelectionEmpty()) {
+                // нечего сдвигать
+            } else if (anchor >= 0 && lead >= 0 && anchor < tableModel.getRowCount() && lead < tableModel.getRowCount()) {
+                selection.setSelectionInterval((int) anchor, (int) lead);
+            } else {
+                selection.clearSelection();
+            }
+        }
+        updateScrollBar();
+    }
+
+    /**
+     * Приводит полосу прокрутки в соответствие с окном модели.
+     */
+    private void updateScrollBar() {
+        updatingScrollBar = true;
+        try {
+            rowScrollBar.setRows(tableModel.getTotalRows(), tableModel.getVisibleRows(), tableModel.getFirstRow());
+        } finally {
+            updatingScrollBar = false;
+        }
+    }
+
+    /**
+     * Подписывает полосу прокрутки на изменения длины файла.
+     * Подписка идет после модели таблицы, поэтому число строк уже пересчитано.
+     */
+    private void watchLength(HexFileModel model) {
+        model.addChangeListener((position, removed, inserted) -> {
+            if (removed == inserted) {
+                return;
+            }
+            if (SwingUtilities.isEventDispatchThread()) {
+                updateScrollBar();
+            } else {
+                SwingUtilities.invokeLater(this::updateScrollBar);
+            }
+        });
+    }
+
+    /**
+     * Переназначает клавиши перемещения по строкам: на краю окна они
+     * прокручивают файл, а не упираются в границу таблицы.
+     */
+    private void installNavigationActions() {
+        ActionMap actions = table.getActionMap();
+        wrapRowAction(actions, "selectNextRow", () -> leadRow() == table.getRowCount() - 1,
+                () -> scrollToRow(tableModel.getFirstRow() + 1, false));
+        wrapRowAction(actions, "selectPreviousRow", () -> leadRow() == 0,
+                () -> scrollToRow(tableModel.getFirstRow() - 1, false));
+        wrapRowAction(actions, "scrollDownChangeSelection", () -> true,
+                () -> scrollToRow(tableModel.getFirstRow() + tableModel.getVisibleRows(), false));
+        wrapRowAction(actions, "scrollUpChangeSelection", () -> true,
+                () -> scrollToRow(tableModel.getFirstRow() - tableModel.getVisibleRows(), false));
+        wrapRowAction(actions, "selectFirstRow", () -> true, () -> {
+            scrollToRow(0, false);
+            table.changeSelection(0, Math.max(0, table.getSelectedColumn()), false, false);
+        });
+        wrapRowAction(actions, "selectLastRow", () -> true, () -> {
+            scrollToRow(tableModel.getMaxFirstRow(), false);
+            table.changeSelection(table.getRowCount() - 1, Math.max(0, table.getSelectedColumn()), false, false);
+        });
+    }
+
+    private int leadRow() {
+        return table.getSelectionModel().getLeadSelectionIndex();
+    }
+
+    private void wrapRowAction(ActionMap actions, String name, BooleanSupplier atEdge, Runnable scroll) {
+        Action original = actions.get(name);
+        actions.put(name, new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                if (atEdge.getAsBoolean() || original == null) {
+                    scroll.run();
+                } else {
+                    original.actionPerformed(e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Прерывает выполняющийся поиск, если он есть.
+     */
+    private void cancelSearch() {
+        SwingWorker<Long, Hit> worker = searchWorker;
+        searchWorker = null;
+        if (worker != null) {
+            worker.cancel(false);
+        }
+    }
+
+    /**
+     * Прерывает поиск и построение индекса перед закрытием или заменой модели:
+     * их снимки читают файл прежней модели.
+     */
+    private void cancelBackgroundWork() {
+        cancelSearch();
+        if (findWorker != null) {
+            findWorker.cancel(false);
+            findWorker = null;
+        }
+        if (indexWorker != null) {
+            indexWorker.cancel(false);
+            indexWorker = null;
+        }
+    }
+
+    /**
+     * @return пометка для результата, полученного по устаревшему снимку
+     */
+    private String staleNote(HexFileModel.Snapshot snapshot) {
+        return snapshot.isCurrent() ? "" : " (по версии " + snapshot.getVersion() + ", файл с тех пор изменен)";
     }
 
     /**
@@ -252,30 +922,12 @@ public class HexEditorFrame extends JFrame {
      */
     private JMenu buildFileMenu() {
         logger.trace("Создание меню 'Файл'");
-        JMenu fileMenu = new JMenu("Файл");
+        fileMenu = new JMenu("Файл");
 
         JMenuItem openItem = getJMenuItem();
 
         JMenuItem saveItem = new JMenuItem("Сохранить");
-        saveItem.addActionListener(e -> {
-            try {
-                byte[] all = fileModel.readAll();
-                fileModel.close();
-
-                try (OutputStream out = Files.newOutputStream(currentFile.toPath())) {
-                    out.write(all);
-                }
-
-                fileModel = new HexFileModel(currentFile);
-                tableModel = new HexTableModel(fileModel, BYTES_PER_ROW);
-                table.setModel(tableModel);
-                tableModel.fireTableStructureChanged();
-
-                statusLabel.setText("Файл сохранен: " + currentFile.getName());
-            } catch (IOException ex) {
-                showError("Ошибка сохранения: " + ex.getMessage());
-            }
-        });
+        saveItem.addActionListener(e -> saveInBackground(currentFile));
 
         JMenuItem saveAsItem = getMenuItem();
 
@@ -290,37 +942,219 @@ public class HexEditorFrame extends JFrame {
         saveAsItem.addActionListener(e -> {
             JFileChooser chooser = new JFileChooser();
             if (chooser.showSaveDialog(this) == JFileChooser.APPROVE_OPTION) {
-                File newFile = chooser.getSelectedFile();
-                try (OutputStream out = Files.newOutputStream(newFile.toPath())) {
-                    byte[] all = fileModel.readAll();
-                    out.write(all);
-                    currentFile = newFile;
-                    setTitle("HEX редактор - " + currentFile.getName());
-                    statusLabel.setText("Сохранено как: " + newFile.getName());
-                } catch (IOException ex) {
-                    showError("Ошибка при сохранении: " + ex.getMessage());
-                }
+                saveInBackground(chooser.getSelectedFile());
             }
         });
         return saveAsItem;
     }
 
+    /**
+     * Сохраняет содержимое в файл в фоновом потоке с индикатором прогресса
+     * и возможностью отмены. Данные пишутся потоково (см. {@link FileSaver}),
+     * после сохранения модель переоткрывается на целевом файле.
+     *
+     * @param target файл для сохранения
+     */
+    private void saveInBackground(File target) {
+        ProgressMonitor monitor = new ProgressMonitor(this, "Сохранение " + target.getName(), "", 0, 100);
+        monitor.setMillisToDecideToPopup(200);
+        // сохраняется снимок, поэтому в режиме таблицы фрагментов правка не прерывается;
+        // прямая запись меняет сам файл и на время сохранения блокируется
+        HexFileModel.Snapshot snapshot = fileModel.snapshot();
+        boolean exclusive = fileModel.getEditMode() == HexFileModel.EditMode.WRITE_THROUGH;
+        if (exclusive) {
+            setEditingEnabled(false);
+        } else {
+            fileMenu.setEnabled(false);
+        }
+        long started = System.nanoTime();
+
+        SwingWorker<Long, String> worker = new SwingWorker<Long, String>() {
+            @Override
+            protected Long doInBackground() throws Exception {
+                SwingWorker<Long, String> self = this;
+                return FileSaver.save(snapshot, target, new FileSaver.Progress() {
+                    @Override
+                    public void update(long written, long total) {
+                        setProgress(total == 0 ? 100 : (int) (written * 100 / total));
+                        double seconds = (System.nanoTime() - started) / 1e9;
+                        publish(String.format("%d из %d байт, %.1f МиБ/с",
+                                written, total, FileSaver.throughput(written, seconds)));
+                    }
+
+                    @Override
+                    public boolean isCancelled() {
+                        return self.isCancelled();
+                    }
+                });
+            }
+
+            @Override
+            protected void process(List<String> notes) {
+                monitor.setNote(notes.get(notes.size() - 1));
+            }
+
+            @Override
+            protected void done() {
+                monitor.close();
+                if (exclusive) {
+                    setEditingEnabled(true);
+                } else {
+                    fileMenu.setEnabled(true);
+                }
+                try {
+                    long written = get();
+                    double seconds = (System.nanoTime() - started) / 1e9;
+                    String saved = String.format("Файл сохранен: %s (%d байт, %.1f МиБ/с)",
+                            target.getName(), written, FileSaver.throughput(written, seconds));
+                    if (snapshot.isCurrent()) {
+                        reopenModel(target);
+                        statusLabel.setText(saved);
+                    } else {
+                        // модель продолжает работать с прежним открытым файлом, новые правки не потеряны
+                        statusLabel.setText(saved + ", правки во время сохранения не записаны");
+                    }
+                } catch (CancellationException ex) {
+                    statusLabel.setText("Сохранение отменено");
+                } catch (ExecutionException ex) {
+                    if (ex.getCause() instanceof InterruptedIOException) {
+                        statusLabel.setText("Сохранение отменено");
+                    } else {
+                        showError("Ошибка сохранения: " + ex.getCause().getMessage());
+                    }
+                } catch (InterruptedException | IOException ex) {
+                    showError("Ошибка сохранения: " + ex.getMessage());
+                }
+            }
+        };
+        worker.addPropertyChangeListener(evt -> {
+            if ("progress".equals(evt.getPropertyName())) {
+                monitor.setProgress((Integer) evt.getNewValue());
+            }
+            if (monitor.isCanceled()) {
+                worker.cancel(false);
+            }
+        });
+        worker.execute();
+    }
+
+    /**
+     * Открывает модель заново на указанном файле (после сохранения). Как и в
+     * {@link #openFile}, новая модель открывается до закрытия прежней, и при
+     * ошибке редактор остается на прежней модели; только при сохранении
+     * поверх открытого файла с журналом упреждающей записи прежняя модель
+     * закрывается первой, и при ошибке правка блокируется.
+     *
+     * @param file файл для работы
+     * @throws IOException если файл не удалось открыть
+     */
+    private void reopenModel(File file) throws IOException {
+        HexFileModel previous = fileModel;
+        cancelBackgroundWork();
+        // журнал упреждающей записи у файла один
+        boolean closeFirst = HexFileModel.WAL_ENABLED && file.getAbsoluteFile().equals(currentFile.getAbsoluteFile());
+        HexFileModel opened;
+        try {
+            if (closeFirst) {
+                previous.close();
+            }
+            opened = new HexFileModel(file);
+        } catch (IOException ex) {
+            if (closeFirst) {
+                // прежняя модель уже закрыта: остается только открыть файл заново
+                setEditingEnabled(false);
+                fileMenu.setEnabled(true);
+            }
+            throw ex;
+        }
+        if (!closeFirst) {
+            try {
+                previous.close();
+            } catch (IOException ex) {
+                logger.warn("Ошибка закрытия файла", ex);
+            }
+        }
+        fileModel = opened;
+        fileModel.setEditMode(previous.getEditMode());
+        currentFile = file;
+        setTitle("HEX редактор - " + currentFile.getName());
+        HexTableModel previousView = tableModel;
+        tableModel = new HexTableModel(fileModel, BYTES_PER_ROW, ioExecutor);
+        tableModel.setCellWriter(this::writeCell);
+        watchLength(fileModel);
+        tableModel.addTableModelListener(e -> updateStatus());
+        tableModel.setVisibleRows(previousView.getVisibleRows());
+        tableModel.setFirstRow(previousView.getFirstRow());
+        table.setModel(tableModel);
+        tableModel.fireTableStructureChanged();
+        rowHeader.setModel(new RowHeaderTableModel(tableModel));
+        updateScrollBar();
+        loadIndex();
+    }
+
+    /**
+     * Блокирует или разблокирует редактирование на время фоновых операций.
+     *
+     * @param enabled true - разрешить редактирование
+     */
+    private void setEditingEnabled(boolean enabled) {
+        table.setEnabled(enabled);
+        JMenuBar menuBar = getJMenuBar();
+        for (int i = 0; i < menuBar.getMenuCount(); i++) {
+            menuBar.getMenu(i).setEnabled(enabled);
+        }
+    }
+
     private JMenuItem getJMenuItem() {
         JMenuItem openItem = new JMenuItem("Открыть...");
         openItem.addActionListener(e -> {
+            if (!confirmDiscardChanges()) return;
             JFileChooser chooser = new JFileChooser();
             if (chooser.showOpenDialog(this) == JFileChooser.APPROVE_OPTION) {
-                try {
-                    currentFile = chooser.getSelectedFile();
-                    initializeEditor();
-                } catch (IOException ex) {
-                    showError("Ошибка открытия: " + ex.getMessage());
-                }
+                openFile(chooser.getSelectedFile());
             }
         });
         return openItem;
     }
 
+    /**
+     * Открывает другой файл. Новая модель открывается до закрытия прежней,
+     * поэтому при ошибке редактор остается на прежнем файле. Исключение —
+     * повторное открытие того же файла с журналом упреждающей записи: журнал
+     * у файла один, и прежняя модель закрывается первой.
+     *
+     * @param file файл для открытия
+     */
+    private void openFile(File file) {
+        HexFileModel previous = fileModel;
+        cancelBackgroundWork();
+        boolean closeFirst = HexFileModel.WAL_ENABLED && file.getAbsoluteFile().equals(currentFile.getAbsoluteFile());
+        HexFileModel opened;
+        try {
+            if (closeFirst) {
+                previous.close();
+            }
+            opened = new HexFileModel(file);
+        } catch (IOException ex) {
+            showError("Ошибка открытия: " + ex.getMessage());
+            if (closeFirst) {
+                // прежняя модель уже закрыта: остается только открыть другой файл
+                setEditingEnabled(false);
+                fileMenu.setEnabled(true);
+            }
+            return;
+        }
+        if (!closeFirst) {
+            try {
+                previous.close();
+            } catch (IOException ex) {
+                logger.warn("Ошибка закрытия файла", ex);
+            }
+        }
+        currentFile = file;
+        initializeEditor(opened);
+    }
+
     /**
      * Создает меню правки.
      *
@@ -338,6 +1172,8 @@ public class HexEditorFrame extends JFrame {
         copyItem.addActionListener(e -> {
             try {
                 clipboard = getSelectedBytes();
+                clipboardRows = clipboard.length;
+                clipboardCols = clipboardRows > 0 ? clipboard[0].length : 0;
                 statusLabel.setText("Скопировано: " + (clipboardRows * clipboardCols) + " байт");
             } catch (IOException ex) {
                 showError("Ошибка при копировании: " + ex.getMessage());
@@ -348,11 +1184,16 @@ public class HexEditorFrame extends JFrame {
 
         JMenuItem pasteShift = getPasteShift();
 
+        editMenu.add(getUndoItem());
+        editMenu.add(getRedoItem());
+        editMenu.addSeparator();
         editMenu.add(copyItem);
         editMenu.add(pasteReplace);
         editMenu.add(pasteShift);
         editMenu.add(deleteItem);
         editMenu.add(deleteShiftItem);
+        editMenu.addSeparator();
+        editMenu.add(getWriteThroughItem());
         return editMenu;
     }
 
@@ -365,20 +1206,16 @@ public class HexEditorFrame extends JFrame {
             }
             int row = table.getSelectedRow();
             int col = table.getSelectedColumn();
-            try {
-                byte[] flat = new byte[clipboardRows * clipboardCols];
-                int index = 0;
-                for (byte[] line : clipboard) {
-                    for (byte b : line) {
-                        flat[index++] = b;
-                    }
+            byte[] flat = new byte[clipboardRows * clipboardCols];
+            int index = 0;
+            for (byte[] line : clipboard) {
+                for (byte b : line) {
+                    flat[index++] = b;
                 }
-                long offset = (long) row * table.getColumnCount() + col;
-                fileModel.insertBytes(offset, flat, false);
-                table.repaint();
-            } catch (IOException ex) {
-                showError("Ошибка вставки со сдвигом: " + ex.getMessage());
             }
+            long offset = tableModel.getOffset(row, col);
+            runEdit("Вставка со сдвигом", "Ошибка вставки со сдвигом",
+                    () -> fileModel.insertBytes(offset, flat, false), null);
         });
         return pasteShift;
     }
@@ -390,22 +1227,20 @@ public class HexEditorFrame extends JFrame {
                 showError("Буфер обмена пуст");
                 return;
             }
-            int row = table.getSelectedRow();
-            int col = table.getSelectedColumn();
-            try {
-                for (int i = 0; i < clipboardRows; i++) {
-                    for (int j = 0; j < clipboardCols; j++) {
-                        long offset = (long)(row + i) * table.getColumnCount() + (col + j);
-                        if (offset < fileModel.getLength()) {
-                            fileModel.writeByte(offset, clipboard[i][j]);
-                        }
+            long start = tableModel.getOffset(table.getSelectedRow(), table.getSelectedColumn());
+            byte[][] lines = clipboard;
+            int cols = clipboardCols;
+            runEdit("Вставка", "Ошибка вставки", () -> {
+                long length = fileModel.getLength();
+                // строка буфера ложится в файл одним непрерывным диапазоном
+                for (int i = 0; i < lines.length; i++) {
+                    long offset = start + (long) i * BYTES_PER_ROW;
+                    int n = (int) Math.min(cols, length - offset);
+                    if (n > 0) {
+                        fileModel.insertBytes(offset, Arrays.copyOf(lines[i], n), true);
                     }
                 }
-
-                table.repaint();
-            } catch (IOException ex) {
-                showError("Ошибка вставки: " + ex.getMessage());
-            }
+            }, null);
         });
         return pasteReplace;
     }
@@ -422,17 +1257,13 @@ public class HexEditorFrame extends JFrame {
             int rowMax = rows[rows.length - 1];
             int colMax = cols[cols.length - 1];
 
-            long from = (long) rowMin * table.getColumnCount() + colMin;
-            long to = (long) rowMax * table.getColumnCount() + colMax;
+            long from = tableModel.getOffset(rowMin, colMin);
+            long to = tableModel.getOffset(rowMax, colMax);
             int length = (int) (to - from + 1);
 
-            try {
-                fileModel.deleteBytes(from, length, true);
-                table.repaint();
-                statusLabel.setText("Удалено со сдвигом: " + length + " байт");
-            } catch (IOException ex) {
-                showError("Ошибка удаления: " + ex.getMessage());
-            }
+            runEdit("Удаление со сдвигом", "Ошибка удаления",
+                    () -> fileModel.deleteBytes(from, length, true),
+                    () -> statusLabel.setText("Удалено со сдвигом: " + length + " байт"));
         });
         return deleteShiftItem;
     }
@@ -444,46 +1275,175 @@ public class HexEditorFrame extends JFrame {
             int[] cols = table.getSelectedColumns();
             if (rows.length == 0 || cols.length == 0) return;
 
-            try {
-                for (int r : rows) {
-                    for (int c : cols) {
-                        long offset = (long) r * table.getColumnCount() + c;
-                        if (offset < fileModel.getLength()) {
-                            fileModel.writeByte(offset, (byte) 0x00);
+            long[] rowOffsets = new long[rows.length];
+            for (int i = 0; i < rows.length; i++) {
+                rowOffsets[i] = tableModel.getOffset(rows[i], 0);
+            }
+            runEdit("Обнуление", "Ошибка удаления", () -> {
+                // подряд идущие колонки строки обнуляются одним диапазоном
+                for (long rowOffset : rowOffsets) {
+                    int run = 0;
+                    while (run < cols.length) {
+                        int end = run + 1;
+                        while (end < cols.length && cols[end] == cols[end - 1] + 1) {
+                            end++;
                         }
+                        fileModel.deleteBytes(rowOffset + cols[run], end - run, false);
+                        run = end;
                     }
                 }
-                table.repaint();
-                statusLabel.setText("Удалено (обнулено)");
-            } catch (IOException ex) {
-                showError("Ошибка удаления: " + ex.getMessage());
-            }
+            }, () -> statusLabel.setText("Удалено (обнулено)"));
         });
         return deleteItem;
     }
 
+    private JMenuItem getUndoItem() {
+        JMenuItem undoItem = new JMenuItem("Отменить");
+        undoItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_Z, InputEvent.CTRL_DOWN_MASK));
+        undoItem.addActionListener(e -> {
+            if (!fileModel.canUndo()) {
+                statusLabel.setText("Нечего отменять");
+                return;
+            }
+            runEdit("Отмена", "Ошибка отмены", fileModel::undo,
+                    () -> statusLabel.setText("Правка отменена"));
+        });
+        return undoItem;
+    }
+
+    private JMenuItem getRedoItem() {
+        JMenuItem redoItem = new JMenuItem("Повторить");
+        redoItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_Y, InputEvent.CTRL_DOWN_MASK));
+        redoItem.addActionListener(e -> {
+            if (!fileModel.canRedo()) {
+                statusLabel.setText("Нечего повторять");
+                return;
+            }
+            runEdit("Повтор", "Ошибка повтора", fileModel::redo,
+                    () -> statusLabel.setText("Правка повторена"));
+        });
+        return redoItem;
+    }
+
+    private JMenuItem getWriteThroughItem() {
+        JCheckBoxMenuItem writeThroughItem = new JCheckBoxMenuItem("Запись сразу на диск");
+        writeThroughItem.setSelected(fileModel.getEditMode() == HexFileModel.EditMode.WRITE_THROUGH);
+        writeThroughItem.addActionListener(e -> {
+            try {
+                fileModel.setEditMode(writeThroughItem.isSelected()
+                        ? HexFileModel.EditMode.WRITE_THROUGH : HexFileModel.EditMode.PIECES);
+            } catch (IllegalStateException ex) {
+                writeThroughItem.setSelected(fileModel.getEditMode() == HexFileModel.EditMode.WRITE_THROUGH);
+                showError(ex.getMessage());
+            }
+        });
+        return writeThroughItem;
+    }
+
+    /**
+     * Записывает байт, введенный в ячейку таблицы, как обычную правку.
+     */
+    private void writeCell(long offset, byte value) {
+        runEdit("Запись байта", "Ошибка записи байта", () -> fileModel.writeByte(offset, value), null);
+    }
+
+    /**
+     * Правка файла, выполняемая {@link #runEdit}.
+     */
+    private interface Edit {
+        void apply() throws IOException;
+    }
+
+    /**
+     * Выполняет правку. В режиме прямой записи правка может сдвигать
+     * гигабайты данных, поэтому идет в фоновом потоке, а редактирование
+     * на это время блокируется; в режиме таблицы фрагментов правка
+     * затрагивает только память и выполняется сразу.
+     *
+     * @param title описание операции для строки состояния
+     * @param errorPrefix начало сообщения об ошибке
+     * @param edit правка
+     * @param onSuccess действие после успешной правки (может быть null)
+     */
+    private void runEdit(String title, String errorPrefix, Edit edit, Runnable onSuccess) {
+        if (fileModel.getEditMode() != HexFileModel.EditMode.WRITE_THROUGH) {
+            try {
+                edit.apply();
+                if (onSuccess != null) {
+                    onSuccess.run();
+                }
+            } catch (IOException ex) {
+                showError(errorPrefix + ": " + ex.getMessage());
+            }
+            return;
+        }
+        setEditingEnabled(false);
+        statusLabel.setText(title + "...");
+        long started = System.nanoTime();
+        new SwingWorker<Void, Void>() {
+            @Override
+            protected Void doInBackground() throws Exception {
+                edit.apply();
+                return null;
+            }
+
+            @Override
+            protected void done() {
+                setEditingEnabled(true);
+                try {
+                    get();
+                    statusLabel.setText(String.format("%s: %.1f с", title, (System.nanoTime() - started) / 1e9));
+                    if (onSuccess != null) {
+                        onSuccess.run();
+                    }
+                } catch (InterruptedException | ExecutionException ex) {
+                    Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+                    showError(errorPrefix + ": " + cause.getMessage());
+                }
+            }
+        }.execute();
+    }
+
     /**
      * Получает выбранные байты из таблицы.
+     * Выделение всегда лежит в видимом окне, поэтому байты берутся из уже
+     * загруженных данных модели таблицы без обращения к файлу.
      *
      * @return двумерный массив выбранных байт
-     * @throws IOException если произошла ошибка чтения
+     * @throws IOException если выделение выходит за конец файла или данные еще не загружены
      */
     private byte[][] getSelectedBytes() throws IOException {
-        logger.debug("Получение выбранных байт (строк: {}, колонок: {})", clipboardRows, clipboardCols);
         int[] rows = table.getSelectedRows();
         int[] cols = table.getSelectedColumns();
-        clipboardRows = rows.length;
-        clipboardCols = cols.length;
-        byte[][] data = new byte[clipboardRows][clipboardCols];
-        for (int i = 0; i < clipboardRows; i++) {
-            for (int j = 0; j < clipboardCols; j++) {
-                long offset = (long) rows[i] * table.getColumnCount() + cols[j];
-                data[i][j] = fileModel.readByte(offset);
+        logger.debug("Получение выбранных байт (строк: {}, колонок: {})", rows.length, cols.length);
+        byte[][] data = new byte[rows.length][cols.length];
+        for (int i = 0; i < rows.length; i++) {
+            for (int j = 0; j < cols.length; j++) {
+                int value = tableModel.getByteAt(rows[i], cols[j]);
+                if (value < 0) {
+                    throw new IOException("Нет данных по смещению " + tableModel.getOffset(rows[i], cols[j]));
+                }
+                data[i][j] = (byte) value;
             }
         }
         return data;
     }
 
+    /**
+     * Спрашивает пользователя, можно ли потерять несохраненные правки.
+     *
+     * @return true, если правок нет или пользователь согласился их отбросить
+     */
+    private boolean confirmDiscardChanges() {
+        if (fileModel == null || !fileModel.isModified()) {
+            return true;
+        }
+        int answer = JOptionPane.showConfirmDialog(this,
+                "Файл " + currentFile.getName() + " изменен. Отбросить несохраненные правки?",
+                "Несохраненные изменения", JOptionPane.YES_NO_OPTION, JOptionPane.WARNING_MESSAGE);
+        return answer == JOptionPane.YES_OPTION;
+    }
+
     /**
      * Показывает диалоговое окно с сообщением об ошибке.
      *
@@ -499,40 +1459,77 @@ public class HexEditorFrame extends JFrame {
      */
     private void updateStatus() {
         logger.trace("Обновление статусной строки");
-        int row = table.getSelectedRow();
-        int col = table.getSelectedColumn();
+        updateInspector();
+        int available = readSelectedValue();
+        StringBuilder sb = new StringBuilder();
+        if (available >= 2) {
+            sb.append(String.format("int16: %d  uint16: %d  ",
+                    DataInterpreter.getInt16(valueBytes, 0, true, byteOrder),
+                    DataInterpreter.getInt16(valueBytes, 0, false, byteOrder)));
+        }
+        if (available >= 4) {
+            sb.append(String.format("int32: %d  uint32: %d  float: %.6f  ",
+                    DataInterpreter.getInt32(valueBytes, 0, true, byteOrder),
+                    DataInterpreter.getInt32(valueBytes, 0, false, byteOrder),
+                    DataInterpreter.getFloat(valueBytes, 0, byteOrder)));
+        }
+        if (available >= 8) {
+            long value = DataInterpreter.getInt64(valueBytes, 0, byteOrder);
+            sb.append(String.format("int64: %d  uint64: %s  double: %.16E",
+                    value, Long.toUnsignedString(value), DataInterpreter.getDouble(valueBytes, 0, byteOrder)));
+        }
 
-        long offset = (long) row * table.getColumnCount() + col;
-        try {
-            StringBuilder sb = new StringBuilder();
-            byte[][] selectedBytes = getSelectedBytes();
-            int available = (int) (fileModel.getLength() - offset);
-            if (selectedBytes.length > 0) {
-                available = selectedBytes.length * selectedBytes[0].length;
-            }
-            if (available >= 2) {
-                sb.append(String.format("int16: %d  uint16: %d  ",
-                        DataInterpreter.toShort(selectedBytes, true),
-                        DataInterpreter.toShort(selectedBytes, false) & 0xFFFF));
-            }
-            if (available >= 4) {
-                sb.append(String.format("int32: %d  uint32: %d  float: %.6f  ",
-                        DataInterpreter.toInt(selectedBytes, true),
-                        DataInterpreter.toUnsignedInt(selectedBytes),
-                        DataInterpreter.toFloat(selectedBytes)));
-            }
-            if (available >= 8) {
-                sb.append(String.format("int64: %d  double: %.16E",
-                        DataInterpreter.toLong(selectedBytes),
-                        DataInterpreter.toDouble(selectedBytes)));
-            }
-
-            valueLabel.setText(sb.toString());
-            logger.debug("Отображение данных: {}", sb);
-        } catch (IOException e) {
-            statusLabel.setText("Read error at offset: " + offset);
-            logger.warn("Ошибка обновления статуса", e);
+        valueLabel.setText(sb.toString());
+        logger.debug("Отображение данных: {}", sb);
+    }
+
+    /**
+     * Пересчитывает инспектор для позиции курсора. Байты берутся одним
+     * копированием из загруженного блока строк таблицы, поэтому перемещение
+     * курсора не обращается к файлу; пока блок не загружен, инспектор пуст.
+     */
+    private void updateInspector() {
+        if (inspectorModel == null) {
+            return;
+        }
+        int row = leadRow();
+        int col = table.getColumnModel().getSelectionModel().getLeadSelectionIndex();
+        int available = 0;
+        if (row >= 0 && col >= 0 && row < table.getRowCount()) {
+            byte[] buffer = inspectorModel.getBuffer();
+            available = tableModel.copyBytes(tableModel.getOffset(row, col), buffer, 0, buffer.length);
+        }
+        inspectorModel.update(available);
+    }
+
+    /**
+     * Копирует до 8 первых выбранных байт (по строкам) в {@link #valueBytes}
+     * из окна таблицы, без обращения к файлу и без выделения памяти.
+     *
+     * @return количество скопированных байт; 0, если данные еще не загружены
+     */
+    private int readSelectedValue() {
+        int minRow = table.getSelectionModel().getMinSelectionIndex();
+        int maxRow = table.getSelectionModel().getMaxSelectionIndex();
+        int minCol = table.getColumnModel().getSelectionModel().getMinSelectionIndex();
+        int maxCol = table.getColumnModel().getSelectionModel().getMaxSelectionIndex();
+        if (minRow < 0 || minCol < 0) {
+            return 0;
+        }
+        int count = 0;
+        for (int row = minRow; row <= maxRow && count < valueBytes.length; row++) {
+            for (int col = minCol; col <= maxCol && count < valueBytes.length; col++) {
+                if (!table.isCellSelected(row, col)) {
+                    continue;
+                }
+                int value = tableModel.getByteAt(row, col);
+                if (value < 0) {
+                    return 0;
+                }
+                valueBytes[count++] = (byte) value;
+            }
         }
+        return count;
     }
 
 }
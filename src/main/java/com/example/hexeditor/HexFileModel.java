@@ -1,40 +1,265 @@
 package com.example.hexeditor;
 
+import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
-import java.io.RandomAccessFile;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * Модель для работы с файлами в HEX-редакторе.
  * Обеспечивает чтение/запись байт, вставку, удаление и другие операции.
+ * Доступ к файлу идет через {@link FileBackend}: по умолчанию это
+ * RandomAccessFile с кэшем страниц, а большие файлы отображаются в память
+ * скользящими окнами. Все позиции и длины в API — long.
+ * Правки не пишутся в файл сразу, а накапливаются в {@link PieceTable}
+ * поверх исходного содержимого; чтение и длина отражают логическое
+ * (отредактированное) содержимое, а файл переписывается только при сохранении.
+ * В режиме {@link EditMode#WRITE_THROUGH} правки сразу пишутся в файл:
+ * хвост файла сдвигается блоками по {@link #MOVE_BLOCK_SIZE} байт,
+ * а таблица правок после каждой операции снова состоит из одного фрагмента.
+ * Логическая длина хранится в таблице правок, поэтому {@link #getLength()}
+ * не обращается к файлу. Каждая правка увеличивает счетчик изменений
+ * и сообщается слушателям {@link ChangeListener} с точным диапазоном.
+ * Модель потокобезопасна: чтения из любого числа потоков идут параллельно
+ * (бэкенды читают позиционно, без общего указателя файла), правка ждет
+ * их завершения и выполняется монопольно. Длина, режим и счетчик изменений
+ * читаются без блокировки, поэтому EDT не ждет долгих правок.
  */
 public class HexFileModel {
-    private final RandomAccessFile file;
+    /**
+     * Получатель уведомлений об изменении содержимого.
+     * Вызывается в потоке, выполнившем правку, после ее применения.
+     */
+    public interface ChangeListener {
+        /**
+         * @param position позиция начала изменения
+         * @param removed количество удаленных (замененных) байт
+         * @param inserted количество вставленных байт; если не равно removed,
+         *                 все данные после position сдвинулись
+         */
+        void contentChanged(long position, long removed, long inserted);
+    }
+
+    /**
+     * Способ применения правок.
+     */
+    public enum EditMode {
+        /** Правки накапливаются в таблице фрагментов и пишутся при сохранении */
+        PIECES,
+        /** Правки сразу пишутся в файл */
+        WRITE_THROUGH
+    }
+
+    /** Бюджет памяти кэша страниц; задается свойством {@code hexeditor.cache.budget} */
+    public static final long CACHE_BUDGET = Long.getLong("hexeditor.cache.budget", PageCache.DEFAULT_BUDGET);
+    /** Файлы не меньше этого размера открываются через отображение в память */
+    public static final long MAPPED_THRESHOLD = Long.getLong("hexeditor.mapped.threshold", 1L << 30);
+    /** Вести журнал упреждающей записи; задается свойством {@code hexeditor.wal} */
+    public static final boolean WAL_ENABLED = Boolean.getBoolean("hexeditor.wal");
+    /** Размер блока при сдвиге и обнулении данных в файле (4 МиБ) */
+    public static final int MOVE_BLOCK_SIZE = 4 * 1024 * 1024;
+
+    private final File file;
+    private final FileBackend backend;
+    private final WriteAheadLog wal;
+    /** Правки из журнала прерванного сеанса, ожидающие решения пользователя */
+    private volatile List<WriteAheadLog.Record> recoverable = Collections.emptyList();
+    private final AddBuffer added = new AddBuffer();
+    /** Чтения идут параллельно под блокировкой чтения, правки — под блокировкой записи */
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private volatile PieceTable original;
+    private volatile PieceTable pieces;
+    private volatile EditMode editMode = EditMode.valueOf(System.getProperty("hexeditor.edit.mode", "pieces").trim().toUpperCase());
+    /** Буфер сдвига данных, выделяется при первой правке в режиме прямой записи */
+    private byte[] moveBuffer;
+    private final EditJournal journal = new EditJournal();
+    private final List<ChangeListener> listeners = new CopyOnWriteArrayList<>();
+    private volatile long modCount;
+    /** Растет перед каждым изменением самого файла (прямая запись); снимки сверяются с ним */
+    private volatile long fileVersion;
+    /** Индекс 4-грамм файла для поиска или null */
+    private volatile GramIndex index;
     private static final Logger logger = LoggerFactory.getLogger(HexFileModel.class);
 
+    /**
+     * Неизменяемый снимок содержимого для долгих фоновых задач (поиск,
+     * сохранение): задача видит одну версию, пока пользователь продолжает
+     * править. Снимок стоит O(1): таблица фрагментов неизменяема, а буфер
+     * добавленных данных только растет. Исходный файл в режиме таблицы
+     * фрагментов не меняется, поэтому снимок читается без блокировок.
+     * Правка прямой записью меняет сам файл — после нее чтение снимка
+     * завершается ошибкой, а не возвращает смесь версий.
+     */
+    public final class Snapshot {
+        private final PieceTable table;
+        private final long version;
+        private final long fileVersion;
+
+        private Snapshot(PieceTable table, long version, long fileVersion) {
+            this.table = table;
+            this.version = version;
+            this.fileVersion = fileVersion;
+        }
+
+        /**
+         * @return счетчик изменений модели на момент снимка (см. {@link #getModCount()})
+         */
+        public long getVersion() {
+            return version;
+        }
+
+        public long getLength() {
+            return table.length();
+        }
+
+        /**
+         * @return true, если после снимка правок не было
+         */
+        public boolean isCurrent() {
+            return version == modCount;
+        }
+
+        /**
+         * Читает блок байт снимка.
+         * @return количество прочитанных байт (меньше length в конце содержимого)
+         * @throws IOException в том числе если файл изменен прямой записью после снимка
+         */
+        public int readBlock(long offset, byte[] dst, int off, int length) throws IOException {
+            checkFile();
+            int read;
+            try {
+                read = read(table, offset, dst, off, length);
+            } catch (IOException e) {
+                checkFile();
+                throw e;
+            }
+            // проверка после чтения: правка, начавшаяся во время чтения, тоже заметна
+            checkFile();
+            return read;
+        }
+
+        /**
+         * Записывает содержимое снимка в канал (см. {@link HexFileModel#writeTo}).
+         * @return количество записанных байт
+         */
+        public long writeTo(WritableByteChannel target, FileSaver.Progress progress) throws IOException {
+            checkFile();
+            long written;
+            try {
+                written = HexFileModel.this.writeTo(table, target, progress);
+            } catch (IOException e) {
+                checkFile();
+                throw e;
+            }
+            checkFile();
+            return written;
+        }
+
+        /**
+         * @return версия самого файла на момент снимка (растет при прямой записи)
+         */
+        public long getFileVersion() {
+            return fileVersion;
+        }
+
+        /**
+         * Обходит фрагменты снимка в порядке возрастания позиций.
+         */
+        public void visit(PieceTable.PieceVisitor visitor) throws IOException {
+            table.visit(0, table.length(), visitor);
+        }
+
+        private void checkFile() throws IOException {
+            if (fileVersion != HexFileModel.this.fileVersion) {
+                throw new IOException("Файл изменен прямой записью после снимка версии " + version);
+            }
+        }
+    }
+
     /**
      * Открывает файл для чтения и записи.
+     * Способ доступа выбирается по размеру файла (см. {@link #MAPPED_THRESHOLD})
+     * или явно свойством {@code hexeditor.backend} ({@code cached} / {@code mapped}).
      * @param f файл для работы
      * @throws IOException если файл не существует или недоступен
      */
     public HexFileModel(File f) throws IOException {
-        this.file = new RandomAccessFile(f, "rw");
-        logger.info("Файл открыт: {} (размер: {} байт)", f.getAbsolutePath(), file.length());
+        this(f, defaultKind(f), CACHE_BUDGET);
+    }
+
+    /**
+     * Открывает файл для чтения и записи с заданным способом доступа.
+     * @param f файл для работы
+     * @param kind способ доступа к файлу
+     * @param cacheBudget объем памяти под кэш страниц в байтах
+     * @throws IOException если файл не существует или недоступен
+     */
+    public HexFileModel(File f, FileBackend.Kind kind, long cacheBudget) throws IOException {
+        this(f, kind, cacheBudget, WAL_ENABLED);
+    }
+
+    /**
+     * Открывает файл для чтения и записи.
+     * С журналом упреждающей записи прерванная сбоем операция прямой записи
+     * доводится до конца сразу, а несохраненные правки таблицы фрагментов
+     * становятся доступны через {@link #hasRecoverableEdits()}.
+     * @param f файл для работы
+     * @param kind способ доступа к файлу
+     * @param cacheBudget объем памяти под кэш страниц в байтах
+     * @param useWal вести журнал упреждающей записи
+     * @throws IOException если файл не существует или недоступен
+     */
+    public HexFileModel(File f, FileBackend.Kind kind, long cacheBudget, boolean useWal) throws IOException {
+        this(f, FileBackend.open(f, kind, cacheBudget), useWal);
+    }
+
+    /**
+     * Работает с файлом через готовый бэкенд (например, с окнами или кэшем
+     * нестандартного размера). Модель закрывает бэкенд в {@link #close()}.
+     * @param f файл для работы
+     * @param backend открытый бэкенд этого файла
+     * @param useWal вести журнал упреждающей записи
+     */
+    HexFileModel(File f, FileBackend backend, boolean useWal) throws IOException {
+        this.file = f;
+        this.backend = backend;
+        this.original = PieceTable.ofOriginal(backend.length());
+        this.pieces = original;
+        this.wal = useWal ? WriteAheadLog.open(f) : null;
+        if (wal != null) {
+            openWal();
+        }
+        logger.info("Файл открыт: {} (размер: {} байт, доступ: {})", f.getAbsolutePath(), backend.length(),
+                backend.getClass().getSimpleName());
     }
 
     /**
      * Читает байт по указанной позиции.
      * @param position позиция в файле (в байтах)
      * @return прочитанный байт или 0, если позиция некорректна
+     * @throws EOFException если позиция за концом файла
      */
     public byte readByte(long position) throws IOException {
         if(position >= 0) {
-            file.seek(position);
-            byte value = file.readByte();
-            logger.trace("Прочитан байт [{}] = 0x{}", position, String.format("%02X", value));
-            return file.readByte();
+            byte[] data = new byte[1];
+            if (readBlock(position, data, 0, 1) < 1) {
+                throw new EOFException("Позиция за концом файла: " + position);
+            }
+            byte value = data[0];
+            if (logger.isTraceEnabled()) {
+                logger.trace("Прочитан байт [{}] = 0x{}", position, String.format("%02X", value));
+            }
+            return value;
         }
         logger.warn("Попытка чтения за пределами файла: position={}", position);
         return 0;
@@ -46,21 +271,305 @@ public class HexFileModel {
      * @param value значение байта
      */
     public void writeByte(long position, byte value) throws IOException {
-        if(position >= 0 ) {
-            file.seek(position);
-            file.writeByte(value);
-            logger.debug("Записан байт [{}] = 0x{}", position, String.format("%02X", value));
-        } else {
-            logger.warn("Попытка записи за пределами файла: position={}", position);
+        long removed;
+        lock.writeLock().lock();
+        try {
+            if (position < 0 || position > pieces.length()) {
+                logger.warn("Попытка записи за пределами файла: position={}", position);
+                return;
+            }
+            removed = replace(position, new byte[]{value}, 1);
+        } finally {
+            lock.writeLock().unlock();
         }
+        logger.debug("Записан байт [{}] = 0x{}", position, String.format("%02X", value));
+        fireContentChanged(position, removed, 1);
     }
 
+    /**
+     * @return логическая длина содержимого (без обращения к файлу)
+     */
     public long getLength() throws IOException {
-        return file.length();
+        return pieces.length();
+    }
+
+    /**
+     * @return снимок текущего содержимого
+     */
+    public Snapshot snapshot() {
+        lock.readLock().lock();
+        try {
+            return new Snapshot(pieces, modCount, fileVersion);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return снимок самого файла без правок таблицы фрагментов (для построения индекса)
+     */
+    public Snapshot fileSnapshot() {
+        lock.readLock().lock();
+        try {
+            return new Snapshot(original, modCount, fileVersion);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return индекс 4-грамм файла или null
+     */
+    public GramIndex getIndex() {
+        return index;
+    }
+
+    /**
+     * Подключает индекс файла; индекс, построенный до прямой записи, отклоняется.
+     *
+     * @param index индекс или null, чтобы отключить
+     * @return true, если индекс подключен
+     */
+    public boolean setIndex(GramIndex index) {
+        lock.writeLock().lock();
+        try {
+            if (index != null && index.getFileVersion() != fileVersion) {
+                logger.warn("Индекс построен по версии файла {}, текущая {}: не подключен",
+                        index.getFileVersion(), fileVersion);
+                return false;
+            }
+            this.index = index;
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return счетчик изменений; растет при каждой правке
+     */
+    public long getModCount() {
+        return modCount;
+    }
+
+    public void addChangeListener(ChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeChangeListener(ChangeListener listener) {
+        listeners.remove(listener);
+    }
+
+    public EditMode getEditMode() {
+        return editMode;
+    }
+
+    /**
+     * Переключает способ применения правок.
+     * @param mode новый режим
+     * @throws IllegalStateException если переход в режим прямой записи
+     *         при несохраненных правках или журнал упреждающей записи не очищен
+     */
+    public void setEditMode(EditMode mode) {
+        lock.writeLock().lock();
+        try {
+            if (mode == EditMode.WRITE_THROUGH && isModified()) {
+                throw new IllegalStateException("Перед включением прямой записи сохраните правки");
+            }
+            if (mode != editMode) {
+                if (wal != null) {
+                    // восстановление после сбоя прямой записи ищет BEGIN в начале журнала,
+                    // поэтому записи правок прежнего режима отрезаются
+                    try {
+                        backend.force();
+                        resetWal();
+                    } catch (IOException e) {
+                        throw new IllegalStateException("Не удалось очистить журнал упреждающей записи: "
+                                + e.getMessage(), e);
+                    }
+                }
+                // записи журнала одного режима нельзя применить в другом
+                try {
+                    journal.clear();
+                } catch (IOException e) {
+                    logger.warn("Ошибка очистки журнала отмены", e);
+                }
+            }
+            editMode = mode;
+            logger.info("Режим правки: {}", mode);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public boolean canUndo() {
+        return journal.canUndo();
+    }
+
+    public boolean canRedo() {
+        return journal.canRedo();
+    }
+
+    /**
+     * Отменяет последнюю правку. Время отмены пропорционально размеру
+     * правки, а не файла; в режиме таблицы фрагментов отмена мгновенна.
+     * @return false, если отменять нечего
+     */
+    public boolean undo() throws IOException {
+        EditJournal.Entry entry;
+        lock.writeLock().lock();
+        try {
+            entry = journal.undo();
+            if (entry == null) {
+                return false;
+            }
+            if (entry.before != null) {
+                logEdit(WriteAheadLog.UNDO, 0, 0);
+                pieces = entry.before;
+                modCount++;
+            } else {
+                replaceInFile(entry.position, entry.insertedLength, entry.removed);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        logger.info("Отменена правка с позиции {}", entry.position);
+        fireContentChanged(entry.position, entry.insertedLength, entry.removedLength);
+        return true;
+    }
+
+    /**
+     * Повторяет последнюю отмененную правку.
+     * @return false, если повторять нечего
+     */
+    public boolean redo() throws IOException {
+        EditJournal.Entry entry;
+        lock.writeLock().lock();
+        try {
+            entry = journal.redo();
+            if (entry == null) {
+                return false;
+            }
+            if (entry.after != null) {
+                logEdit(WriteAheadLog.REDO, 0, 0);
+                pieces = entry.after;
+                modCount++;
+            } else {
+                replaceInFile(entry.position, entry.removedLength, entry.inserted);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        logger.info("Повторена правка с позиции {}", entry.position);
+        fireContentChanged(entry.position, entry.removedLength, entry.insertedLength);
+        return true;
+    }
+
+    /**
+     * @return true, если есть несохраненные правки
+     */
+    public boolean isModified() {
+        return pieces != original;
+    }
+
+    /**
+     * @return количество фрагментов в таблице правок
+     */
+    public int getPieceCount() {
+        return pieces.pieceCount();
     }
 
     public void close() throws IOException {
-        file.close();
+        lock.writeLock().lock();
+        try {
+            journal.close();
+            added.close();
+            if (wal != null) {
+                backend.force();
+                wal.close();
+            }
+            backend.close();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return true, если журнал прерванного сеанса содержит несохраненные правки
+     */
+    public boolean hasRecoverableEdits() {
+        return !recoverable.isEmpty();
+    }
+
+    /**
+     * Повторяет несохраненные правки прерванного сеанса поверх исходного файла.
+     * @return количество повторенных правок
+     */
+    public int recoverEdits() throws IOException {
+        List<WriteAheadLog.Record> records;
+        List<ByteBuffer> data = new ArrayList<>();
+        lock.writeLock().lock();
+        try {
+            records = recoverable;
+            for (WriteAheadLog.Record record : records) {
+                data.add(wal.load(record));
+            }
+            recoverable = Collections.emptyList();
+            resetWal();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        EditMode mode = getEditMode();
+        setEditMode(EditMode.PIECES);
+        for (int i = 0; i < records.size(); i++) {
+            ByteBuffer buffer = data.get(i);
+            switch (records.get(i).type) {
+                case WriteAheadLog.INSERT:
+                case WriteAheadLog.REPLACE:
+                    long position = buffer.getLong();
+                    byte[] bytes = new byte[buffer.remaining()];
+                    buffer.get(bytes);
+                    insertBytes(position, bytes, records.get(i).type == WriteAheadLog.REPLACE);
+                    break;
+                case WriteAheadLog.DELETE:
+                case WriteAheadLog.ZERO:
+                    deleteBytes(buffer.getLong(), buffer.getLong(), records.get(i).type == WriteAheadLog.DELETE);
+                    break;
+                case WriteAheadLog.UNDO:
+                    undo();
+                    break;
+                case WriteAheadLog.REDO:
+                    redo();
+                    break;
+                default:
+                    break;
+            }
+        }
+        if (mode != EditMode.PIECES && !isModified()) {
+            setEditMode(mode);
+        }
+        logger.info("Восстановлено правок из журнала {}: {}", wal.getFile(), records.size());
+        return records.size();
+    }
+
+    /**
+     * Отбрасывает несохраненные правки прерванного сеанса.
+     */
+    public void discardRecoverableEdits() throws IOException {
+        lock.writeLock().lock();
+        try {
+            recoverable = Collections.emptyList();
+            resetWal();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return кэш страниц модели или null, если файл отображен в память
+     */
+    public PageCache getPageCache() {
+        return backend instanceof CachedFileBackend ? ((CachedFileBackend) backend).getPageCache() : null;
     }
 
     /**
@@ -69,32 +578,35 @@ public class HexFileModel {
      * @param length количество байт
      * @param shift если true - сдвигает оставшиеся данные
      */
-    public void deleteBytes(long position, int length, boolean shift) throws IOException {
-        long fileLength = getLength();
+    public void deleteBytes(long position, long length, boolean shift) throws IOException {
         logger.info("Удаление {} байт с позиции {} (со сдвигом: {})", length, position, shift);
+        lock.writeLock().lock();
+        try {
+            long fileLength = getLength();
+            if (position < 0 || position >= fileLength) {
+                logger.warn("Позиция удаления за пределами файла: {}", position);
+                return;
+            }
+            if (position + length > fileLength) {
+                logger.warn("Позиция удаления за пределами файла: {}", position);
+                length = fileLength - position;
+                logger.debug("Скорректированная длина удаления: {}", length);
+            }
 
-        if (position + length > fileLength) {
-            logger.warn("Позиция удаления за пределами файла: {}", position);
-            length = (int) (fileLength - position);
-            logger.debug("Скорректированная длина удаления: {}", length);
-        }
-
-        if (shift) {
-            logger.debug("Сдвиг данных на {} байт", length);
-            for (long i = position + length; i < fileLength; i++) {
-                file.seek(i);
-                byte b = file.readByte();
-                file.seek(i - length);
-                file.writeByte(b);
+            if (length <= 0) {
+                return;
             }
-            file.setLength(fileLength - length);
-        } else {
-            logger.debug("Обнуление {} байт", length);
-            for (int i = 0; i < length; i++) {
-                file.seek(position + i);
-                file.writeByte(0);
+            if (shift) {
+                logger.debug("Сдвиг данных на {} байт", length);
+                delete(position, length);
+            } else {
+                logger.debug("Обнуление {} байт", length);
+                zero(position, length);
             }
+        } finally {
+            lock.writeLock().unlock();
         }
+        fireContentChanged(position, length, shift ? 0 : length);
     }
 
     /**
@@ -109,15 +621,7 @@ public class HexFileModel {
         }
 
         logger.debug("Чтение всего файла ({} байт)", length);
-        byte[] buffer = new byte[(int) length];
-        for (int i = 0; i < buffer.length; i++) {
-            try {
-                buffer[i] = readByte(i);
-            } catch (Exception e){
-                System.out.println(e.getMessage());
-            }
-        }
-        return buffer;
+        return readBlock(0, (int) length);
     }
 
     /**
@@ -127,36 +631,451 @@ public class HexFileModel {
      * @param overwrite true - перезаписать, false - вставить со сдвигом
      */
     public void insertBytes(long position, byte[] bytes, boolean overwrite) throws IOException {
-        long fileLength = getLength();
         int len = bytes.length;
         logger.info("Вставка {} байт с позиции {} (перезапись: {})",
                 bytes.length, position, overwrite);
+        long removed = 0;
+        lock.writeLock().lock();
+        try {
+            if (position < 0 || position > getLength()) {
+                logger.warn("Позиция вставки за пределами файла: {}", position);
+                return;
+            }
+            if (overwrite) {
+                removed = replace(position, bytes, len);
+            } else {
+                insert(position, bytes, len);
+            }
+            logger.debug("Фрагментов после вставки: {}", pieces.pieceCount());
+        } finally {
+            lock.writeLock().unlock();
+        }
+        fireContentChanged(position, removed, len);
+    }
+
+    /**
+     * Читает блок байт логического содержимого.
+     * @param offset начальная позиция
+     * @param length количество байт
+     * @return данные; байты за концом файла заполняются нулями
+     */
+    public byte[] readBlock(long offset, int length) throws IOException {
+        byte[] data = new byte[length];
+        readBlock(offset, data, 0, length);
+        return data;
+    }
 
-        if (!overwrite) {
-            for (long i = fileLength - 1; i >= position; i--) {
-                file.seek(i);
-                byte b = file.readByte();
-                file.seek(i + len);
-                file.writeByte(b);
+    /**
+     * Читает блок байт в готовый буфер (без выделения памяти).
+     * Байты буфера за концом файла не изменяются.
+     * @param offset начальная позиция
+     * @param dst буфер назначения
+     * @param off смещение в буфере
+     * @param length количество байт
+     * @return количество прочитанных байт (меньше length в конце файла)
+     */
+    public int readBlock(long offset, byte[] dst, int off, int length) throws IOException {
+        lock.readLock().lock();
+        try {
+            return read(pieces, offset, dst, off, length);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private int read(PieceTable table, long offset, byte[] dst, int off, int length) throws IOException {
+        if (offset < 0) {
+            return 0;
+        }
+        int[] done = {0};
+        table.visit(offset, length, (source, sourceOffset, pieceLength) -> {
+            int n = (int) pieceLength;
+            int at = off + done[0];
+            switch (source) {
+                case ORIGINAL:
+                    if (backend.read(sourceOffset, dst, at, n) < n) {
+                        throw new EOFException("Исходный файл изменен извне: позиция " + sourceOffset);
+                    }
+                    break;
+                case ADDED:
+                    added.read(sourceOffset, dst, at, n);
+                    break;
+                default:
+                    Arrays.fill(dst, at, at + n, (byte) 0);
+                    break;
+            }
+            done[0] += n;
+            return true;
+        });
+        return done[0];
+    }
+
+    /**
+     * Записывает логическое содержимое в канал потоково, фрагмент за фрагментом.
+     * Неизмененные диапазоны исходного файла передаются через
+     * {@link FileBackend#transferTo}, добавленные данные и нули — блоками
+     * через переиспользуемый буфер. Пишется снимок содержимого на момент
+     * вызова (см. {@link Snapshot#writeTo}).
+     * @param target канал назначения
+     * @param progress получатель прогресса; отмена проверяется между блоками
+     * @return количество записанных байт
+     * @throws InterruptedIOException если запись отменена
+     */
+    public long writeTo(WritableByteChannel target, FileSaver.Progress progress) throws IOException {
+        return snapshot().writeTo(target, progress);
+    }
+
+    private long writeTo(PieceTable table, WritableByteChannel target, FileSaver.Progress progress)
+            throws IOException {
+        long total = table.length();
+        ByteBuffer buffer = ByteBuffer.allocate(FileSaver.BUFFER_SIZE);
+        long[] written = {0};
+        table.visit(0, total, (source, sourceOffset, pieceLength) -> {
+            long done = 0;
+            while (done < pieceLength) {
+                if (progress.isCancelled()) {
+                    throw new InterruptedIOException("Запись отменена");
+                }
+                if (source == PieceTable.Source.ORIGINAL) {
+                    long n = Math.min(pieceLength - done, FileSaver.TRANSFER_SIZE);
+                    backend.transferTo(sourceOffset + done, n, target);
+                    done += n;
+                } else {
+                    int n = (int) Math.min(pieceLength - done, buffer.capacity());
+                    buffer.clear();
+                    if (source == PieceTable.Source.ADDED) {
+                        added.read(sourceOffset + done, buffer.array(), 0, n);
+                    } else {
+                        Arrays.fill(buffer.array(), 0, n, (byte) 0);
+                    }
+                    buffer.limit(n);
+                    while (buffer.hasRemaining()) {
+                        target.write(buffer);
+                    }
+                    done += n;
+                }
+                progress.update(written[0] + done, total);
             }
-            file.setLength(fileLength + len);
+            written[0] += pieceLength;
+            return true;
+        });
+        return written[0];
+    }
+
+    /**
+     * Заменяет диапазон новыми данными; запись за концом файла увеличивает его длину.
+     * @return количество замененных байт (меньше length у конца файла)
+     */
+    private long replace(long position, byte[] bytes, int length) throws IOException {
+        long removed = Math.min(length, pieces.length() - position);
+        if (editMode == EditMode.WRITE_THROUGH) {
+            writeThrough(position, removed, EditJournal.bytes(bytes, length));
+        } else {
+            logEdit(WriteAheadLog.REPLACE, position, bytes, length);
+            long start = added.append(bytes, 0, length);
+            commit(position, removed, length,
+                    pieces.delete(position, length).insert(position, PieceTable.Source.ADDED, start, length));
         }
+        return removed;
+    }
 
-        logger.debug("Запись новых данных");
-        file.seek(position);
-        for (byte b : bytes) {
-            file.writeByte(b);
+    /**
+     * Вставляет данные со сдвигом хвоста.
+     */
+    private void insert(long position, byte[] bytes, int length) throws IOException {
+        if (editMode == EditMode.WRITE_THROUGH) {
+            writeThrough(position, 0, EditJournal.bytes(bytes, length));
+        } else {
+            logEdit(WriteAheadLog.INSERT, position, bytes, length);
+            commit(position, 0, length,
+                    pieces.insert(position, PieceTable.Source.ADDED, added.append(bytes, 0, length), length));
         }
     }
-    public byte[] readBlock(long offset, int length) throws IOException {
-        byte[] data = new byte[length];
-        for (int i = 0; i < length; i++) {
-            if (offset + i < getLength()) {
-                data[i] = readByte(offset + i);
+
+    /**
+     * Удаляет диапазон со сдвигом хвоста.
+     */
+    private void delete(long position, long length) throws IOException {
+        if (editMode == EditMode.WRITE_THROUGH) {
+            writeThrough(position, length, EditJournal.zeros(0));
+        } else {
+            logEdit(WriteAheadLog.DELETE, position, length);
+            commit(position, length, 0, pieces.delete(position, length));
+        }
+    }
+
+    /**
+     * Обнуляет диапазон без сдвига.
+     */
+    private void zero(long position, long length) throws IOException {
+        if (editMode == EditMode.WRITE_THROUGH) {
+            writeThrough(position, length, EditJournal.zeros(length));
+        } else {
+            logEdit(WriteAheadLog.ZERO, position, length);
+            commit(position, length, length,
+                    pieces.delete(position, length).insert(position, PieceTable.Source.ZEROS, 0, length));
+        }
+    }
+
+    /**
+     * Применяет правку таблицы фрагментов и записывает ее в журнал.
+     */
+    private void commit(long position, long removed, long inserted, PieceTable after) throws IOException {
+        journal.record(EditJournal.pieces(position, removed, inserted, pieces, after));
+        pieces = after;
+        modCount++;
+    }
+
+    /**
+     * Заменяет removed байт с позиции данными прямо в файле, предварительно
+     * сохранив затираемые байты в журнал.
+     */
+    private void writeThrough(long position, long removed, EditJournal.Payload data) throws IOException {
+        EditJournal.Payload old = journal.copyOf(backend, position, removed);
+        try {
+            replaceInFile(position, removed, data);
+        } catch (IOException | RuntimeException e) {
+            journal.discard(old);
+            throw e;
+        }
+        journal.record(EditJournal.data(position, old, data));
+    }
+
+    /**
+     * Заменяет removed байт с позиции данными в файле. С журналом упреждающей
+     * записи операция сначала описывается в нем (см. {@link WriteAheadLog}).
+     */
+    private void replaceInFile(long position, long removed, EditJournal.Payload data) throws IOException {
+        long fileLength = pieces.length();
+        long inserted = data.length();
+        if (wal != null) {
+            if (inserted != removed && wal.size() > WriteAheadLog.HEADER_SIZE) {
+                // записи замен на месте нельзя повторять поверх частично сдвинутого хвоста
+                backend.force();
+                resetWal();
+            }
+            ByteBuffer begin = ByteBuffer.allocate(33);
+            begin.putLong(position).putLong(removed).putLong(inserted).putLong(fileLength)
+                    .put((byte) (EditJournal.isZeros(data) ? 1 : 0)).flip();
+            long[] sequence = {wal.appendData(WriteAheadLog.BEGIN, begin)};
+            if (!EditJournal.isZeros(data)) {
+                journal.copy(data, (offset, bytes, length) -> {
+                    ByteBuffer record = ByteBuffer.allocate(8 + length);
+                    record.putLong(offset).put(bytes, 0, length).flip();
+                    sequence[0] = wal.appendData(WriteAheadLog.DATA, record);
+                });
+            }
+            if (inserted == removed) {
+                wal.awaitDurable(sequence[0]);
             } else {
-                data[i] = 0;
+                wal.sync();
             }
         }
-        return data;
+        applyInFile(position, removed, inserted, fileLength, 0,
+                () -> journal.writeTo(data, backend, position));
+        if (wal != null && (inserted != removed || wal.size() > WriteAheadLog.CHECKPOINT_SIZE)) {
+            backend.force();
+            resetWal();
+        }
+    }
+
+    /**
+     * Запись данных операции в файл.
+     */
+    private interface PayloadWriter {
+        void write() throws IOException;
+    }
+
+    /**
+     * Выполняет операцию над файлом. Если длина меняется, хвост переносится
+     * блоками: при вставке — от конца к началу после удлинения файла,
+     * при удалении — от начала к концу перед укорачиванием.
+     *
+     * @param progress сколько байт хвоста уже перенесено (при восстановлении)
+     */
+    private void applyInFile(long position, long removed, long inserted, long fileLength,
+                             long progress, PayloadWriter payload) throws IOException {
+        fileVersion++;
+        long tail = fileLength - position - removed;
+        long newLength = fileLength - removed + inserted;
+        if (inserted > removed) {
+            if (backend.length() < newLength) {
+                backend.setLength(newLength);
+            }
+            moveData(position + removed, position + inserted, tail, progress);
+        } else if (inserted < removed) {
+            moveData(position + removed, position + inserted, tail, progress);
+            backend.setLength(newLength);
+        }
+        payload.write();
+        GramIndex current = index;
+        if (current != null) {
+            current.fileChanged(backend::read, position, removed, inserted, newLength, fileVersion);
+        }
+        syncPieces();
+        modCount++;
+    }
+
+    /**
+     * Переносит count байт файла с позиции from на позицию to блоками.
+     * Диапазоны могут перекрываться: при сдвиге вправо блоки идут от конца.
+     * С журналом каждый блок сначала надежно пишется в журнал.
+     *
+     * @param startDone сколько байт уже перенесено
+     */
+    private void moveData(long from, long to, long count, long startDone) throws IOException {
+        if (count <= startDone || from == to) {
+            return;
+        }
+        if (moveBuffer == null) {
+            moveBuffer = new byte[MOVE_BLOCK_SIZE];
+        }
+        long started = System.nanoTime();
+        long checkpoint = startDone;
+        for (long done = startDone; done < count; ) {
+            int n = (int) Math.min(count - done, moveBuffer.length);
+            long at = to > from ? count - done - n : done;
+            if (backend.read(from + at, moveBuffer, 0, n) < n) {
+                throw new EOFException("Файл короче ожидаемого: позиция " + (from + at));
+            }
+            if (wal != null) {
+                ByteBuffer record = ByteBuffer.allocate(16 + n);
+                record.putLong(done).putLong(to + at).put(moveBuffer, 0, n).flip();
+                wal.append(WriteAheadLog.MOVE, record);
+                wal.sync();
+            }
+            backend.write(to + at, moveBuffer, 0, n);
+            done += n;
+            if (wal != null && done - checkpoint >= WriteAheadLog.CHECKPOINT_SIZE) {
+                backend.force();
+                wal.checkpoint(done);
+                checkpoint = done;
+            }
+        }
+        double seconds = (System.nanoTime() - started) / 1e9;
+        logger.debug("Сдвинуто {} байт ({} МиБ/с)", count - startDone,
+                String.format("%.1f", FileSaver.throughput(count - startDone, seconds)));
+    }
+
+    /**
+     * Записывает правку таблицы фрагментов в журнал без ожидания fsync:
+     * файл при такой правке не меняется, а журнал сбрасывается группами.
+     */
+    private void logEdit(byte type, long position, byte[] bytes, int length) throws IOException {
+        if (wal != null) {
+            ByteBuffer record = ByteBuffer.allocate(8 + length);
+            record.putLong(position).put(bytes, 0, length).flip();
+            wal.append(type, record);
+        }
+    }
+
+    private void logEdit(byte type, long position, long length) throws IOException {
+        if (wal != null) {
+            ByteBuffer record = ByteBuffer.allocate(16);
+            record.putLong(position).putLong(length).flip();
+            wal.append(type, record);
+        }
+    }
+
+    private void resetWal() throws IOException {
+        wal.reset(backend.length(), file.lastModified());
+    }
+
+    /**
+     * Разбирает журнал, оставшийся от прерванного сеанса.
+     */
+    private void openWal() throws IOException {
+        List<WriteAheadLog.Record> records = wal.read();
+        if (!records.isEmpty() && records.get(0).type == WriteAheadLog.BEGIN) {
+            finishInterrupted(records);
+            records = Collections.emptyList();
+        }
+        if (!records.isEmpty() && wal.matches(backend.length(), file.lastModified())) {
+            logger.warn("Найдено несохраненных правок в журнале {}: {}", wal.getFile(), records.size());
+            recoverable = records;
+        } else {
+            if (!records.isEmpty()) {
+                logger.warn("Файл изменен после записи журнала {}, правки из него отброшены", wal.getFile());
+            }
+            resetWal();
+        }
+    }
+
+    /**
+     * Доводит до конца операции прямой записи из журнала. Замены на месте
+     * повторяются целиком (повтор не меняет результата); операция со сдвигом
+     * может быть только последней: записанные блоки переноса записываются
+     * заново, а перенос продолжается с достигнутого места. Операция, данные
+     * которой не успели попасть в журнал, не начинала менять файл и отбрасывается.
+     */
+    private void finishInterrupted(List<WriteAheadLog.Record> records) throws IOException {
+        long progress = wal.readProgress();
+        int index = 0;
+        int finished = 0;
+        while (index < records.size() && records.get(index).type == WriteAheadLog.BEGIN) {
+            ByteBuffer begin = wal.load(records.get(index++));
+            long position = begin.getLong();
+            long removed = begin.getLong();
+            long inserted = begin.getLong();
+            long fileLength = begin.getLong();
+            boolean zeros = begin.get() != 0;
+            List<WriteAheadLog.Record> data = new ArrayList<>();
+            long dataLength = 0;
+            while (index < records.size() && records.get(index).type == WriteAheadLog.DATA) {
+                data.add(records.get(index));
+                dataLength += records.get(index++).length - 8;
+            }
+            if (!zeros && dataLength < inserted) {
+                logger.warn("Операция с позиции {} не успела начаться, отброшена", position);
+                break;
+            }
+            while (index < records.size() && records.get(index).type == WriteAheadLog.MOVE) {
+                ByteBuffer move = wal.load(records.get(index++));
+                long done = move.getLong();
+                long destination = move.getLong();
+                byte[] block = new byte[move.remaining()];
+                move.get(block);
+                backend.write(destination, block, 0, block.length);
+                progress = Math.max(progress, done + block.length);
+            }
+            applyInFile(position, removed, inserted, fileLength, removed == inserted ? 0 : progress, () -> {
+                if (zeros) {
+                    journal.writeTo(EditJournal.zeros(inserted), backend, position);
+                    return;
+                }
+                for (WriteAheadLog.Record record : data) {
+                    ByteBuffer chunk = wal.load(record);
+                    long offset = chunk.getLong();
+                    backend.write(position + offset, chunk.array(), chunk.position(), chunk.remaining());
+                }
+            });
+            finished++;
+        }
+        backend.force();
+        resetWal();
+        logger.warn("Доведено до конца прерванных операций из журнала {}: {}", wal.getFile(), finished);
+    }
+
+    /**
+     * После прямой записи содержимое совпадает с файлом: таблица правок
+     * снова состоит из одного исходного фрагмента.
+     */
+    private void syncPieces() throws IOException {
+        original = PieceTable.ofOriginal(backend.length());
+        pieces = original;
+    }
+
+    private void fireContentChanged(long position, long removed, long inserted) {
+        for (ChangeListener listener : listeners) {
+            listener.contentChanged(position, removed, inserted);
+        }
+    }
+
+    private static FileBackend.Kind defaultKind(File f) {
+        String name = System.getProperty("hexeditor.backend");
+        if (name != null) {
+            return FileBackend.Kind.valueOf(name.trim().toUpperCase());
+        }
+        return f.length() >= MAPPED_THRESHOLD ? FileBackend.Kind.MAPPED : FileBackend.Kind.CACHED;
     }
 }
@@ -1,30 +1,106 @@
 package com.example.hexeditor;
 
+import javax.swing.SwingUtilities;
 import javax.swing.table.AbstractTableModel;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.BitSet;
+import java.util.concurrent.Executor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+/**
+ * Виртуальная модель таблицы HEX-представления.
+ * Таблица содержит только видимое окно строк; положение окна в файле
+ * задается номером первой строки типа long, поэтому размер файла не
+ * ограничен ни числом строк JTable, ни высотой таблицы в пикселях.
+ * Данные окна читаются одним блоком вместе с запасом строк сверху и снизу,
+ * поэтому прокрутка на несколько строк обходится без чтения файла;
+ * HEX-строки берутся из заранее построенной таблицы на 256 значений.
+ * Если задан исполнитель ввода-вывода, блок читается в его потоке:
+ * пока данные не пришли, ячейки показывают заглушку, а по прибытии
+ * блока таблица перерисовывается в потоке Swing. Все методы модели
+ * вызываются в потоке Swing.
+ */
 public class HexTableModel extends AbstractTableModel {
     private static final String EMPTY_VALUE = "";
     private static final String ERROR_VALUE = "??";
+    private static final String PENDING_VALUE = "..";
+    /** Число видимых строк до того, как станет известен размер окна */
+    private static final int DEFAULT_VISIBLE_ROWS = 32;
+    /** HEX-представления всех значений байта */
+    private static final String[] HEX = new String[256];
+
+    static {
+        for (int i = 0; i < HEX.length; i++) {
+            HEX[i] = String.format("%02X", i);
+        }
+    }
+
+    private static final Logger logger = LoggerFactory.getLogger(HexTableModel.class);
+
+    /**
+     * Запись байта, введенного в ячейку таблицы.
+     */
+    public interface CellWriter {
+        void write(long offset, byte value);
+    }
 
     private final HexFileModel fileModel;
     private final int bytesPerRow;
-    private List<Integer> highlightedOffsets = new ArrayList<>();
+    private final Executor ioExecutor;
+    private final SearchHits searchHits = new SearchHits();
+    private CellWriter cellWriter;
+    private final BitSet highlightWindow = new BitSet();
+    private long windowFirstRow = -1;
+    private int windowRowCount;
+    private int windowVersion = -1;
+    /** Подсветка окна построена по совпадениям текущей версии содержимого */
+    private boolean windowHitsCurrent;
 
+    private long firstRow;
+    private int visibleRows = DEFAULT_VISIBLE_ROWS;
+    private long totalRows;
+    private long fileLength;
+    private byte[] window = new byte[0];
+    /** Первая строка файла, загруженная в window */
+    private long windowStartRow;
+    private int windowLength;
+    /** В window есть данные (возможно, устаревшие после замены байт на месте) */
+    private boolean windowLoaded;
+    /** Данные window соответствуют текущему содержимому */
+    private boolean windowValid;
+    private boolean windowError;
+    /** Номер последнего запрошенного фонового чтения; более старые результаты отбрасываются */
+    private long loadSequence;
+    private boolean loadPending;
+    private long pendingStartRow;
+    private int pendingRows;
+
+    /**
+     * Создает модель, читающую данные в потоке вызова.
+     */
     public HexTableModel(HexFileModel model, int bytesPerRow) {
+        this(model, bytesPerRow, null);
+    }
+
+    /**
+     * Создает модель.
+     *
+     * @param model модель файла
+     * @param bytesPerRow байт в строке
+     * @param ioExecutor исполнитель для чтения данных; null — читать синхронно
+     */
+    public HexTableModel(HexFileModel model, int bytesPerRow, Executor ioExecutor) {
         this.fileModel = model;
         this.bytesPerRow = bytesPerRow;
+        this.ioExecutor = ioExecutor;
+        updateTotalRows();
+        model.addChangeListener(this::contentChanged);
     }
 
     @Override
     public int getRowCount() {
-        try {
-            return (int) ((fileModel.getLength() + bytesPerRow - 1) / bytesPerRow);
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
+        return (int) Math.max(0, Math.min(visibleRows, totalRows - firstRow));
     }
 
     @Override
@@ -34,15 +110,18 @@ public class HexTableModel extends AbstractTableModel {
 
     @Override
     public Object getValueAt(int row, int column) {
-        try {
-            if (isInvalidPosition(row, column)) {
-                return EMPTY_VALUE;
-            }
-            byte byteValue = readByteAtPosition(row, column);
-            return formatByteAsHex(byteValue);
-        } catch (IOException e) {
+        ensureWindow();
+        if (windowError) {
             return ERROR_VALUE;
         }
+        int index = windowIndex(row, column);
+        if (index < 0) {
+            return PENDING_VALUE;
+        }
+        if (index >= windowLength) {
+            return EMPTY_VALUE;
+        }
+        return HEX[window[index] & 0xFF];
     }
 
     @Override
@@ -52,59 +131,354 @@ public class HexTableModel extends AbstractTableModel {
 
     @Override
     public boolean isCellEditable(int row, int col) {
-        long offset = (long) row * bytesPerRow + col;
-        try {
-            return offset < fileModel.getLength();
-        } catch (IOException e) {
-            return false;
-        }
+        return getOffset(row, col) < fileLength;
     }
 
+    /**
+     * Записывает байт, введенный в ячейку: через {@link #setCellWriter заданную запись}
+     * или, если она не задана, прямо в модель файла в потоке вызова.
+     */
     @Override
     public void setValueAt(Object aValue, int row, int col) {
         String hexStr = aValue.toString().trim().toUpperCase();
         if (!hexStr.matches("[0-9A-F]{1,2}")) {
             return;
         }
-
+        byte value = (byte) Integer.parseInt(hexStr, 16);
+        long offset = getOffset(row, col);
+        if (cellWriter != null) {
+            cellWriter.write(offset, value);
+            return;
+        }
         try {
-            int value = Integer.parseInt(hexStr, 16);
-            long offset = (long) row * bytesPerRow + col;
-            fileModel.writeByte(offset, (byte) value);
-            fireTableCellUpdated(row, col);
-        } catch (Exception e) {
-            System.err.println("Ошибка при записи: " + e.getMessage());
+            fileModel.writeByte(offset, value);
+        } catch (IOException e) {
+            logger.error("Ошибка записи байта по смещению {}", offset, e);
+        }
+    }
+
+    /**
+     * Задает запись байт, введенных в ячейки. Окно редактора передает их
+     * тем же путем, что и остальные правки: в режиме прямой записи запись
+     * в файл и ожидание журнала не выполняются в потоке Swing.
+     *
+     * @param writer запись байта или null — писать в модель файла сразу
+     */
+    public void setCellWriter(CellWriter writer) {
+        this.cellWriter = writer;
+    }
+
+    /**
+     * @return позиция в файле для ячейки видимого окна
+     */
+    public long getOffset(int row, int column) {
+        return (firstRow + row) * bytesPerRow + column;
+    }
+
+    /**
+     * Возвращает байт видимого окна без обращения к файлу.
+     *
+     * @return значение байта (0-255) или -1, если ячейка за концом файла
+     *         или ее данные еще не загружены
+     */
+    public int getByteAt(int row, int column) {
+        ensureWindow();
+        int index = windowIndex(row, column);
+        return windowError || index < 0 || index >= windowLength ? -1 : window[index] & 0xFF;
+    }
+
+    /**
+     * Копирует байты из загруженного блока строк одним вызовом, без обращения к файлу.
+     *
+     * @param offset позиция в файле
+     * @param dst буфер назначения
+     * @param off смещение в буфере
+     * @param length сколько байт скопировать
+     * @return количество скопированных байт: меньше length у конца блока или файла,
+     *         0, если позиция вне загруженного блока
+     */
+    public int copyBytes(long offset, byte[] dst, int off, int length) {
+        ensureWindow();
+        long index = offset - windowStartRow * bytesPerRow;
+        if (windowError || !windowLoaded || index < 0 || index >= windowLength) {
+            return 0;
+        }
+        int n = (int) Math.min(length, windowLength - index);
+        System.arraycopy(window, (int) index, dst, off, n);
+        return n;
+    }
+
+    /**
+     * @return номер первой видимой строки в файле
+     */
+    public long getFirstRow() {
+        return firstRow;
+    }
+
+    /**
+     * @return общее число строк файла
+     */
+    public long getTotalRows() {
+        return totalRows;
+    }
+
+    /**
+     * @return число строк, помещающихся в окне
+     */
+    public int getVisibleRows() {
+        return visibleRows;
+    }
+
+    /**
+     * @return наибольший допустимый номер первой строки
+     */
+    public long getMaxFirstRow() {
+        return Math.max(0, totalRows - visibleRows);
+    }
+
+    /**
+     * Сдвигает окно так, чтобы оно начиналось с указанной строки файла.
+     *
+     * @param row номер строки (ограничивается допустимым диапазоном)
+     * @return фактический номер первой строки
+     */
+    public long setFirstRow(long row) {
+        long clamped = Math.max(0, Math.min(row, getMaxFirstRow()));
+        if (clamped != firstRow) {
+            int oldCount = getRowCount();
+            firstRow = clamped;
+            fireWindowChanged(oldCount);
+        }
+        return firstRow;
+    }
+
+    /**
+     * Задает число строк окна (по высоте области просмотра).
+     *
+     * @param rows число строк
+     */
+    public void setVisibleRows(int rows) {
+        rows = Math.max(1, rows);
+        if (rows != visibleRows) {
+            int oldCount = getRowCount();
+            visibleRows = rows;
+            firstRow = Math.min(firstRow, getMaxFirstRow());
+            fireWindowChanged(oldCount);
+        }
+    }
+
+    /**
+     * Перечитывает длину файла и данные окна после правок.
+     */
+    public void refresh() {
+        int oldCount = getRowCount();
+        updateTotalRows();
+        firstRow = Math.min(firstRow, getMaxFirstRow());
+        // после сдвига данных старый блок показывал бы байты не на своих местах
+        windowLoaded = false;
+        invalidateWindow();
+        fireWindowChanged(oldCount);
+    }
+
+    /**
+     * Добавляет найденное совпадение к подсветке.
+     * Совпадения должны поступать в порядке возрастания позиций.
+     */
+    public void addSearchHit(long offset, int length) {
+        searchHits.add(offset, length);
+    }
+
+    /**
+     * @return результаты поиска, подсвеченные в таблице
+     */
+    public SearchHits getSearchHits() {
+        return searchHits;
+    }
+
+    /**
+     * Готовит подсветку для диапазона строк файла одним проходом по
+     * совпадениям, попадающим в него.
+     *
+     * @param fromRow первая строка файла
+     * @param rowCount количество строк
+     */
+    public void prepareHighlights(long fromRow, int rowCount) {
+        boolean current = hitsCurrent();
+        if (fromRow == windowFirstRow && rowCount == windowRowCount
+                && windowVersion == searchHits.getVersion() && windowHitsCurrent == current) {
+            return;
+        }
+        highlightWindow.clear();
+        if (current) {
+            long from = fromRow * bytesPerRow;
+            searchHits.mark(from, from + (long) rowCount * bytesPerRow, highlightWindow);
         }
+        windowFirstRow = fromRow;
+        windowRowCount = rowCount;
+        windowVersion = searchHits.getVersion();
+        windowHitsCurrent = current;
     }
 
-    public void setHighlightedOffsets(List<Integer> offsets) {
-        this.highlightedOffsets = new ArrayList<>(offsets);
-        fireTableDataChanged();
+    /**
+     * Совпадения, найденные по другой версии содержимого, не подсвечиваются:
+     * после правки их позиции могут указывать не на те байты.
+     *
+     * @return true, если версия совпадений не задана или совпадает с текущей
+     */
+    private boolean hitsCurrent() {
+        long version = searchHits.getContentVersion();
+        return version < 0 || version == fileModel.getModCount();
     }
 
-    public boolean isHighlighted(int offset) {
-        return highlightedOffsets.contains(offset);
+    /**
+     * Проверяет подсветку ячейки видимого окна; подсветка готовится сразу
+     * для всего окна (см. {@link #prepareHighlights}), дальше это проверка бита.
+     */
+    public boolean isHighlighted(int row, int column) {
+        prepareHighlights(firstRow, visibleRows);
+        return highlightWindow.get(row * bytesPerRow + column);
     }
 
     public void clearSearchHighlights() {
-        highlightedOffsets.clear();
+        searchHits.clear();
+    }
+
+    /**
+     * Обрабатывает правку файла: при сдвиге данных окно перечитывается целиком,
+     * при замене на месте — только если диапазон пересекает загруженный блок,
+     * а событие таблицы отправляется лишь для затронутых видимых строк.
+     */
+    private void contentChanged(long position, long removed, long inserted) {
+        if (ioExecutor != null && !SwingUtilities.isEventDispatchThread()) {
+            // правка в режиме прямой записи выполняется в фоновом потоке
+            SwingUtilities.invokeLater(() -> contentChanged(position, removed, inserted));
+            return;
+        }
+        if (removed != inserted) {
+            refresh();
+            return;
+        }
+        if (windowHitsCurrent && searchHits.size() > 0 && !hitsCurrent()) {
+            // подсветка устарела во всем окне, а не только в строках правки
+            fireTableRowsUpdated(0, Math.max(0, getRowCount() - 1));
+        }
+        long end = position + inserted;
+        long loadedFrom = windowStartRow * bytesPerRow;
+        if (end > loadedFrom && position < loadedFrom + window.length || loadPending) {
+            invalidateWindow();
+        }
+        long fromRow = Math.max(position / bytesPerRow, firstRow) - firstRow;
+        long toRow = Math.min((end - 1) / bytesPerRow, firstRow + getRowCount() - 1) - firstRow;
+        if (fromRow <= toRow) {
+            fireTableRowsUpdated((int) fromRow, (int) toRow);
+        }
+    }
+
+    /**
+     * @return индекс ячейки в загруженном блоке или -1, если строка не загружена
+     */
+    private int windowIndex(int row, int column) {
+        long blockRow = firstRow - windowStartRow + row;
+        if (!windowLoaded || blockRow < 0 || blockRow >= window.length / bytesPerRow) {
+            return -1;
+        }
+        return (int) blockRow * bytesPerRow + column;
     }
 
-    private boolean isInvalidPosition(int row, int column) throws IOException {
-        long offset = calculateOffset(row, column);
-        return offset >= fileModel.getLength();
+    private boolean coversVisibleRows(long startRow, int rows) {
+        return firstRow >= startRow && firstRow + visibleRows <= startRow + rows;
     }
 
-    private long calculateOffset(int row, int column) {
-        return (long) row * bytesPerRow + column;
+    private void invalidateWindow() {
+        windowValid = false;
+        // чтение, начатое до правки, могло вернуть старые данные
+        loadPending = false;
+        loadSequence++;
     }
 
-    private byte readByteAtPosition(int row, int column) throws IOException {
-        long offset = calculateOffset(row, column);
-        return fileModel.readByte(offset);
+    /**
+     * Загружает видимые строки и по окну запаса сверху и снизу одним чтением.
+     * Пока видимые строки остаются внутри загруженного блока, файл не читается.
+     */
+    private void ensureWindow() {
+        if (windowValid && coversVisibleRows(windowStartRow, window.length / bytesPerRow)) {
+            return;
+        }
+        int rows = visibleRows * 3;
+        long startRow = Math.max(0, firstRow - visibleRows);
+        if (ioExecutor == null) {
+            byte[] block = window.length == rows * bytesPerRow ? window : new byte[rows * bytesPerRow];
+            loadBlock(++loadSequence, startRow, block);
+            return;
+        }
+        if (loadPending && coversVisibleRows(pendingStartRow, pendingRows)) {
+            return;
+        }
+        long sequence = ++loadSequence;
+        loadPending = true;
+        pendingStartRow = startRow;
+        pendingRows = rows;
+        ioExecutor.execute(() -> loadBlock(sequence, startRow, new byte[rows * bytesPerRow]));
     }
 
-    private String formatByteAsHex(byte value) {
-        return String.format("%02X", value);
+    /**
+     * Читает блок строк; в асинхронном режиме вызывается в потоке ввода-вывода,
+     * а результат устанавливается в потоке Swing.
+     */
+    private void loadBlock(long sequence, long startRow, byte[] block) {
+        int length;
+        boolean error;
+        try {
+            length = fileModel.readBlock(startRow * bytesPerRow, block, 0, block.length);
+            error = false;
+        } catch (IOException e) {
+            logger.warn("Ошибка чтения строк с {}: {}", startRow, e.getMessage());
+            length = 0;
+            error = true;
+        }
+        if (ioExecutor == null) {
+            installBlock(sequence, startRow, block, length, error);
+        } else {
+            int blockLength = length;
+            boolean blockError = error;
+            SwingUtilities.invokeLater(() -> {
+                if (installBlock(sequence, startRow, block, blockLength, blockError)) {
+                    fireWindowChanged(getRowCount());
+                }
+            });
+        }
+    }
+
+    private boolean installBlock(long sequence, long startRow, byte[] block, int length, boolean error) {
+        if (sequence != loadSequence) {
+            return false;
+        }
+        loadPending = false;
+        window = block;
+        windowStartRow = startRow;
+        windowLength = length;
+        windowError = error;
+        windowLoaded = true;
+        windowValid = true;
+        return true;
+    }
+
+    private void updateTotalRows() {
+        try {
+            fileLength = fileModel.getLength();
+        } catch (IOException e) {
+            fileLength = 0;
+        }
+        totalRows = (fileLength + bytesPerRow - 1) / bytesPerRow;
+    }
+
+    private void fireWindowChanged(int oldCount) {
+        int newCount = getRowCount();
+        if (newCount == oldCount && newCount > 0) {
+            // сохраняет выделение ячеек, в отличие от fireTableDataChanged
+            fireTableRowsUpdated(0, newCount - 1);
+        } else {
+            fireTableDataChanged();
+        }
     }
 }
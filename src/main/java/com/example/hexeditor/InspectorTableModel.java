@@ -0,0 +1,89 @@
+package com.example.hexeditor;
+
+import java.nio.ByteOrder;
+import java.util.List;
+import javax.swing.table.AbstractTableModel;
+
+/**
+ * Инспектор значений: расшифровка байт с позиции курсора всеми декодерами
+ * {@link DataInterpreter.Decoder}. Байты передаются одним блоком
+ * (см. {@link #update}), декодеры только читают его.
+ */
+public class InspectorTableModel extends AbstractTableModel {
+    private static final String[] COLUMNS = {"Тип", "Значение"};
+    private static final String EMPTY_VALUE = "";
+
+    private final List<DataInterpreter.Decoder> decoders;
+    private final byte[] data = new byte[DataInterpreter.MAX_DECODER_SIZE];
+    private final String[] values;
+    private int length;
+    private ByteOrder order = ByteOrder.LITTLE_ENDIAN;
+
+    public InspectorTableModel() {
+        this(DataInterpreter.DECODERS);
+    }
+
+    /**
+     * @param decoders декодеры в порядке отображения
+     */
+    public InspectorTableModel(List<DataInterpreter.Decoder> decoders) {
+        this.decoders = decoders;
+        this.values = new String[decoders.size()];
+    }
+
+    /**
+     * @return буфер для байт с позиции курсора; после заполнения вызывается {@link #update}
+     */
+    public byte[] getBuffer() {
+        return data;
+    }
+
+    /**
+     * Пересчитывает значения по байтам буфера.
+     *
+     * @param available сколько байт буфера заполнено (0 - данных нет)
+     */
+    public void update(int available) {
+        length = available;
+        for (int i = 0; i < values.length; i++) {
+            String value = decoders.get(i).decode(data, 0, length, order);
+            values[i] = value == null ? EMPTY_VALUE : value;
+        }
+        fireTableRowsUpdated(0, values.length - 1);
+    }
+
+    public ByteOrder getByteOrder() {
+        return order;
+    }
+
+    /**
+     * Меняет порядок байт и пересчитывает значения.
+     */
+    public void setByteOrder(ByteOrder order) {
+        this.order = order;
+        update(length);
+    }
+
+    @Override
+    public int getRowCount() {
+        return decoders.size();
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMNS.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return COLUMNS[column];
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        if (column == 0) {
+            return decoders.get(row).getName();
+        }
+        return values[row] == null ? EMPTY_VALUE : values[row];
+    }
+}
@@ -0,0 +1,202 @@
+package com.example.hexeditor;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Бэкенд, отображающий файл в память скользящими окнами MappedByteBuffer.
+ * Одновременно удерживается не больше заданного числа окон (вытеснение по LRU),
+ * поэтому файлы в десятки гигабайт просматриваются без роста кучи:
+ * данные окон живут в page cache ОС, а не в Java heap.
+ * Вытесненное окно освобождается сборщиком мусора — в Java 8 нет публичного
+ * способа снять отображение немедленно.
+ * Чтения из разных потоков идут параллельно под блокировкой чтения: каждое
+ * копирует через собственный duplicate() окна, а общий у них только короткий
+ * поиск окна в таблице; новое окно отображается вне монитора таблицы. Запись, смена длины и закрытие ждут окончания чтений,
+ * чтобы никто не читал окно укороченного файла.
+ */
+public class MappedFileBackend implements FileBackend {
+    /** Размер окна отображения по умолчанию (64 МиБ) */
+    public static final int DEFAULT_WINDOW_SIZE = 64 * 1024 * 1024;
+    /** Максимальное число одновременно отображенных окон по умолчанию */
+    public static final int DEFAULT_MAX_WINDOWS = 8;
+
+    private static final Logger logger = LoggerFactory.getLogger(MappedFileBackend.class);
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final int windowSize;
+    private final LinkedHashMap<Long, MappedByteBuffer> windows;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private volatile long length;
+    private long mappings;
+
+    /**
+     * Открывает файл для чтения и записи.
+     *
+     * @param f файл
+     * @param windowSize размер окна отображения в байтах
+     * @param maxWindows максимальное число одновременно отображенных окон
+     */
+    public MappedFileBackend(File f, int windowSize, final int maxWindows) throws IOException {
+        if (windowSize <= 0 || maxWindows <= 0) {
+            throw new IllegalArgumentException("Некорректные параметры окон: " + windowSize + "x" + maxWindows);
+        }
+        this.file = new RandomAccessFile(f, "rw");
+        this.channel = file.getChannel();
+        this.windowSize = windowSize;
+        this.length = channel.size();
+        this.windows = new LinkedHashMap<Long, MappedByteBuffer>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, MappedByteBuffer> eldest) {
+                return size() > maxWindows;
+            }
+        };
+        logger.debug("Отображение файла окнами по {} байт (не более {})", windowSize, maxWindows);
+    }
+
+    @Override
+    public long length() {
+        return length;
+    }
+
+    @Override
+    public int read(long position, byte[] dst, int off, int len) throws IOException {
+        lock.readLock().lock();
+        try {
+            int done = 0;
+            while (done < len && position + done < length) {
+                long pos = position + done;
+                ByteBuffer window = window(pos / windowSize).duplicate();
+                int index = (int) (pos % windowSize);
+                int n = Math.min(len - done, window.limit() - index);
+                window.position(index);
+                window.get(dst, off + done, n);
+                done += n;
+            }
+            return done;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void write(long position, byte[] src, int off, int len) throws IOException {
+        lock.writeLock().lock();
+        try {
+            if (position + len > length) {
+                setLength(position + len);
+            }
+            int done = 0;
+            while (done < len) {
+                long pos = position + done;
+                ByteBuffer window = window(pos / windowSize).duplicate();
+                int index = (int) (pos % windowSize);
+                int n = Math.min(len - done, window.limit() - index);
+                window.position(index);
+                window.put(src, off + done, n);
+                done += n;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void setLength(long newLength) throws IOException {
+        lock.writeLock().lock();
+        try {
+            synchronized (windows) {
+                windows.clear();
+            }
+            file.setLength(newLength);
+            length = newLength;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void force() throws IOException {
+        lock.writeLock().lock();
+        try {
+            synchronized (windows) {
+                for (MappedByteBuffer window : windows.values()) {
+                    window.force();
+                }
+            }
+            channel.force(false);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void transferTo(long position, long count, WritableByteChannel target) throws IOException {
+        long done = 0;
+        while (done < count) {
+            long n = channel.transferTo(position + done, count - done, target);
+            if (n <= 0) {
+                throw new EOFException("Файл короче ожидаемого: позиция " + (position + done));
+            }
+            done += n;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            logger.info("Отображено окон за сеанс: {}", mappings);
+            synchronized (windows) {
+                for (MappedByteBuffer window : windows.values()) {
+                    window.force();
+                }
+                windows.clear();
+            }
+            file.close();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Находит или отображает окно. Таблица окон упорядочена по доступу
+     * и меняется при каждом обращении, поэтому поиск идет под ее монитором;
+     * само отображение (системный вызов) выполняется вне монитора, чтобы не
+     * задерживать чтения уже отображенных окон. Длина файла при этом не
+     * меняется: вызывающий держит блокировку чтения или записи. Если окно
+     * одновременно отобразили два потока, в таблице остается первое.
+     */
+    private MappedByteBuffer window(long index) throws IOException {
+        synchronized (windows) {
+            MappedByteBuffer window = windows.get(index);
+            if (window != null) {
+                return window;
+            }
+        }
+        long start = index * windowSize;
+        long size = Math.min(windowSize, length - start);
+        MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, start, size);
+        synchronized (windows) {
+            MappedByteBuffer window = windows.get(index);
+            if (window != null) {
+                return window;
+            }
+            windows.put(index, mapped);
+            mappings++;
+            return mapped;
+        }
+    }
+}
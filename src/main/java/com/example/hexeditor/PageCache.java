@@ -0,0 +1,393 @@
+package com.example.hexeditor;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Кэш страниц файла фиксированного размера с вытеснением по LRU.
+ * Повторные обращения к уже прочитанным областям файла обслуживаются из памяти,
+ * а к диску идет только одно чтение на страницу.
+ * Объем памяти ограничен бюджетом, заданным при создании.
+ * При последовательном доступе (несколько страниц подряд в одном направлении)
+ * следующие страницы по ходу чтения загружаются заранее в фоновом потоке.
+ * Упреждающее чтение идет вне блокировки кэша, поэтому запросы данных
+ * никогда не ждут его завершения: если нужная страница еще в пути,
+ * она читается сразу, а результат упреждения отбрасывается.
+ * Промах загружает страницу тоже вне блокировки кэша: читатели разных
+ * страниц не ждут друг друга, а одну страницу загружает только один из
+ * них (загрузки разведены по полосам блокировок по номеру страницы).
+ * Загрузчик страниц должен допускать вызовы из нескольких потоков.
+ */
+public class PageCache implements Closeable {
+    /** Размер страницы по умолчанию (64 КиБ) */
+    public static final int DEFAULT_PAGE_SIZE = 64 * 1024;
+    /** Бюджет памяти по умолчанию (64 МиБ) */
+    public static final long DEFAULT_BUDGET = 64L * 1024 * 1024;
+    /** Число страниц упреждающего чтения; задается свойством {@code hexeditor.prefetch.pages} */
+    public static final int DEFAULT_PREFETCH_PAGES = Integer.getInteger("hexeditor.prefetch.pages", 8);
+    /** Число полос блокировок загрузки страниц (степень двойки) */
+    private static final int LOAD_STRIPES = 16;
+    /** Сколько переходов на соседние страницы в одном направлении включают упреждение */
+    private static final int SEQUENTIAL_THRESHOLD = 2;
+
+    private static final Logger logger = LoggerFactory.getLogger(PageCache.class);
+
+    /**
+     * Источник данных для загрузки страниц.
+     */
+    public interface PageLoader {
+        /**
+         * Читает данные страницы из файла.
+         *
+         * @param position позиция начала страницы в файле
+         * @param buffer буфер для данных
+         * @param offset смещение в буфере
+         * @param length максимальное количество байт
+         * @return количество прочитанных байт (меньше length в конце файла)
+         * @throws IOException если произошла ошибка чтения
+         */
+        int load(long position, byte[] buffer, int offset, int length) throws IOException;
+    }
+
+    private static final class Page {
+        final byte[] data;
+        final int length;
+        /** Страница загружена упреждением и еще не запрашивалась */
+        boolean prefetched;
+
+        Page(byte[] data, int length) {
+            this.data = data;
+            this.length = length;
+        }
+    }
+
+    private final PageLoader loader;
+    private final int pageSize;
+    private final int maxPages;
+    private final LinkedHashMap<Long, Page> pages;
+    private final int prefetchPages;
+    private final ExecutorService prefetcher;
+    private final Set<Long> inFlight = new HashSet<>();
+    private final Object[] loadStripes = new Object[LOAD_STRIPES];
+    /** Растет при записи и сбросе: упреждающие чтения, начатые раньше, отбрасываются */
+    private long generation;
+    private long lastPage = -1;
+    private int direction;
+    private int streak;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long prefetched;
+    private long prefetchHits;
+
+    /**
+     * Создает кэш с размером страницы и бюджетом по умолчанию.
+     *
+     * @param loader источник данных страниц
+     */
+    public PageCache(PageLoader loader) {
+        this(loader, DEFAULT_PAGE_SIZE, DEFAULT_BUDGET, DEFAULT_PREFETCH_PAGES);
+    }
+
+    /**
+     * Создает кэш.
+     *
+     * @param loader источник данных страниц
+     * @param pageSize размер страницы в байтах
+     * @param budget максимальный объем памяти под страницы в байтах
+     * @param prefetchPages число страниц упреждающего чтения (0 — без упреждения)
+     */
+    public PageCache(PageLoader loader, int pageSize, long budget, int prefetchPages) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("Некорректный размер страницы: " + pageSize);
+        }
+        this.loader = loader;
+        this.pageSize = pageSize;
+        this.maxPages = (int) Math.max(1, Math.min(Integer.MAX_VALUE, budget / pageSize));
+        // упреждение не должно вытеснять страницы, которые сейчас на экране
+        this.prefetchPages = Math.max(0, Math.min(prefetchPages, maxPages / 2));
+        this.prefetcher = this.prefetchPages == 0 ? null : Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "hexeditor-prefetch");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+        for (int i = 0; i < loadStripes.length; i++) {
+            loadStripes[i] = new Object();
+        }
+        this.pages = new LinkedHashMap<Long, Page>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Page> eldest) {
+                if (size() > maxPages) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+        logger.debug("Кэш страниц: {} страниц по {} байт, упреждение: {}", maxPages, pageSize, this.prefetchPages);
+    }
+
+    /**
+     * Читает байт через кэш.
+     *
+     * @param position позиция в файле
+     * @return значение байта или -1, если позиция за концом файла
+     */
+    public int read(long position) throws IOException {
+        Page page = page(position / pageSize);
+        int index = (int) (position % pageSize);
+        synchronized (this) {
+            return index < page.length ? page.data[index] & 0xFF : -1;
+        }
+    }
+
+    /**
+     * Читает блок байт через кэш.
+     *
+     * @param position позиция в файле
+     * @param dst буфер назначения
+     * @param off смещение в буфере
+     * @param len количество байт
+     * @return количество прочитанных байт (меньше len в конце файла)
+     */
+    public int read(long position, byte[] dst, int off, int len) throws IOException {
+        int done = 0;
+        while (done < len) {
+            long pos = position + done;
+            Page page = page(pos / pageSize);
+            int index = (int) (pos % pageSize);
+            if (index >= page.length) {
+                break;
+            }
+            int n = Math.min(len - done, page.length - index);
+            // данные страницы меняет update() под блокировкой кэша
+            synchronized (this) {
+                System.arraycopy(page.data, index, dst, off + done, n);
+            }
+            done += n;
+        }
+        return done;
+    }
+
+    /**
+     * Обновляет закэшированные страницы после записи в файл.
+     * Незагруженные страницы не затрагиваются.
+     *
+     * @param position позиция записи в файле
+     * @param src записанные данные
+     * @param off смещение в массиве
+     * @param len количество байт
+     */
+    public synchronized void update(long position, byte[] src, int off, int len) {
+        generation++;
+        int done = 0;
+        while (done < len) {
+            long pos = position + done;
+            long pageIndex = pos / pageSize;
+            int index = (int) (pos % pageSize);
+            int n = Math.min(len - done, pageSize - index);
+            Page page = pages.get(pageIndex);
+            if (page != null) {
+                if (index + n <= page.length) {
+                    System.arraycopy(src, off + done, page.data, index, n);
+                } else {
+                    // запись за концом файла меняет его длину — страницу проще перечитать
+                    pages.remove(pageIndex);
+                }
+            }
+            done += n;
+        }
+    }
+
+    /**
+     * Сбрасывает все страницы (после операций, меняющих структуру файла).
+     */
+    public synchronized void invalidateAll() {
+        pages.clear();
+        generation++;
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * @return количество страниц, загруженных упреждающим чтением
+     */
+    public synchronized long getPrefetched() {
+        return prefetched;
+    }
+
+    /**
+     * @return количество упрежденных страниц, которые затем были запрошены
+     */
+    public synchronized long getPrefetchHits() {
+        return prefetchHits;
+    }
+
+    /**
+     * @return доля упрежденных страниц, которые пригодились (0..1)
+     */
+    public synchronized double getPrefetchHitRatio() {
+        return prefetched == 0 ? 0.0 : (double) prefetchHits / prefetched;
+    }
+
+    /**
+     * @return доля обращений, обслуженных из памяти (0..1)
+     */
+    public synchronized double getHitRatio() {
+        long total = hits + misses;
+        return total == 0 ? 0.0 : (double) hits / total;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("страниц: %d/%d, попаданий: %d, промахов: %d (%.1f%%), вытеснено: %d, "
+                        + "упреждено: %d (пригодилось %.1f%%)",
+                pages.size(), maxPages, hits, misses, getHitRatio() * 100, evictions,
+                prefetched, getPrefetchHitRatio() * 100);
+    }
+
+    /**
+     * Останавливает поток упреждающего чтения.
+     */
+    @Override
+    public void close() {
+        if (prefetcher != null) {
+            prefetcher.shutdownNow();
+        }
+    }
+
+    private Page page(long index) throws IOException {
+        synchronized (this) {
+            trackDirection(index);
+            Page page = pages.get(index);
+            if (page != null) {
+                hits++;
+                if (page.prefetched) {
+                    page.prefetched = false;
+                    prefetchHits++;
+                }
+                return page;
+            }
+            misses++;
+        }
+        synchronized (loadStripes[(int) (index & (LOAD_STRIPES - 1))]) {
+            while (true) {
+                long expected;
+                synchronized (this) {
+                    // страницу мог загрузить другой поток, пока этот ждал полосу
+                    Page page = pages.get(index);
+                    if (page != null) {
+                        return page;
+                    }
+                    expected = generation;
+                }
+                Page page = load(index);
+                synchronized (this) {
+                    if (generation == expected) {
+                        pages.put(index, page);
+                        return page;
+                    }
+                }
+                // во время загрузки в файл писали — страницу нужно перечитать
+            }
+        }
+    }
+
+    private Page load(long index) throws IOException {
+        byte[] data = new byte[pageSize];
+        int length = 0;
+        while (length < pageSize) {
+            int n = loader.load(index * pageSize + length, data, length, pageSize - length);
+            if (n <= 0) {
+                break;
+            }
+            length += n;
+        }
+        return new Page(data, length);
+    }
+
+    /**
+     * Следит за направлением переходов между страницами и при устойчивом
+     * последовательном доступе ставит в очередь упреждающее чтение.
+     */
+    private void trackDirection(long index) {
+        if (prefetcher == null || index == lastPage) {
+            return;
+        }
+        int step = Long.signum(index - lastPage);
+        streak = Math.abs(index - lastPage) == 1 && step == direction ? streak + 1 : 1;
+        direction = step;
+        lastPage = index;
+        if (streak < SEQUENTIAL_THRESHOLD) {
+            return;
+        }
+        for (int i = 1; i <= prefetchPages; i++) {
+            long next = index + (long) i * direction;
+            if (next < 0) {
+                break;
+            }
+            if (!pages.containsKey(next) && inFlight.add(next)) {
+                long expected = generation;
+                try {
+                    prefetcher.execute(() -> prefetch(next, expected));
+                } catch (RejectedExecutionException e) {
+                    inFlight.remove(next);
+                    return;
+                }
+            }
+        }
+    }
+
+    private void prefetch(long index, long expected) {
+        try {
+            synchronized (this) {
+                // направление могло смениться, пока задача ждала в очереди
+                if (generation != expected || pages.containsKey(index)
+                        || Math.abs(index - lastPage) > prefetchPages) {
+                    return;
+                }
+            }
+            Page page = load(index);
+            if (page.length == 0) {
+                return;
+            }
+            page.prefetched = true;
+            synchronized (this) {
+                if (generation == expected && !pages.containsKey(index)) {
+                    pages.put(index, page);
+                    prefetched++;
+                }
+            }
+        } catch (IOException e) {
+            logger.debug("Упреждающее чтение страницы {} не удалось: {}", index, e.getMessage());
+        } finally {
+            synchronized (this) {
+                inFlight.remove(index);
+            }
+        }
+    }
+}
@@ -0,0 +1,291 @@
+package com.example.hexeditor;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Таблица фрагментов (piece table) — логическое содержимое файла с правками.
+ * Содержимое описывается последовательностью фрагментов, каждый из которых
+ * ссылается на диапазон исходного файла, буфера добавленных данных
+ * ({@link AddBuffer}) или на блок нулей.
+ * Фрагменты хранятся в декартовом дереве (treap) с суммарными длинами
+ * поддеревьев, поэтому поиск позиции, вставка и удаление выполняются
+ * за O(log n) от числа фрагментов, а не от размера файла.
+ * Таблица неизменяема: каждая операция возвращает новую таблицу,
+ * разделяющую с исходной все незатронутые узлы.
+ */
+public final class PieceTable {
+
+    /**
+     * Источник данных фрагмента.
+     */
+    public enum Source {
+        /** Диапазон исходного файла */
+        ORIGINAL,
+        /** Диапазон буфера добавленных данных */
+        ADDED,
+        /** Блок нулевых байт (данные не хранятся) */
+        ZEROS
+    }
+
+    /**
+     * Обработчик фрагментов при обходе диапазона.
+     */
+    public interface PieceVisitor {
+        /**
+         * Вызывается для очередного (возможно, обрезанного) фрагмента.
+         *
+         * @param source источник данных
+         * @param sourceOffset смещение в источнике
+         * @param length длина фрагмента
+         * @return false, чтобы прекратить обход
+         */
+        boolean visit(Source source, long sourceOffset, long length) throws IOException;
+    }
+
+    private static final class Node {
+        final Source source;
+        final long start;
+        final long length;
+        final int priority;
+        final Node left;
+        final Node right;
+        final long total;
+        final int count;
+
+        Node(Source source, long start, long length, int priority, Node left, Node right) {
+            this.source = source;
+            this.start = start;
+            this.length = length;
+            this.priority = priority;
+            this.left = left;
+            this.right = right;
+            this.total = total(left) + length + total(right);
+            this.count = count(left) + 1 + count(right);
+        }
+
+        Node with(Node newLeft, Node newRight) {
+            return new Node(source, start, length, priority, newLeft, newRight);
+        }
+    }
+
+    private static final PieceTable EMPTY = new PieceTable(null);
+
+    private final Node root;
+
+    private PieceTable(Node root) {
+        this.root = root;
+    }
+
+    /**
+     * @return пустая таблица
+     */
+    public static PieceTable empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Создает таблицу из одного фрагмента исходного файла.
+     *
+     * @param length длина исходного файла
+     */
+    public static PieceTable ofOriginal(long length) {
+        return length == 0 ? EMPTY : new PieceTable(leaf(Source.ORIGINAL, 0, length));
+    }
+
+    /**
+     * @return логическая длина содержимого
+     */
+    public long length() {
+        return total(root);
+    }
+
+    /**
+     * @return количество фрагментов
+     */
+    public int pieceCount() {
+        return count(root);
+    }
+
+    /**
+     * Вставляет фрагмент. Фрагмент, продолжающий соседний слева фрагмент того же
+     * источника (например, последовательный ввод), сливается с ним.
+     *
+     * @param position логическая позиция вставки
+     * @param source источник данных
+     * @param sourceOffset смещение в источнике
+     * @param length длина фрагмента
+     * @return новая таблица
+     */
+    public PieceTable insert(long position, Source source, long sourceOffset, long length) {
+        checkPosition(position);
+        if (length <= 0) {
+            return this;
+        }
+        Node[] parts = split(root, position);
+        Node left = parts[0];
+        Node last = rightmost(left);
+        if (last != null && last.source == source
+                && (source == Source.ZEROS || last.start + last.length == sourceOffset)) {
+            Node[] head = split(left, total(left) - last.length);
+            left = merge(head[0], leaf(source, last.start, last.length + length));
+        } else {
+            left = merge(left, leaf(source, sourceOffset, length));
+        }
+        return new PieceTable(merge(left, parts[1]));
+    }
+
+    /**
+     * Вставляет содержимое другой таблицы целиком.
+     *
+     * @param position логическая позиция вставки
+     * @param other вставляемая таблица (например, результат {@link #slice})
+     * @return новая таблица
+     */
+    public PieceTable insert(long position, PieceTable other) {
+        checkPosition(position);
+        if (other.root == null) {
+            return this;
+        }
+        Node[] parts = split(root, position);
+        return new PieceTable(merge(merge(parts[0], other.root), parts[1]));
+    }
+
+    /**
+     * Удаляет диапазон.
+     *
+     * @param position логическая позиция начала
+     * @param length длина диапазона (обрезается по концу содержимого)
+     * @return новая таблица
+     */
+    public PieceTable delete(long position, long length) {
+        checkPosition(position);
+        length = Math.min(length, length() - position);
+        if (length <= 0) {
+            return this;
+        }
+        Node[] head = split(root, position);
+        Node[] tail = split(head[1], length);
+        return new PieceTable(merge(head[0], tail[1]));
+    }
+
+    /**
+     * Возвращает диапазон в виде отдельной таблицы.
+     *
+     * @param position логическая позиция начала
+     * @param length длина диапазона (обрезается по концу содержимого)
+     * @return таблица с фрагментами диапазона
+     */
+    public PieceTable slice(long position, long length) {
+        checkPosition(position);
+        length = Math.min(length, length() - position);
+        if (length <= 0) {
+            return EMPTY;
+        }
+        Node[] head = split(root, position);
+        return new PieceTable(split(head[1], length)[0]);
+    }
+
+    /**
+     * Обходит фрагменты, пересекающие диапазон, в порядке возрастания позиций.
+     * Первый и последний фрагменты обрезаются по границам диапазона.
+     *
+     * @param position логическая позиция начала
+     * @param length длина диапазона
+     * @param visitor обработчик фрагментов
+     */
+    public void visit(long position, long length, PieceVisitor visitor) throws IOException {
+        long end = Math.min(position + length, length());
+        if (position < 0 || position >= end) {
+            return;
+        }
+        visit(root, position, end, visitor);
+    }
+
+    private static boolean visit(Node node, long from, long to, PieceVisitor visitor) throws IOException {
+        if (node == null || from >= to) {
+            return true;
+        }
+        long leftTotal = total(node.left);
+        if (from < leftTotal && !visit(node.left, from, Math.min(to, leftTotal), visitor)) {
+            return false;
+        }
+        long pieceStart = Math.max(from, leftTotal);
+        long pieceEnd = Math.min(to, leftTotal + node.length);
+        if (pieceStart < pieceEnd
+                && !visitor.visit(node.source, node.start + (pieceStart - leftTotal), pieceEnd - pieceStart)) {
+            return false;
+        }
+        long rightStart = leftTotal + node.length;
+        if (to > rightStart) {
+            return visit(node.right, Math.max(0, from - rightStart), to - rightStart, visitor);
+        }
+        return true;
+    }
+
+    /**
+     * Делит дерево на [0, position) и [position, конец); фрагмент,
+     * содержащий позицию, разрезается на два.
+     */
+    private static Node[] split(Node node, long position) {
+        if (node == null) {
+            return new Node[]{null, null};
+        }
+        long leftTotal = total(node.left);
+        if (position <= leftTotal) {
+            Node[] parts = split(node.left, position);
+            return new Node[]{parts[0], node.with(parts[1], node.right)};
+        }
+        long rightStart = leftTotal + node.length;
+        if (position >= rightStart) {
+            Node[] parts = split(node.right, position - rightStart);
+            return new Node[]{node.with(node.left, parts[0]), parts[1]};
+        }
+        long head = position - leftTotal;
+        Node left = merge(node.left, leaf(node.source, node.start, head));
+        Node right = merge(leaf(node.source, node.source == Source.ZEROS ? 0 : node.start + head,
+                node.length - head), node.right);
+        return new Node[]{left, right};
+    }
+
+    private static Node merge(Node a, Node b) {
+        if (a == null) {
+            return b;
+        }
+        if (b == null) {
+            return a;
+        }
+        if (a.priority > b.priority) {
+            return a.with(a.left, merge(a.right, b));
+        }
+        return b.with(merge(a, b.left), b.right);
+    }
+
+    private static Node rightmost(Node node) {
+        if (node == null) {
+            return null;
+        }
+        while (node.right != null) {
+            node = node.right;
+        }
+        return node;
+    }
+
+    private static Node leaf(Source source, long start, long length) {
+        return new Node(source, start, length, ThreadLocalRandom.current().nextInt(), null, null);
+    }
+
+    private static long total(Node node) {
+        return node == null ? 0 : node.total;
+    }
+
+    private static int count(Node node) {
+        return node == null ? 0 : node.count;
+    }
+
+    private void checkPosition(long position) {
+        if (position < 0 || position > length()) {
+            throw new IndexOutOfBoundsException("Позиция вне содержимого: " + position);
+        }
+    }
+}
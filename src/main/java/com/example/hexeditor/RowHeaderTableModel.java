@@ -2,18 +2,21 @@ package com.example.hexeditor;
 
 import javax.swing.table.AbstractTableModel;
 
+/**
+ * Заголовки строк (адреса) для видимого окна {@link HexTableModel}.
+ * Повторяет число строк и сдвиг окна основной модели.
+ */
 public class RowHeaderTableModel extends AbstractTableModel {
-    private final int rowCount;
-    private final int bytesPerRow;
+    private final HexTableModel hexModel;
 
-    public RowHeaderTableModel(int rowCount, int bytesPerRow) {
-        this.rowCount = rowCount;
-        this.bytesPerRow = bytesPerRow;
+    public RowHeaderTableModel(HexTableModel hexModel) {
+        this.hexModel = hexModel;
+        hexModel.addTableModelListener(e -> fireTableDataChanged());
     }
 
     @Override
     public int getRowCount() {
-        return rowCount;
+        return hexModel.getRowCount();
     }
 
     @Override
@@ -23,6 +26,6 @@ public class RowHeaderTableModel extends AbstractTableModel {
 
     @Override
     public Object getValueAt(int rowIndex, int columnIndex) {
-        return String.format("%08X", rowIndex * bytesPerRow);
+        return String.format("%08X", hexModel.getOffset(rowIndex, 0));
     }
 }
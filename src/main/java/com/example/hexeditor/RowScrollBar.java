@@ -0,0 +1,130 @@
+package com.example.hexeditor;
+
+import java.awt.event.AdjustmentEvent;
+import javax.swing.JScrollBar;
+
+/**
+ * Вертикальная полоса прокрутки для строк с адресацией типа long.
+ * Пока число строк помещается в int-модель JScrollBar, значение полосы
+ * совпадает с номером строки; для больших файлов позиция масштабируется
+ * на фиксированный диапазон, а точное положение хранится отдельно.
+ * В режиме масштабирования единица полосы — тысячи строк, поэтому стрелки
+ * и щелчки по дорожке двигают точную первую строку сами: на строку и на
+ * страницу, как без масштабирования.
+ */
+public class RowScrollBar extends JScrollBar {
+    /** Число строк, до которого прокрутка не масштабируется */
+    static final long MAX_UNSCALED_ROWS = Integer.MAX_VALUE / 2;
+    /** Диапазон значений полосы в режиме масштабирования */
+    static final int SCALED_RANGE = 1 << 20;
+
+    private long totalRows;
+    private int visibleRows;
+    /** Точная первая строка */
+    private long firstRow;
+    /** Значение полосы для {@link #firstRow}; другое значение — ползунок перетащен */
+    private int firstRowValue;
+
+    public RowScrollBar() {
+        super(VERTICAL);
+    }
+
+    /**
+     * Настраивает полосу под размер файла и окна.
+     *
+     * @param totalRows общее число строк
+     * @param visibleRows число видимых строк
+     * @param firstRow текущая первая строка
+     */
+    public void setRows(long totalRows, int visibleRows, long firstRow) {
+        this.totalRows = totalRows;
+        this.visibleRows = visibleRows;
+        this.firstRow = firstRow;
+        setUnitIncrement(1);
+        setBlockIncrement(pageRows());
+        if (isScaled()) {
+            int extent = (int) Math.max(1, (long) SCALED_RANGE * visibleRows / totalRows);
+            firstRowValue = toValue(firstRow, extent);
+            setValues(firstRowValue, extent, 0, SCALED_RANGE);
+        } else {
+            setValues((int) firstRow, visibleRows, 0, (int) Math.max(totalRows, visibleRows));
+        }
+    }
+
+    /**
+     * В режиме масштабирования сдвигает точную первую строку на одну строку
+     * и возвращает 0: значение полосы меняет сама полоса.
+     */
+    @Override
+    public int getUnitIncrement(int direction) {
+        if (!isScaled()) {
+            return super.getUnitIncrement(direction);
+        }
+        scrollRows(direction < 0 ? -1 : 1,
+                direction < 0 ? AdjustmentEvent.UNIT_DECREMENT : AdjustmentEvent.UNIT_INCREMENT);
+        return 0;
+    }
+
+    /**
+     * В режиме масштабирования сдвигает точную первую строку на страницу (см. {@link #getUnitIncrement}).
+     */
+    @Override
+    public int getBlockIncrement(int direction) {
+        if (!isScaled()) {
+            return super.getBlockIncrement(direction);
+        }
+        scrollRows(direction < 0 ? -pageRows() : pageRows(),
+                direction < 0 ? AdjustmentEvent.BLOCK_DECREMENT : AdjustmentEvent.BLOCK_INCREMENT);
+        return 0;
+    }
+
+    /**
+     * @return первая строка, соответствующая текущему положению полосы
+     */
+    public long getFirstRow() {
+        if (!isScaled()) {
+            return getValue();
+        }
+        if (getValue() == firstRowValue) {
+            return firstRow;
+        }
+        int range = SCALED_RANGE - getVisibleAmount();
+        long maxFirst = Math.max(0, totalRows - visibleRows);
+        return range <= 0 ? 0 : Math.round((double) getValue() / range * maxFirst);
+    }
+
+    /**
+     * @return true, если позиция масштабируется
+     */
+    public boolean isScaled() {
+        return totalRows > MAX_UNSCALED_ROWS;
+    }
+
+    /**
+     * Сдвигает точную первую строку и сообщает слушателям, даже если значение
+     * полосы не изменилось (сдвиг меньше единицы полосы).
+     */
+    private void scrollRows(long delta, int type) {
+        long maxFirst = Math.max(0, totalRows - visibleRows);
+        long target = Math.max(0, Math.min(maxFirst, firstRow + delta));
+        if (target == firstRow) {
+            return;
+        }
+        firstRow = target;
+        firstRowValue = toValue(target, getVisibleAmount());
+        if (firstRowValue != getValue()) {
+            setValue(firstRowValue);
+        } else {
+            fireAdjustmentValueChanged(AdjustmentEvent.ADJUSTMENT_VALUE_CHANGED, type, firstRowValue);
+        }
+    }
+
+    private int pageRows() {
+        return Math.max(1, visibleRows - 1);
+    }
+
+    private int toValue(long firstRow, int extent) {
+        long maxFirst = Math.max(1, totalRows - visibleRows);
+        return (int) Math.round((double) firstRow / maxFirst * (SCALED_RANGE - extent));
+    }
+}
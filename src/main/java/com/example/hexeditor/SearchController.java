@@ -1,46 +1,606 @@
 package com.example.hexeditor;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.BooleanSupplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+/**
+ * Поиск по содержимому {@link HexFileModel}.
+ * Файл просматривается блоками фиксированного размера; соседние блоки
+ * перекрываются на длину шаблона минус один байт, поэтому совпадения на
+ * границе блоков не теряются, а память не зависит от размера файла.
+ * Совпадение принадлежит блоку, в котором оно начинается, поэтому блоки
+ * можно просматривать параллельно: результаты выдаются в порядке позиций
+ * и без повторов на границах.
+ * Поиск читает снимок содержимого ({@link HexFileModel.Snapshot}), поэтому
+ * правки во время поиска не смешивают версии; результаты относятся к версии снимка.
+ * Набор сигнатур ({@link SignatureSet}) ищется тем же просмотром блоков:
+ * все сигнатуры находятся за одно чтение файла.
+ * Если к модели подключен индекс ({@link GramIndex}), поиск всех вхождений
+ * шаблона просматривает только блоки-кандидаты.
+ * Буферы блоков принадлежат одному просмотру: задачи берут их из запаса
+ * просмотра и возвращают туда же, а по окончании поиска запас освобождается
+ * целиком, поэтому потоки пула не удерживают память завершенных поисков.
+ */
 public class SearchController {
+    /** Размер блока чтения при поиске (4 МиБ) */
+    public static final int CHUNK_SIZE = 4 * 1024 * 1024;
+    /** Начальный размер блока для поиска следующего/предыдущего совпадения (64 КиБ) */
+    public static final int FIND_INITIAL_CHUNK = 64 * 1024;
+    /** Число потоков поиска по умолчанию; задается свойством {@code hexeditor.search.threads} */
+    public static final int DEFAULT_PARALLELISM =
+            Integer.getInteger("hexeditor.search.threads", Runtime.getRuntime().availableProcessors());
+
+    private static final Logger logger = LoggerFactory.getLogger(SearchController.class);
+
+    /**
+     * Получатель результатов поиска по мере их нахождения.
+     */
+    public interface MatchListener {
+        /**
+         * Вызывается для каждого совпадения в порядке возрастания позиций.
+         *
+         * @param offset позиция начала совпадения
+         * @param length длина совпадения
+         */
+        void onMatch(long offset, int length);
+
+        /**
+         * Вызывается после каждого просмотренного блока.
+         *
+         * @param scanned просмотрено байт
+         * @param total размер файла
+         */
+        default void onProgress(long scanned, long total) {
+        }
+
+        /**
+         * @return true, если поиск нужно прервать
+         */
+        default boolean isCancelled() {
+            return false;
+        }
+    }
+
+    /**
+     * Получатель результатов поиска по набору сигнатур.
+     * Для каждого совпадения сначала вызывается {@link #onMatch(long, int)}, затем
+     * {@link #onSignature(int, long)}; совпадения идут в порядке возрастания позиций,
+     * при равных позициях — в порядке номеров сигнатур.
+     */
+    public interface SignatureListener extends MatchListener {
+        /**
+         * @param signature номер сигнатуры в наборе
+         * @param offset позиция начала совпадения
+         */
+        void onSignature(int signature, long offset);
+    }
+
+    /**
+     * Поиск совпадений в буфере одного блока.
+     */
+    private interface ChunkMatcher {
+        /**
+         * Ищет совпадения, начинающиеся в [from, limit) буфера и целиком лежащие в [0, length);
+         * байты до from — разгон перед блоком.
+         *
+         * @param scratch буферы задачи; данные блока — в {@link Scratch#bytes}
+         * @return ключи совпадений (позиция в буфере, сдвинутая на 32 бита, и номер) по возрастанию
+         */
+        long[] find(Scratch scratch, int from, int limit, int length);
+    }
+
+    /**
+     * Буферы задачи просмотра блока: данные, их представление для словного
+     * чтения ({@link BytePattern#words(byte[])}) и символы для текстового поиска.
+     */
+    private static final class Scratch {
+        final byte[] bytes;
+        final ByteBuffer words;
+        private char[] chars;
+
+        Scratch(int size) {
+            bytes = new byte[size];
+            words = BytePattern.words(bytes);
+        }
+
+        /**
+         * @return буфер символов не короче length; создается при первом текстовом поиске
+         */
+        char[] chars(int length) {
+            if (chars == null || chars.length < length) {
+                chars = new char[length];
+            }
+            return chars;
+        }
+    }
+
+    /**
+     * Запас буферов одного просмотра: одновременно заняты не больше буферов,
+     * чем блоков в работе.
+     */
+    private static final class ScratchPool {
+        private final int size;
+        private final ArrayDeque<Scratch> spare = new ArrayDeque<>();
+
+        ScratchPool(int size) {
+            this.size = size;
+        }
+
+        Scratch take() {
+            synchronized (spare) {
+                Scratch scratch = spare.poll();
+                return scratch != null ? scratch : new Scratch(size);
+            }
+        }
+
+        void give(Scratch scratch) {
+            synchronized (spare) {
+                spare.push(scratch);
+            }
+        }
+    }
+
+    /**
+     * Передача совпадения получателю.
+     */
+    private interface Reporter {
+        void report(long offset, int tag);
+    }
+
+    private static ExecutorService sharedPool;
+
     private final HexFileModel model;
+    private final ExecutorService executor;
+    private final int parallelism;
 
     public SearchController(HexFileModel model) {
+        this(model, DEFAULT_PARALLELISM);
+    }
+
+    /**
+     * @param model модель файла
+     * @param parallelism число блоков, просматриваемых одновременно (1 - последовательный поиск)
+     */
+    public SearchController(HexFileModel model, int parallelism) {
+        this(model, parallelism > 1 ? sharedPool() : null, parallelism);
+    }
+
+    /**
+     * @param model модель файла
+     * @param executor пул для параллельного просмотра блоков
+     * @param parallelism число блоков, просматриваемых одновременно
+     */
+    public SearchController(HexFileModel model, ExecutorService executor, int parallelism) {
         this.model = model;
+        this.executor = executor;
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * Ищет все вхождения шаблона с маской.
+     *
+     * @param pattern байты шаблона
+     * @param mask маска (null - точное совпадение)
+     * @param listener получатель совпадений
+     * @return количество найденных совпадений
+     */
+    public long searchWithMask(byte[] pattern, byte[] mask, MatchListener listener) throws IOException {
+        if (pattern == null || pattern.length == 0) return 0;
+        return search(new BytePattern(pattern, mask), listener);
+    }
+
+    /**
+     * Ищет все вхождения скомпилированного шаблона, читая файл блоками.
+     * Совпадения передаются получателю в порядке возрастания позиций,
+     * в том числе при параллельном просмотре.
+     *
+     * @param pattern шаблон
+     * @param listener получатель совпадений
+     * @return количество найденных совпадений
+     */
+    public long search(BytePattern pattern, MatchListener listener) throws IOException {
+        return search(model.snapshot(), pattern, listener);
+    }
+
+    /**
+     * Ищет все вхождения шаблона в снимке содержимого.
+     *
+     * @param snapshot снимок, версия которого становится версией результатов
+     * @param pattern шаблон
+     * @param listener получатель совпадений
+     * @return количество найденных совпадений
+     */
+    public long search(HexFileModel.Snapshot snapshot, BytePattern pattern, MatchListener listener)
+            throws IOException {
+        logger.debug("Поиск: {} байт шаблона, алгоритм {}, потоков {}, версия {}",
+                pattern.length(), pattern.getAlgorithm(), parallelism, snapshot.getVersion());
+        GramIndex index = model.getIndex();
+        long[] ranges = index == null ? null : index.candidates(snapshot, pattern);
+        if (ranges != null) {
+            return searchRanges(snapshot, pattern, ranges, listener);
+        }
+        int length = pattern.length();
+        return scan(snapshot, 0, length - 1, (scratch, from, limit, read) -> find(pattern, scratch, from, limit, read),
+                listener, (offset, tag) -> listener.onMatch(offset, length));
+    }
+
+    /**
+     * Просматривает только диапазоны-кандидаты, найденные по индексу.
+     * Длинные диапазоны читаются блоками не больше {@link #CHUNK_SIZE}; отмена
+     * и прогресс проверяются после каждого блока, как при полном просмотре.
+     *
+     * @param ranges пары [начало, конец) позиций, где могут начинаться совпадения
+     */
+    private long searchRanges(HexFileModel.Snapshot snapshot, BytePattern pattern, long[] ranges,
+                              MatchListener listener) throws IOException {
+        long total = 0;
+        for (int r = 0; r < ranges.length; r += 2) {
+            total += ranges[r + 1] - ranges[r];
+        }
+        long started = System.nanoTime();
+        int length = pattern.length();
+        int overlap = length - 1;
+        Scratch scratch = new Scratch((int) Math.min(CHUNK_SIZE, total) + overlap);
+        Reporter reporter = (offset, tag) -> listener.onMatch(offset, length);
+        long matches = 0;
+        long scanned = 0;
+        int r = 0;
+        long start = ranges.length > 0 ? ranges[0] : 0;
+        while (r < ranges.length) {
+            if (listener.isCancelled()) {
+                logger.info("Поиск по индексу прерван на позиции {}", start);
+                break;
+            }
+            int span = (int) Math.min(ranges[r + 1] - start, scratch.bytes.length - overlap);
+            int read = snapshot.readBlock(start, scratch.bytes, 0, span + overlap);
+            long[] found = find(pattern, scratch, 0, Math.min(read, span), read);
+            // отмена во время просмотра блока: его совпадения уже не нужны
+            if (listener.isCancelled()) {
+                logger.info("Поиск по индексу прерван на позиции {}", start);
+                break;
+            }
+            matches += report(found, start, reporter);
+            scanned += span;
+            start += span;
+            if (start >= ranges[r + 1]) {
+                r += 2;
+                if (r < ranges.length) {
+                    start = ranges[r];
+                }
+            }
+            listener.onProgress(scanned, total);
+        }
+        logger.info("Поиск по индексу завершен: {} совпадений, просмотрено {} байт из {} за {} мс", matches, total,
+                snapshot.getLength(), (System.nanoTime() - started) / 1_000_000);
+        return matches;
+    }
+
+    /**
+     * Ищет все сигнатуры набора за один проход по файлу.
+     *
+     * @param signatures набор сигнатур
+     * @param listener получатель совпадений
+     * @return количество найденных совпадений всех сигнатур
+     */
+    public long searchSignatures(SignatureSet signatures, SignatureListener listener) throws IOException {
+        return searchSignatures(model.snapshot(), signatures, listener);
     }
 
-    public List<Integer> searchWithMask(byte[] pattern, byte[] mask) throws IOException {
-        List<Integer> result = new ArrayList<>();
-        byte[] data = model.readAll();
-        int dataLen = data.length;
-        int patternLen = pattern.length;
+    /**
+     * Ищет все сигнатуры набора в снимке содержимого за один проход.
+     *
+     * @param snapshot снимок, версия которого становится версией результатов
+     * @param signatures набор сигнатур
+     * @param listener получатель совпадений
+     * @return количество найденных совпадений всех сигнатур
+     */
+    public long searchSignatures(HexFileModel.Snapshot snapshot, SignatureSet signatures,
+                                 SignatureListener listener) throws IOException {
+        logger.debug("Поиск сигнатур: {} сигнатур, {} состояний автомата, потоков {}, версия {}",
+                signatures.size(), signatures.stateCount(), parallelism, snapshot.getVersion());
+        return scan(snapshot, 0, signatures.maxLength() - 1,
+                (scratch, from, limit, read) -> find(signatures, scratch.bytes, from, limit, read),
+                listener, (offset, tag) -> {
+                    listener.onMatch(offset, signatures.get(tag).length());
+                    listener.onSignature(tag, offset);
+                });
+    }
+
+    /**
+     * Ищет все совпадения текста или регулярного выражения.
+     * Строка, сводимая к байтовому шаблону, ищется как байтовый шаблон (в том
+     * числе по индексу); регулярное выражение — по декодированным блокам.
+     *
+     * @param snapshot снимок, версия которого становится версией результатов
+     * @param pattern текстовый шаблон
+     * @param listener получатель совпадений (длина совпадения — в байтах)
+     * @return количество найденных совпадений
+     */
+    public long search(HexFileModel.Snapshot snapshot, TextPattern pattern, MatchListener listener)
+            throws IOException {
+        BytePattern bytes = pattern.toBytePattern();
+        if (bytes != null) {
+            return search(snapshot, bytes, listener);
+        }
+        logger.debug("Поиск регулярного выражения: кодировка {}, потоков {}, версия {}",
+                pattern.getEncoding(), parallelism, snapshot.getVersion());
+        return scan(snapshot, TextPattern.MAX_MATCH, TextPattern.MAX_MATCH,
+                (scratch, from, limit, read) -> find(pattern, scratch, from, limit, read), listener, listener::onMatch);
+    }
+
+    /**
+     * Просматривает снимок блоками и передает совпадения получателю в порядке позиций.
+     *
+     * @param lead разгон: сколько байт перед блоком читается для контекста
+     * @param overlap перекрытие соседних блоков
+     */
+    private long scan(HexFileModel.Snapshot snapshot, int lead, int overlap, ChunkMatcher matcher,
+                      MatchListener listener, Reporter reporter) throws IOException {
+        long fileLength = snapshot.getLength();
+        long chunks = (fileLength + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        long started = System.nanoTime();
+        ScratchPool pool = new ScratchPool(lead + CHUNK_SIZE + overlap);
+
+        long matches = executor != null && parallelism > 1 && chunks > 1
+                ? searchParallel(snapshot, lead, overlap, matcher, pool, chunks, fileLength, listener, reporter)
+                : searchSequential(snapshot, lead, overlap, matcher, pool, chunks, fileLength, listener, reporter);
+
+        double seconds = (System.nanoTime() - started) / 1e9;
+        logger.info("Поиск завершен: {} совпадений за {} мс ({} МиБ/с)", matches, (long) (seconds * 1000),
+                String.format("%.1f", FileSaver.throughput(fileLength, seconds)));
+        return matches;
+    }
 
-        if (patternLen == 0 || dataLen < patternLen) return result;
+    /**
+     * Ищет первое совпадение, начинающееся не раньше указанной позиции.
+     * Файл читается блоками, начиная с небольшого и удваивая размер до
+     * {@link #CHUNK_SIZE}, поэтому близкое совпадение находится за миллисекунды
+     * независимо от размера файла.
+     *
+     * @param pattern шаблон
+     * @param from позиция, с которой начинается поиск
+     * @param cancelled признак отмены, проверяется между блоками
+     * @return позиция совпадения или -1
+     */
+    public long findNext(BytePattern pattern, long from, BooleanSupplier cancelled) throws IOException {
+        return findNext(model.snapshot(), pattern, from, cancelled);
+    }
 
-        for (int i = 0; i <= dataLen - patternLen; i++) {
-            boolean match = true;
+    /**
+     * Ищет первое совпадение в снимке содержимого (см. {@link #findNext(BytePattern, long, BooleanSupplier)}).
+     */
+    public long findNext(HexFileModel.Snapshot snapshot, BytePattern pattern, long from,
+                         BooleanSupplier cancelled) throws IOException {
+        long fileLength = snapshot.getLength();
+        int overlap = pattern.length() - 1;
+        int chunk = FIND_INITIAL_CHUNK;
+        byte[] buffer = new byte[chunk + overlap];
+        for (long start = Math.max(0, from); start < fileLength && !cancelled.getAsBoolean(); start += chunk) {
+            chunk = growChunk(chunk, start - from);
+            if (buffer.length < chunk + overlap) {
+                buffer = new byte[chunk + overlap];
+            }
+            int read = snapshot.readBlock(start, buffer, 0, chunk + overlap);
+            int i = pattern.indexOf(buffer, 0, read);
+            if (i >= 0 && i < chunk) {
+                return start + i;
+            }
+        }
+        return -1;
+    }
 
-            for (int j = 0; j < patternLen; j++) {
-                byte dataByte = data[i + j];
-                byte patternByte = pattern[j];
-                byte maskByte = (mask != null && mask.length == patternLen) ? mask[j] : (byte) 0xFF;
+    /**
+     * Ищет последнее совпадение, начинающееся раньше указанной позиции,
+     * просматривая файл блоками в обратном направлении.
+     *
+     * @param pattern шаблон
+     * @param before позиция, раньше которой должно начинаться совпадение
+     * @param cancelled признак отмены, проверяется между блоками
+     * @return позиция совпадения или -1
+     */
+    public long findPrevious(BytePattern pattern, long before, BooleanSupplier cancelled) throws IOException {
+        return findPrevious(model.snapshot(), pattern, before, cancelled);
+    }
 
-                if ((dataByte & maskByte) != (patternByte & maskByte)) {
-                    match = false;
+    /**
+     * Ищет последнее совпадение в снимке содержимого
+     * (см. {@link #findPrevious(BytePattern, long, BooleanSupplier)}).
+     */
+    public long findPrevious(HexFileModel.Snapshot snapshot, BytePattern pattern, long before,
+                             BooleanSupplier cancelled) throws IOException {
+        long end = Math.min(before, snapshot.getLength());
+        int overlap = pattern.length() - 1;
+        int chunk = FIND_INITIAL_CHUNK;
+        byte[] buffer = new byte[chunk + overlap];
+        while (end > 0 && !cancelled.getAsBoolean()) {
+            chunk = growChunk(chunk, before - end);
+            if (buffer.length < chunk + overlap) {
+                buffer = new byte[chunk + overlap];
+            }
+            long start = Math.max(0, end - chunk);
+            int span = (int) (end - start);
+            int read = snapshot.readBlock(start, buffer, 0, span + overlap);
+            int i = pattern.lastIndexOf(buffer, 0, Math.min(read, span + overlap));
+            if (i >= 0) {
+                return start + i;
+            }
+            end = start;
+        }
+        return -1;
+    }
+
+    /**
+     * Блок удваивается после каждого просмотренного блока, пока не достигнет {@link #CHUNK_SIZE}.
+     */
+    private static int growChunk(int chunk, long scanned) {
+        return scanned > 0 && chunk < CHUNK_SIZE ? Math.min(CHUNK_SIZE, chunk * 2) : chunk;
+    }
+
+    private long searchSequential(HexFileModel.Snapshot snapshot, int lead, int overlap, ChunkMatcher matcher,
+                                  ScratchPool pool, long chunks, long fileLength, MatchListener listener,
+                                  Reporter reporter) throws IOException {
+        long matches = 0;
+        for (long chunk = 0; chunk < chunks; chunk++) {
+            if (listener.isCancelled()) {
+                logger.info("Поиск прерван на позиции {}", chunk * CHUNK_SIZE);
+                break;
+            }
+            long chunkStart = chunk * CHUNK_SIZE;
+            long[] found = scanChunk(snapshot, lead, overlap, matcher, pool, chunkStart);
+            // отмена во время просмотра блока: его совпадения уже не нужны
+            if (listener.isCancelled()) {
+                logger.info("Поиск прерван на позиции {}", chunkStart);
+                break;
+            }
+            matches += report(found, chunkStart, reporter);
+            listener.onProgress(Math.min((chunk + 1) * CHUNK_SIZE, fileLength), fileLength);
+        }
+        return matches;
+    }
+
+    /**
+     * Параллельный просмотр: одновременно выполняется не больше 2 * parallelism блоков,
+     * результаты забираются строго по порядку блоков. После отмены результаты
+     * уже просмотренных блоков не выдаются, а блоки в очереди отменяются.
+     */
+    private long searchParallel(HexFileModel.Snapshot snapshot, int lead, int overlap, ChunkMatcher matcher,
+                                ScratchPool pool, long chunks, long fileLength, MatchListener listener,
+                                Reporter reporter) throws IOException {
+        int window = parallelism * 2;
+        ArrayDeque<Future<long[]>> pending = new ArrayDeque<>();
+        long nextChunk = 0;
+        long doneChunks = 0;
+        long matches = 0;
+        try {
+            while (true) {
+                while (nextChunk < chunks && pending.size() < window && !listener.isCancelled()) {
+                    long chunkStart = nextChunk++ * CHUNK_SIZE;
+                    pending.add(executor.submit(() -> scanChunk(snapshot, lead, overlap, matcher, pool, chunkStart)));
+                }
+                Future<long[]> head = pending.poll();
+                if (head == null) {
                     break;
                 }
+                long[] found = await(head);
+                if (listener.isCancelled()) {
+                    break;
+                }
+                matches += report(found, doneChunks * CHUNK_SIZE, reporter);
+                doneChunks++;
+                listener.onProgress(Math.min(doneChunks * CHUNK_SIZE, fileLength), fileLength);
             }
+        } finally {
+            for (Future<long[]> future : pending) {
+                future.cancel(false);
+            }
+        }
+        if (doneChunks < chunks) {
+            logger.info("Поиск прерван на позиции {}", doneChunks * CHUNK_SIZE);
+        }
+        return matches;
+    }
 
-            if (match) {
-                for (int j = 0; j < patternLen; j++) {
-                    result.add(i + j);
-                }
+    /**
+     * Ищет совпадения, начинающиеся в блоке [chunkStart, chunkStart + CHUNK_SIZE).
+     *
+     * @return ключи совпадений по возрастанию (см. {@link ChunkMatcher})
+     */
+    private long[] scanChunk(HexFileModel.Snapshot snapshot, int lead, int overlap, ChunkMatcher matcher,
+                             ScratchPool pool, long chunkStart) throws IOException {
+        int from = (int) Math.min(lead, chunkStart);
+        int size = from + CHUNK_SIZE + overlap;
+        Scratch scratch = pool.take();
+        try {
+            int read = snapshot.readBlock(chunkStart - from, scratch.bytes, 0, size);
+            // совпадения, начинающиеся в перекрытии, будут найдены в следующем блоке
+            long[] keys = matcher.find(scratch, from, Math.min(read, from + CHUNK_SIZE), read);
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] -= (long) from << 32;
+            }
+            return keys;
+        } finally {
+            pool.give(scratch);
+        }
+    }
+
+    private static long[] find(BytePattern pattern, Scratch scratch, int from, int limit, int read) {
+        ByteBuffer words = scratch.words;
+        long[] found = new long[8];
+        int count = 0;
+        for (int i = pattern.indexOf(words, from, read); i >= 0 && i < limit; i = pattern.indexOf(words, i + 1, read)) {
+            if (count == found.length) {
+                found = Arrays.copyOf(found, count * 2);
+            }
+            found[count++] = (long) i << 32;
+        }
+        return Arrays.copyOf(found, count);
+    }
+
+    /**
+     * Автомат выдает совпадения по концу опорного фрагмента, поэтому ключи сортируются.
+     */
+    private static long[] find(SignatureSet signatures, byte[] buffer, int from, int limit, int read) {
+        long[][] found = {new long[8]};
+        int[] count = {0};
+        signatures.scan(buffer, limit, read, (position, signature) -> {
+            if (count[0] == found[0].length) {
+                found[0] = Arrays.copyOf(found[0], count[0] * 2);
             }
+            found[0][count[0]++] = (long) position << 32 | signature;
+        });
+        long[] keys = Arrays.copyOf(found[0], count[0]);
+        Arrays.sort(keys);
+        return keys;
+    }
+
+    private static long[] find(TextPattern pattern, Scratch scratch, int from, int limit, int read) {
+        long[][] found = {new long[8]};
+        int[] count = {0};
+        pattern.find(scratch.bytes, from, limit, read, scratch.chars(read), (position, length) -> {
+            if (count[0] == found[0].length) {
+                found[0] = Arrays.copyOf(found[0], count[0] * 2);
+            }
+            found[0][count[0]++] = (long) position << 32 | length;
+        });
+        return Arrays.copyOf(found[0], count[0]);
+    }
+
+    private static long report(long[] found, long chunkStart, Reporter reporter) {
+        for (long key : found) {
+            reporter.report(chunkStart + (key >>> 32), (int) key);
         }
+        return found.length;
+    }
+
+    private static long[] await(Future<long[]> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Поиск прерван");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Ошибка поиска: " + e.getCause(), e.getCause());
+        }
+    }
 
-        return result;
+    private static synchronized ExecutorService sharedPool() {
+        if (sharedPool == null) {
+            sharedPool = new ForkJoinPool(DEFAULT_PARALLELISM);
+        }
+        return sharedPool;
     }
 
 }
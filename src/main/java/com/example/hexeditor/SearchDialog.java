@@ -3,22 +3,53 @@ package com.example.hexeditor;
 import javax.swing.JTextField;
 import javax.swing.JDialog;
 import javax.swing.JButton;
+import javax.swing.JCheckBox;
+import javax.swing.JComboBox;
 import javax.swing.JLabel;
 import javax.swing.JFrame;
 import java.awt.GridLayout;
 
 public class SearchDialog extends JDialog {
+    /**
+     * Вид поиска.
+     */
+    public enum Mode {
+        HEX("HEX"),
+        TEXT("Текст"),
+        REGEX("Регулярное выражение");
+
+        private final String title;
+
+        Mode(String title) {
+            this.title = title;
+        }
+
+        @Override
+        public String toString() {
+            return title;
+        }
+    }
+
+    private final JComboBox<Mode> modeBox;
+    private final JLabel queryLabel;
     private final JTextField hexField;
     private final JTextField maskField;
+    private final JComboBox<TextPattern.Encoding> encodingBox;
+    private final JCheckBox ignoreCaseBox;
     private boolean confirmed = false;
 
     public SearchDialog(JFrame parent) {
         super(parent, "Поиск байтов", true);
-        setLayout(new GridLayout(3, 2, 5, 5));
-        setSize(400, 150);
+        setLayout(new GridLayout(6, 2, 5, 5));
+        setSize(440, 240);
         setLocationRelativeTo(parent);
 
-        add(new JLabel("HEX последовательность:"));
+        add(new JLabel("Искать как:"));
+        modeBox = new JComboBox<>(Mode.values());
+        add(modeBox);
+
+        queryLabel = new JLabel("HEX последовательность:");
+        add(queryLabel);
         hexField = new JTextField();
         add(hexField);
 
@@ -26,6 +57,17 @@ public class SearchDialog extends JDialog {
         maskField = new JTextField();
         add(maskField);
 
+        add(new JLabel("Кодировка:"));
+        encodingBox = new JComboBox<>(TextPattern.Encoding.values());
+        add(encodingBox);
+
+        add(new JLabel());
+        ignoreCaseBox = new JCheckBox("Без учета регистра");
+        add(ignoreCaseBox);
+
+        modeBox.addActionListener(e -> updateFields());
+        updateFields();
+
         JButton searchButton = new JButton("Поиск");
         JButton cancelButton = new JButton("Отмена");
 
@@ -41,12 +83,32 @@ public class SearchDialog extends JDialog {
 
         add(searchButton);
         add(cancelButton);
+        getRootPane().setDefaultButton(searchButton);
     }
 
     public boolean isConfirmed() {
         return confirmed;
     }
 
+    public Mode getMode() {
+        return (Mode) modeBox.getSelectedItem();
+    }
+
+    /**
+     * @return строка или регулярное выражение для текстового поиска
+     */
+    public String getText() {
+        return hexField.getText();
+    }
+
+    public TextPattern.Encoding getEncoding() {
+        return (TextPattern.Encoding) encodingBox.getSelectedItem();
+    }
+
+    public boolean isIgnoreCase() {
+        return ignoreCaseBox.isSelected();
+    }
+
     public byte[] getHexBytes() {
         return parseHexString(hexField.getText());
     }
@@ -56,13 +118,26 @@ public class SearchDialog extends JDialog {
         return maskText.isEmpty() ? null : parseHexString(maskText);
     }
 
+    /**
+     * Маска относится к поиску байт, кодировка и регистр — к текстовому.
+     */
+    private void updateFields() {
+        Mode mode = getMode();
+        boolean text = mode != Mode.HEX;
+        queryLabel.setText(mode == Mode.HEX ? "HEX последовательность:"
+                : mode == Mode.TEXT ? "Текст:" : "Выражение:");
+        maskField.setEnabled(!text);
+        encodingBox.setEnabled(text);
+        ignoreCaseBox.setEnabled(text);
+    }
+
     private byte[] parseHexString(String hex) {
+        if (hex.trim().isEmpty()) {
+            return new byte[0];
+        }
         String[] parts = hex.trim().split("\\s+");
         byte[] result = new byte[parts.length];
 
-        if (parts.length == 0) {
-            return result;
-        }
         for (int i = 0; i < parts.length; i++) {
             result[i] = (byte) Integer.parseInt(parts[i], 16);
         }
@@ -0,0 +1,157 @@
+package com.example.hexeditor;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Компактное хранилище результатов поиска: отсортированные по началу
+ * диапазоны (позиция, длина) в примитивных массивах.
+ * Память пропорциональна числу совпадений, а не числу подсвеченных байт;
+ * проверка подсветки байта — двоичный поиск за O(log n).
+ * Совпадения могут перекрываться и иметь разную длину: для каждого индекса
+ * хранится максимальный конец среди диапазонов до него включительно.
+ */
+public class SearchHits {
+    private static final int INITIAL_CAPACITY = 64;
+
+    private long[] starts = new long[INITIAL_CAPACITY];
+    private int[] lengths = new int[INITIAL_CAPACITY];
+    private long[] maxEnds = new long[INITIAL_CAPACITY];
+    private int size;
+    private int version;
+    /** Версия содержимого, по которой найдены совпадения; -1 — неизвестна */
+    private long contentVersion = -1;
+
+    /**
+     * Добавляет совпадение. Позиции должны поступать в порядке неубывания.
+     *
+     * @param start позиция начала
+     * @param length длина совпадения
+     * @throws IllegalArgumentException если позиция меньше предыдущей
+     */
+    public void add(long start, int length) {
+        if (size > 0 && start < starts[size - 1]) {
+            throw new IllegalArgumentException("Совпадения должны добавляться по возрастанию позиций: " + start);
+        }
+        if (size == starts.length) {
+            int capacity = size * 2;
+            starts = Arrays.copyOf(starts, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+            maxEnds = Arrays.copyOf(maxEnds, capacity);
+        }
+        long end = start + length;
+        starts[size] = start;
+        lengths[size] = length;
+        maxEnds[size] = size > 0 ? Math.max(maxEnds[size - 1], end) : end;
+        size++;
+        version++;
+    }
+
+    /**
+     * @return количество совпадений
+     */
+    public int size() {
+        return size;
+    }
+
+    public long getStart(int index) {
+        return starts[index];
+    }
+
+    public int getLength(int index) {
+        return lengths[index];
+    }
+
+    /**
+     * Проверяет, покрыт ли байт каким-либо совпадением.
+     *
+     * @param offset позиция байта
+     * @return true, если байт входит в совпадение
+     */
+    public boolean contains(long offset) {
+        int index = lastStartAtOrBefore(offset);
+        return index >= 0 && maxEnds[index] > offset;
+    }
+
+    /**
+     * @return индекс последнего совпадения с началом не больше offset или -1
+     */
+    public int lastStartAtOrBefore(long offset) {
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (starts[mid] <= offset) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return high;
+    }
+
+    /**
+     * Удаляет все совпадения и освобождает память.
+     */
+    public void clear() {
+        starts = new long[INITIAL_CAPACITY];
+        lengths = new int[INITIAL_CAPACITY];
+        maxEnds = new long[INITIAL_CAPACITY];
+        size = 0;
+        version++;
+        contentVersion = -1;
+    }
+
+    /**
+     * Запоминает версию содержимого, по которой найдены совпадения; таблица
+     * не подсвечивает совпадения, если версия модели с тех пор изменилась.
+     *
+     * @param contentVersion версия содержимого (см. {@link HexFileModel.Snapshot#getVersion()})
+     */
+    public void setContentVersion(long contentVersion) {
+        this.contentVersion = contentVersion;
+    }
+
+    /**
+     * @return версия содержимого, по которой найдены совпадения, или -1
+     */
+    public long getContentVersion() {
+        return contentVersion;
+    }
+
+    /**
+     * @return счетчик изменений (растет при каждом добавлении и очистке)
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * Отмечает байты диапазона [from, to), покрытые совпадениями.
+     * Просматриваются только совпадения, пересекающие диапазон, поэтому
+     * стоимость зависит от размера диапазона и числа совпадений в нем,
+     * а не от общего числа совпадений.
+     *
+     * @param from начало диапазона
+     * @param to конец диапазона (не включая)
+     * @param out набор бит; бит i соответствует позиции from + i
+     */
+    public void mark(long from, long to, BitSet out) {
+        int index = lastStartAtOrBefore(from);
+        // совпадения, начавшиеся до диапазона: maxEnds не убывает, поэтому можно остановиться
+        for (int i = index; i >= 0 && maxEnds[i] > from; i--) {
+            markOne(i, from, to, out);
+        }
+        for (int i = index + 1; i < size && starts[i] < to; i++) {
+            markOne(i, from, to, out);
+        }
+    }
+
+    private void markOne(int index, long from, long to, BitSet out) {
+        long start = Math.max(starts[index], from);
+        long end = Math.min(starts[index] + lengths[index], to);
+        if (start < end) {
+            out.set((int) (start - from), (int) (end - from));
+        }
+    }
+}
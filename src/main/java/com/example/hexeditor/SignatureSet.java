@@ -0,0 +1,432 @@
+package com.example.hexeditor;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Набор сигнатур для поиска всех сигнатур за один проход (Ахо-Корасик).
+ * Сигнатура — шаблон с маской, как в {@link BytePattern}. В автомат попадает
+ * опорный фрагмент каждой сигнатуры — самый длинный отрезок байт с полной
+ * маской (не длиннее {@link #MAX_FRAGMENT}); найденный фрагмент проверяется
+ * сравнением всей сигнатуры с маской. Сигнатуры без байт с полной маской
+ * ищутся отдельно своим {@link BytePattern} по тому же буферу.
+ * Автомат хранится плотной таблицей переходов (256 на состояние) с номерами
+ * состояний, заранее умноженными на 256; состояния с совпадениями идут в конце
+ * нумерации, поэтому на каждый байт приходится одно чтение таблицы и одно сравнение.
+ * Пока автомат в корне, позиции, с первых двух байт которых не начинается ни один
+ * фрагмент, пропускаются по битовой карте пар байт (8 КиБ, помещается в кэш L1):
+ * на случайных данных автомат почти не работает, и скорость не зависит от его размера.
+ * Формат файла сигнатур — строка на сигнатуру:
+ * <pre>
+ * # комментарий
+ * PE: 4D 5A ?? ?? 50 45 00 00
+ * ZIP: 504B0304
+ * </pre>
+ * Знак {@code ?} заменяет полубайт ({@code 4?} совпадает с 40..4F).
+ */
+public final class SignatureSet {
+    /** Наибольшая длина опорного фрагмента: длиннее фрагмент почти не снижает число проверок */
+    public static final int MAX_FRAGMENT = 16;
+
+    /**
+     * Получатель совпадений сигнатур.
+     */
+    public interface MatchSink {
+        /**
+         * @param position позиция начала совпадения в буфере
+         * @param signature номер сигнатуры в наборе
+         */
+        void onMatch(int position, int signature);
+    }
+
+    /**
+     * Сигнатура: имя и шаблон с маской.
+     */
+    public static final class Signature {
+        private final String name;
+        private final byte[] pattern;
+        private final byte[] mask;
+        private final BytePattern compiled;
+
+        /**
+         * @param name имя сигнатуры
+         * @param pattern байты шаблона
+         * @param mask маска (null - точное совпадение)
+         */
+        public Signature(String name, byte[] pattern, byte[] mask) {
+            this.compiled = new BytePattern(pattern, mask);
+            this.name = name;
+            this.pattern = pattern.clone();
+            this.mask = new byte[pattern.length];
+            if (mask != null && mask.length == pattern.length) {
+                System.arraycopy(mask, 0, this.mask, 0, mask.length);
+            } else {
+                Arrays.fill(this.mask, (byte) 0xFF);
+            }
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int length() {
+            return pattern.length;
+        }
+
+        /**
+         * @return скомпилированный шаблон сигнатуры
+         */
+        public BytePattern getPattern() {
+            return compiled;
+        }
+    }
+
+    private final List<Signature> signatures;
+    private final int maxLength;
+    /** Переходы: table[state | byte] = следующее состояние; состояния умножены на 256 */
+    private final int[] table;
+    /** Состояния не меньше этого значения (умноженного на 256) имеют совпадения */
+    private final int acceptBase;
+    /** Совпадения состояния s: outputs[outputStart[s - first]..outputStart[s - first + 1]) */
+    private final int[] outputStart;
+    private final int[] outputs;
+    /** Для каждой сигнатуры: смещение конца опорного фрагмента от начала сигнатуры */
+    private final int[] fragmentEnd;
+    /** Скомпилированные шаблоны сигнатур по номерам */
+    private final BytePattern[] patterns;
+    /** Номера сигнатур без опорного фрагмента */
+    private final int[] unanchored;
+    /** Бит (b0 << 8 | b1) установлен, если с пары байт b0 b1 начинается какой-либо фрагмент */
+    private final long[] leadingPairs = new long[65536 / Long.SIZE];
+
+    /**
+     * Строит автомат по сигнатурам.
+     *
+     * @param signatures сигнатуры; номер сигнатуры — ее индекс в списке
+     */
+    public SignatureSet(List<Signature> signatures) {
+        if (signatures.isEmpty()) {
+            throw new IllegalArgumentException("Пустой набор сигнатур");
+        }
+        this.signatures = Collections.unmodifiableList(new ArrayList<>(signatures));
+        int count = signatures.size();
+        this.fragmentEnd = new int[count];
+        this.patterns = new BytePattern[count];
+        int longest = 0;
+        int fragmentBytes = 0;
+        int[] fragmentStart = new int[count];
+        int unanchoredCount = 0;
+        for (int k = 0; k < count; k++) {
+            Signature signature = signatures.get(k);
+            patterns[k] = signature.compiled;
+            longest = Math.max(longest, signature.length());
+            int[] fragment = longestFixedRun(signature.mask);
+            fragmentStart[k] = fragment[0];
+            fragmentEnd[k] = fragment[0] + fragment[1] - 1;
+            fragmentBytes += fragment[1];
+            if (fragment[1] == 0) {
+                unanchoredCount++;
+            }
+        }
+        this.maxLength = longest;
+        this.unanchored = new int[unanchoredCount];
+
+        // бор по опорным фрагментам; -1 — нет перехода
+        int capacity = fragmentBytes + 1;
+        int[] next = new int[capacity * 256];
+        Arrays.fill(next, -1);
+        List<List<Integer>> matches = new ArrayList<>();
+        matches.add(new ArrayList<>());
+        int states = 1;
+        for (int k = 0, u = 0; k < count; k++) {
+            if (fragmentEnd[k] < fragmentStart[k]) {
+                unanchored[u++] = k;
+                continue;
+            }
+            byte[] pattern = signatures.get(k).pattern;
+            int state = 0;
+            for (int j = fragmentStart[k]; j <= fragmentEnd[k]; j++) {
+                int slot = state * 256 + (pattern[j] & 0xFF);
+                if (next[slot] < 0) {
+                    next[slot] = states++;
+                    matches.add(new ArrayList<>());
+                }
+                state = next[slot];
+            }
+            matches.get(state).add(k);
+            markLeadingPair(pattern, fragmentStart[k], fragmentEnd[k]);
+        }
+
+        // ссылки неудач обходом в ширину; недостающие переходы берутся из состояния неудачи
+        int[] fail = new int[states];
+        int[] order = new int[states];
+        int ordered = 0;
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        order[ordered++] = 0;
+        for (int c = 0; c < 256; c++) {
+            int child = next[c];
+            if (child < 0) {
+                next[c] = 0;
+            } else {
+                fail[child] = 0;
+                queue.add(child);
+            }
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            order[ordered++] = state;
+            matches.get(state).addAll(matches.get(fail[state]));
+            for (int c = 0; c < 256; c++) {
+                int slot = state * 256 + c;
+                int child = next[slot];
+                if (child < 0) {
+                    next[slot] = next[fail[state] * 256 + c];
+                } else {
+                    fail[child] = next[fail[state] * 256 + c];
+                    queue.add(child);
+                }
+            }
+        }
+
+        // перенумерация: сначала состояния без совпадений (корень остается нулем), затем с совпадениями
+        int[] renumbered = new int[states];
+        int[] original = new int[states];
+        int id = 0;
+        for (int state : order) {
+            if (matches.get(state).isEmpty()) {
+                renumbered[state] = id++;
+            }
+        }
+        int first = id;
+        for (int state : order) {
+            if (!matches.get(state).isEmpty()) {
+                renumbered[state] = id++;
+            }
+        }
+        for (int state = 0; state < states; state++) {
+            original[renumbered[state]] = state;
+        }
+        this.acceptBase = first << 8;
+        this.table = new int[states * 256];
+        this.outputStart = new int[states - first + 1];
+        int outputCount = 0;
+        for (int state = 0; state < states; state++) {
+            outputCount += matches.get(state).size();
+            for (int c = 0; c < 256; c++) {
+                table[(renumbered[state] << 8) | c] = renumbered[next[state * 256 + c]] << 8;
+            }
+        }
+        this.outputs = new int[outputCount];
+        int position = 0;
+        for (int accepting = first; accepting < states; accepting++) {
+            outputStart[accepting - first] = position;
+            for (int k : matches.get(original[accepting])) {
+                outputs[position++] = k;
+            }
+        }
+        outputStart[states - first] = position;
+    }
+
+    /**
+     * Загружает сигнатуры из текстового файла (формат — в описании класса).
+     *
+     * @param file файл сигнатур в UTF-8
+     * @return набор сигнатур
+     * @throws IOException если файл не читается или строка записана с ошибкой
+     */
+    public static SignatureSet load(File file) throws IOException {
+        List<Signature> signatures = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            int number = 0;
+            while ((line = reader.readLine()) != null) {
+                number++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                int separator = line.lastIndexOf(':');
+                if (separator <= 0) {
+                    throw new IOException(file.getName() + ", строка " + number + ": ожидается \"имя: байты\"");
+                }
+                try {
+                    signatures.add(parse(line.substring(0, separator).trim(), line.substring(separator + 1)));
+                } catch (IllegalArgumentException e) {
+                    throw new IOException(file.getName() + ", строка " + number + ": " + e.getMessage(), e);
+                }
+            }
+        }
+        if (signatures.isEmpty()) {
+            throw new IOException("В файле " + file.getName() + " нет сигнатур");
+        }
+        return new SignatureSet(signatures);
+    }
+
+    /**
+     * Разбирает шестнадцатеричную запись сигнатуры; пробелы между байтами
+     * необязательны, {@code ?} заменяет полубайт.
+     *
+     * @param name имя сигнатуры
+     * @param hex байты сигнатуры
+     * @return сигнатура
+     * @throws IllegalArgumentException если запись содержит ошибку
+     */
+    public static Signature parse(String name, String hex) {
+        String digits = hex.replaceAll("\\s+", "");
+        if (digits.isEmpty() || digits.length() % 2 != 0) {
+            throw new IllegalArgumentException("Нечетное число полубайт в сигнатуре " + name);
+        }
+        byte[] pattern = new byte[digits.length() / 2];
+        byte[] mask = new byte[pattern.length];
+        for (int i = 0; i < digits.length(); i++) {
+            char c = digits.charAt(i);
+            int shift = i % 2 == 0 ? 4 : 0;
+            if (c == '?') {
+                continue;
+            }
+            int value = Character.digit(c, 16);
+            if (value < 0) {
+                throw new IllegalArgumentException("Недопустимый символ '" + c + "' в сигнатуре " + name);
+            }
+            pattern[i / 2] |= (byte) (value << shift);
+            mask[i / 2] |= (byte) (0xF << shift);
+        }
+        return new Signature(name, pattern, mask);
+    }
+
+    /**
+     * @return число сигнатур
+     */
+    public int size() {
+        return signatures.size();
+    }
+
+    /**
+     * @param index номер сигнатуры
+     */
+    public Signature get(int index) {
+        return signatures.get(index);
+    }
+
+    /**
+     * @return длина самой длинной сигнатуры
+     */
+    public int maxLength() {
+        return maxLength;
+    }
+
+    /**
+     * @return число состояний автомата
+     */
+    public int stateCount() {
+        return table.length >>> 8;
+    }
+
+    /**
+     * Ищет все сигнатуры, начинающиеся в [0, limit) буфера и целиком лежащие
+     * в [0, length). Совпадения выдаются в порядке конца опорного фрагмента,
+     * а не начала сигнатуры.
+     *
+     * @param data данные
+     * @param limit граница начала совпадений
+     * @param length длина данных
+     * @param sink получатель совпадений
+     * @return число совпадений
+     */
+    public int scan(byte[] data, int limit, int length, MatchSink sink) {
+        int[] table = this.table;
+        int acceptBase = this.acceptBase;
+        int found = 0;
+        long[] leadingPairs = this.leadingPairs;
+        int last = length - 1;
+        int state = 0;
+        for (int i = 0; i < length; i++) {
+            if (state == 0) {
+                // в корне ни один фрагмент не начат: пропускаем позиции, где фрагмент начаться не может
+                for (; i < last; i++) {
+                    int pair = (data[i] & 0xFF) << 8 | (data[i + 1] & 0xFF);
+                    if ((leadingPairs[pair >>> 6] & 1L << pair) != 0) {
+                        break;
+                    }
+                }
+            }
+            state = table[state | (data[i] & 0xFF)];
+            if (state >= acceptBase) {
+                found += verify(data, i, limit, length, (state - acceptBase) >>> 8, sink);
+            }
+        }
+        for (int k : unanchored) {
+            BytePattern pattern = patterns[k];
+            for (int i = pattern.indexOf(data, 0, length); i >= 0 && i < limit; i = pattern.indexOf(data, i + 1, length)) {
+                sink.onMatch(i, k);
+                found++;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Отмечает первые два байта фрагмента; фрагмент из одного байта может начаться
+     * перед любым байтом.
+     */
+    private void markLeadingPair(byte[] pattern, int start, int end) {
+        int first = (pattern[start] & 0xFF) << 8;
+        if (start == end) {
+            for (int second = 0; second < 256; second++) {
+                leadingPairs[(first | second) >>> 6] |= 1L << (first | second);
+            }
+        } else {
+            int pair = first | (pattern[start + 1] & 0xFF);
+            leadingPairs[pair >>> 6] |= 1L << pair;
+        }
+    }
+
+    /**
+     * Проверяет сигнатуры, опорный фрагмент которых заканчивается в позиции end.
+     */
+    private int verify(byte[] data, int end, int limit, int length, int accepting, MatchSink sink) {
+        int found = 0;
+        for (int o = outputStart[accepting]; o < outputStart[accepting + 1]; o++) {
+            int k = outputs[o];
+            int start = end - fragmentEnd[k];
+            BytePattern pattern = patterns[k];
+            if (start >= 0 && start < limit && start + pattern.length() <= length && pattern.matchesAt(data, start)) {
+                sink.onMatch(start, k);
+                found++;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * @return {начало, длина} самого длинного отрезка байт с полной маской, не длиннее
+     *         {@link #MAX_FRAGMENT}; длина 0, если таких байт нет
+     */
+    private static int[] longestFixedRun(byte[] mask) {
+        int bestStart = 0;
+        int bestLength = 0;
+        for (int j = 0; j < mask.length; ) {
+            if (mask[j] != (byte) 0xFF) {
+                j++;
+                continue;
+            }
+            int start = j;
+            while (j < mask.length && mask[j] == (byte) 0xFF) {
+                j++;
+            }
+            if (j - start > bestLength) {
+                bestStart = start;
+                bestLength = j - start;
+            }
+        }
+        return new int[]{bestStart, Math.min(bestLength, MAX_FRAGMENT)};
+    }
+}
@@ -0,0 +1,465 @@
+package com.example.hexeditor;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Текстовый шаблон поиска: строка или регулярное выражение в заданной кодировке.
+ * Строка без учета регистра, в которой регистр есть только у латинских букв,
+ * сводится к {@link BytePattern}: байт буквы ASCII сравнивается с маской 0xDF
+ * (строчная и прописная отличаются одним битом), поэтому такой поиск идет с
+ * обычной скоростью и по индексу. Остальные шаблоны ищутся регулярным
+ * выражением по блоку, декодированному в массив символов; файл целиком в строку
+ * не превращается. Позиции символов переводятся обратно в позиции байт:
+ * для ASCII и UTF-16 — арифметически, для UTF-8 — проходом по байтам блока
+ * до очередного совпадения.
+ * Ограничения: совпадение не длиннее {@link #MAX_MATCH} байт — более длинное
+ * обрывается на этой длине, и поиск продолжается с места обрыва, так что длинная
+ * серия выдается частями (на стыке блоков чтения части могут перекрываться);
+ * выражение видит блок чтения и {@link #MAX_MATCH} байт перед ним, поэтому {@code ^}
+ * и просмотр назад дальше этого не заглядывают. UTF-16 просматривается с четных
+ * и нечетных позиций.
+ */
+public final class TextPattern {
+    /** Наибольшая длина совпадения регулярного выражения в байтах */
+    public static final int MAX_MATCH = 64 * 1024;
+
+    private static final char REPLACEMENT = '\uFFFD';
+
+    /**
+     * Кодировка текста.
+     */
+    public enum Encoding {
+        /** Однобайтовая: байты 0x80-0xFF читаются как ISO-8859-1 */
+        ASCII("ASCII", StandardCharsets.ISO_8859_1),
+        UTF8("UTF-8", StandardCharsets.UTF_8),
+        UTF16LE("UTF-16LE", StandardCharsets.UTF_16LE),
+        UTF16BE("UTF-16BE", StandardCharsets.UTF_16BE);
+
+        private final String title;
+        private final Charset charset;
+
+        Encoding(String title, Charset charset) {
+            this.title = title;
+            this.charset = charset;
+        }
+
+        @Override
+        public String toString() {
+            return title;
+        }
+    }
+
+    /**
+     * Получатель совпадений.
+     */
+    public interface MatchSink {
+        /**
+         * @param position позиция начала совпадения в буфере
+         * @param length длина совпадения в байтах
+         */
+        void onMatch(int position, int length);
+    }
+
+    private final Encoding encoding;
+    private final BytePattern bytes;
+    private final Pattern regex;
+
+    private TextPattern(Encoding encoding, BytePattern bytes, Pattern regex) {
+        this.encoding = encoding;
+        this.bytes = bytes;
+        this.regex = regex;
+    }
+
+    /**
+     * Компилирует строку для поиска.
+     *
+     * @param text строка
+     * @param encoding кодировка
+     * @param ignoreCase без учета регистра
+     * @throws IllegalArgumentException если строка пуста или не представима в кодировке
+     */
+    public static TextPattern literal(String text, Encoding encoding, boolean ignoreCase) {
+        if (text.isEmpty()) {
+            throw new IllegalArgumentException("Пустая строка поиска");
+        }
+        if (ignoreCase && !caseOnlyInAscii(text)) {
+            return regex(Pattern.quote(text), encoding, true);
+        }
+        if (!encoding.charset.newEncoder().canEncode(text)) {
+            throw new IllegalArgumentException("Строка не представима в кодировке " + encoding);
+        }
+        byte[] pattern = text.getBytes(encoding.charset);
+        byte[] mask = new byte[pattern.length];
+        Arrays.fill(mask, (byte) 0xFF);
+        if (ignoreCase) {
+            int width = encoding == Encoding.UTF16LE || encoding == Encoding.UTF16BE ? 2 : 1;
+            int low = encoding == Encoding.UTF16BE ? 1 : 0;
+            // символы ASCII кодируются одним байтом (UTF-16 — младшим байтом пары)
+            for (int i = 0, j = 0; i < text.length(); ) {
+                int code = text.codePointAt(i);
+                int chars = Character.charCount(code);
+                if (code < 0x80 && Character.isLetter(code)) {
+                    pattern[j + low] &= (byte) 0xDF;
+                    mask[j + low] = (byte) 0xDF;
+                }
+                j += code < 0x80 ? width : text.substring(i, i + chars).getBytes(encoding.charset).length;
+                i += chars;
+            }
+        }
+        return new TextPattern(encoding, new BytePattern(pattern, mask), null);
+    }
+
+    /**
+     * Компилирует регулярное выражение.
+     *
+     * @param expression выражение в синтаксисе {@link Pattern}
+     * @param encoding кодировка
+     * @param ignoreCase без учета регистра (для всех букв, не только латинских)
+     * @throws java.util.regex.PatternSyntaxException если выражение записано с ошибкой
+     */
+    public static TextPattern regex(String expression, Encoding encoding, boolean ignoreCase) {
+        if (expression.isEmpty()) {
+            throw new IllegalArgumentException("Пустое регулярное выражение");
+        }
+        int flags = ignoreCase ? Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE : 0;
+        return new TextPattern(encoding, null, Pattern.compile(expression, flags));
+    }
+
+    /**
+     * @return байтовый шаблон, если строка сведена к нему, иначе null
+     */
+    public BytePattern toBytePattern() {
+        return bytes;
+    }
+
+    public Encoding getEncoding() {
+        return encoding;
+    }
+
+    /**
+     * Ищет совпадения, начинающиеся в [from, limit) буфера и целиком лежащие в [0, length).
+     * Данные до from — разгон: регулярное выражение просматривает их так же, как
+     * при сплошном просмотре, поэтому совпадение, начатое до from, не выдается
+     * повторно своим хвостом. Достаточный разгон — {@link #MAX_MATCH} байт;
+     * совпадение не длиннее {@link #MAX_MATCH} байт, поэтому начатое до limit
+     * целиком лежит в [0, length), если после limit есть столько же байт.
+     *
+     * @param text буфер декодирования не короче length символов, принадлежащий
+     *             вызывающей задаче (для байтового шаблона не используется)
+     * @param sink получатель: позиция начала и длина совпадения в байтах
+     * @return число совпадений
+     */
+    public int find(byte[] data, int from, int limit, int length, char[] text, MatchSink sink) {
+        if (bytes != null) {
+            ByteBuffer words = BytePattern.words(data);
+            int found = 0;
+            for (int i = bytes.indexOf(words, from, length); i >= 0 && i < limit; i = bytes.indexOf(words, i + 1, length)) {
+                sink.onMatch(i, bytes.length());
+                found++;
+            }
+            return found;
+        }
+        switch (encoding) {
+            case UTF8:
+                return findUtf8(data, from, limit, length, text, sink);
+            case UTF16LE:
+            case UTF16BE:
+                return findUtf16(data, from, limit, length, text, sink);
+            default:
+                return findAscii(data, from, limit, length, text, sink);
+        }
+    }
+
+    private int findAscii(byte[] data, int from, int limit, int length, char[] text, MatchSink sink) {
+        for (int i = 0; i < length; i++) {
+            text[i] = (char) (data[i] & 0xFF);
+        }
+        int found = 0;
+        BoundedMatcher matcher = new BoundedMatcher(regex, new Text(text, length), MAX_MATCH);
+        while (matcher.find() && matcher.start() < limit) {
+            if (matcher.start() >= from && matcher.end() > matcher.start()) {
+                sink.onMatch(matcher.start(), matcher.end() - matcher.start());
+                found++;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Просматривает четные и нечетные позиции и выдает совпадения по возрастанию позиций.
+     */
+    private int findUtf16(byte[] data, int from, int limit, int length, char[] text, MatchSink sink) {
+        long[][] keys = {new long[16]};
+        int[] count = {0};
+        MatchSink collect = (position, matchLength) -> {
+            if (count[0] == keys[0].length) {
+                keys[0] = Arrays.copyOf(keys[0], count[0] * 2);
+            }
+            keys[0][count[0]++] = (long) position << 32 | matchLength;
+        };
+        findUtf16(data, 0, from, limit, length, text, collect);
+        findUtf16(data, 1, from, limit, length, text, collect);
+        long[] sorted = Arrays.copyOf(keys[0], count[0]);
+        Arrays.sort(sorted);
+        for (long key : sorted) {
+            sink.onMatch((int) (key >>> 32), (int) key);
+        }
+        return sorted.length;
+    }
+
+    private void findUtf16(byte[] data, int shift, int from, int limit, int length, char[] text, MatchSink sink) {
+        int count = (length - shift) / 2;
+        int high = encoding == Encoding.UTF16BE ? 0 : 1;
+        for (int i = 0, b = shift; i < count; i++, b += 2) {
+            text[i] = (char) ((data[b + high] & 0xFF) << 8 | (data[b + 1 - high] & 0xFF));
+        }
+        BoundedMatcher matcher = new BoundedMatcher(regex, new Text(text, count), MAX_MATCH / 2);
+        while (matcher.find() && shift + 2 * matcher.start() < limit) {
+            if (shift + 2 * matcher.start() >= from && matcher.end() > matcher.start()) {
+                sink.onMatch(shift + 2 * matcher.start(), 2 * (matcher.end() - matcher.start()));
+            }
+        }
+    }
+
+    private int findUtf8(byte[] data, int from, int limit, int length, char[] text, MatchSink sink) {
+        int count = 0;
+        for (int b = 0; b < length; ) {
+            int sequence = sequenceLength(data, b, length);
+            if (sequence == 0) {
+                text[count++] = REPLACEMENT;
+                b++;
+                continue;
+            }
+            int code = decode(data, b, sequence);
+            if (code >= 0x10000) {
+                text[count++] = Character.highSurrogate(code);
+                text[count++] = Character.lowSurrogate(code);
+            } else {
+                text[count++] = (char) code;
+            }
+            b += sequence;
+        }
+        // перевод позиций символов в позиции байт тем же проходом, что и декодирование
+        int found = 0;
+        int charAt = 0;
+        int byteAt = 0;
+        // символ UTF-8 не короче байта, поэтому предел в символах не меньше предела в байтах;
+        // совпадение длиннее MAX_MATCH байт укорачивается до символа, на котором предел достигнут
+        BoundedMatcher matcher = new BoundedMatcher(regex, new Text(text, count), MAX_MATCH);
+        while (matcher.find()) {
+            int start = matcher.start();
+            while (charAt < start) {
+                int sequence = Math.max(1, sequenceLength(data, byteAt, length));
+                charAt += sequence == 4 ? 2 : 1;
+                byteAt += sequence;
+            }
+            if (byteAt >= limit) {
+                break;
+            }
+            int startByte = byteAt;
+            int endChar = charAt;
+            int endByte = byteAt;
+            boolean bounded = true;
+            while (endChar < matcher.end()) {
+                int sequence = Math.max(1, sequenceLength(data, endByte, length));
+                if (endByte + sequence - startByte > MAX_MATCH) {
+                    if (!matcher.shorten(endChar)) {
+                        bounded = false;
+                        break;
+                    }
+                    // укороченное совпадение заканчивается не дальше endChar
+                    endChar = charAt;
+                    endByte = startByte;
+                    continue;
+                }
+                endChar += sequence == 4 ? 2 : 1;
+                endByte += sequence;
+            }
+            int end = matcher.end();
+            // совпадение, начавшееся со второй половины суррогатной пары, не выделяется
+            if (bounded && end > start && charAt == start && startByte >= from) {
+                sink.onMatch(startByte, endByte - startByte);
+                found++;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * @return длина корректной последовательности UTF-8 с позиции b или 0
+     */
+    private static int sequenceLength(byte[] data, int b, int length) {
+        int lead = data[b] & 0xFF;
+        int sequence;
+        int min;
+        if (lead < 0x80) {
+            return 1;
+        } else if (lead >= 0xC2 && lead <= 0xDF) {
+            sequence = 2;
+            min = 0x80;
+        } else if (lead >= 0xE0 && lead <= 0xEF) {
+            sequence = 3;
+            min = 0x800;
+        } else if (lead >= 0xF0 && lead <= 0xF4) {
+            sequence = 4;
+            min = 0x10000;
+        } else {
+            return 0;
+        }
+        if (b + sequence > length) {
+            return 0;
+        }
+        for (int k = 1; k < sequence; k++) {
+            if ((data[b + k] & 0xC0) != 0x80) {
+                return 0;
+            }
+        }
+        int code = decode(data, b, sequence);
+        boolean surrogate = code >= 0xD800 && code <= 0xDFFF;
+        return code < min || code > 0x10FFFF || surrogate ? 0 : sequence;
+    }
+
+    private static int decode(byte[] data, int b, int sequence) {
+        if (sequence == 1) {
+            return data[b] & 0xFF;
+        }
+        int code = data[b] & (0xFF >>> (sequence + 1));
+        for (int k = 1; k < sequence; k++) {
+            code = code << 6 | (data[b + k] & 0x3F);
+        }
+        return code;
+    }
+
+    /**
+     * @return true, если регистр в строке есть только у символов ASCII
+     */
+    private static boolean caseOnlyInAscii(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c >= 0x80 && (Character.toUpperCase(c) != c || Character.toLowerCase(c) != c)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Поиск совпадений не длиннее max символов. Начало ищется в окне из двух
+     * предельных длин, затем совпадение с этого начала строится в пределах max
+     * символов; более длинное обрывается, и следующее ищется с места обрыва.
+     * Границы окна прозрачны и не якорные: {@code ^}, {@code $} и просмотр
+     * вокруг видят весь текст, как при поиске без окна.
+     */
+    private static final class BoundedMatcher {
+        private final Matcher matcher;
+        private final int length;
+        private final int max;
+        private int position;
+        private int start;
+        private int end;
+
+        BoundedMatcher(Pattern regex, CharSequence text, int max) {
+            this.matcher = regex.matcher(text).useTransparentBounds(true).useAnchoringBounds(false);
+            this.length = text.length();
+            this.max = max;
+        }
+
+        /**
+         * @return true, если найдено следующее совпадение (возможно, пустое)
+         */
+        boolean find() {
+            while (position <= length) {
+                int window = (int) Math.min(length, (long) position + 2L * max);
+                matcher.region(position, window);
+                // с начала не дальше position + max совпадение длиной до max помещается в окно,
+                // поэтому, если такого начала нет, следующее ищется за ним
+                if (!matcher.find()) {
+                    if (window == length) {
+                        return false;
+                    }
+                    position += max + 1;
+                    continue;
+                }
+                int found = matcher.start();
+                if (found - position > max) {
+                    position += max + 1;
+                    continue;
+                }
+                start = found;
+                if (shorten((int) Math.min(length, (long) found + max))) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Строит совпадение с текущего начала, оканчивающееся не дальше limit.
+         *
+         * @return false, если с этого начала совпадения в пределах limit нет
+         *         (поиск продолжится со следующего символа)
+         */
+        boolean shorten(int limit) {
+            matcher.region(start, limit);
+            if (!matcher.lookingAt()) {
+                position = start + 1;
+                return false;
+            }
+            end = matcher.end();
+            position = end > start ? end : end + 1;
+            return true;
+        }
+
+        int start() {
+            return start;
+        }
+
+        int end() {
+            return end;
+        }
+    }
+
+    /**
+     * Часть массива символов без копирования в строку.
+     */
+    private static final class Text implements CharSequence {
+        private final char[] chars;
+        private final int offset;
+        private final int length;
+
+        Text(char[] chars, int length) {
+            this(chars, 0, length);
+        }
+
+        private Text(char[] chars, int offset, int length) {
+            this.chars = chars;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return chars[offset + index];
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new Text(chars, offset + start, end - start);
+        }
+
+        @Override
+        public String toString() {
+            return new String(chars, offset, length);
+        }
+    }
+}
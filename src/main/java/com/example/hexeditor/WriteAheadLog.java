@@ -0,0 +1,405 @@
+package com.example.hexeditor;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Журнал упреждающей записи правок в файле рядом с редактируемым
+ * ({@code <файл>.hexwal}).
+ * Запись журнала: тип (1 байт), длина данных (4), данные, CRC32 (4);
+ * чтение останавливается на первой поврежденной записи, поэтому запись,
+ * оборванная сбоем, просто отбрасывается.
+ *
+ * В режиме таблицы фрагментов в журнал пишутся логические правки; на диск
+ * они сбрасываются группами фоновым потоком не реже раза в
+ * {@link #COMMIT_INTERVAL} мс, и правка не ждет fsync. После сбоя правки
+ * можно повторить поверх исходного файла, если он не менялся (длина и
+ * время изменения совпадают с заголовком).
+ *
+ * В режиме прямой записи операция описывается записью BEGIN, данными
+ * вставки (DATA) и копиями перемещаемых блоков хвоста (MOVE). Каждая запись
+ * становится надежной до того, как соответствующие байты попадают в файл,
+ * поэтому прерванную операцию можно довести до конца: блоки из журнала
+ * записываются заново, а перенос продолжается с места остановки.
+ * Чтобы журнал не рос до размера хвоста, каждые {@link #CHECKPOINT_SIZE}
+ * байт файл сбрасывается на диск, достигнутый прогресс фиксируется
+ * в заголовке, а записи MOVE отрезаются.
+ */
+public class WriteAheadLog implements Closeable {
+    /** Суффикс файла журнала */
+    public static final String SUFFIX = ".hexwal";
+    /** Наибольшая задержка сброса журнала на диск, мс; свойство {@code hexeditor.wal.commit.ms} */
+    public static final long COMMIT_INTERVAL = Long.getLong("hexeditor.wal.commit.ms", 10);
+    /** Объем переноса между контрольными точками (64 МиБ) */
+    public static final long CHECKPOINT_SIZE = 64L * 1024 * 1024;
+
+    static final byte INSERT = 1;
+    static final byte REPLACE = 2;
+    static final byte DELETE = 3;
+    static final byte ZERO = 4;
+    static final byte UNDO = 5;
+    static final byte REDO = 6;
+    static final byte BEGIN = 10;
+    static final byte DATA = 11;
+    static final byte MOVE = 12;
+
+    private static final long MAGIC = 0x4845_5857_414C_0001L;
+    /** magic, длина, время изменения и два слота прогресса (номер, значение, CRC) */
+    static final int HEADER_SIZE = 8 + 8 + 8 + 2 * 20;
+    private static final int SLOTS_OFFSET = 24;
+
+    private static final Logger logger = LoggerFactory.getLogger(WriteAheadLog.class);
+
+    /**
+     * Запись, прочитанная из журнала.
+     */
+    public static final class Record {
+        final byte type;
+        /** Позиция данных записи в журнале */
+        final long offset;
+        final int length;
+
+        Record(byte type, long offset, int length) {
+            this.type = type;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    private final File file;
+    private final RandomAccessFile raf;
+    private final FileChannel channel;
+    private final Thread syncer;
+    private long baseLength;
+    private long baseModified;
+    private long end;
+    private long dataEnd;
+    private long slotSequence;
+    private long appended;
+    private long synced;
+    private boolean closed;
+
+    private WriteAheadLog(File file) throws IOException {
+        this.file = file;
+        this.raf = new RandomAccessFile(file, "rw");
+        this.channel = raf.getChannel();
+        this.syncer = new Thread(this::syncLoop, "hexeditor-wal");
+        syncer.setDaemon(true);
+    }
+
+    /**
+     * Открывает журнал для файла. Прежнее содержимое журнала (если был сбой)
+     * не удаляется, пока не вызван {@link #reset}.
+     *
+     * @param target редактируемый файл
+     * @return журнал
+     */
+    public static WriteAheadLog open(File target) throws IOException {
+        WriteAheadLog wal = new WriteAheadLog(new File(target.getPath() + SUFFIX));
+        wal.syncer.start();
+        return wal;
+    }
+
+    /**
+     * @return текущий размер журнала в байтах
+     */
+    public synchronized long size() {
+        return end;
+    }
+
+    /**
+     * @return файл журнала
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return true, если заголовок журнала совпадает с длиной и временем изменения файла
+     */
+    public synchronized boolean matches(long length, long modified) throws IOException {
+        return readHeader() && baseLength == length && baseModified == modified;
+    }
+
+    /**
+     * Читает записи журнала до первой поврежденной. Данные записей проверяются
+     * по CRC, но в памяти не удерживаются (см. {@link #load}). Поврежденный
+     * остаток журнала будет перезаписан следующими записями.
+     *
+     * @return записи в порядке добавления (пусто, если журнала нет)
+     */
+    public synchronized List<Record> read() throws IOException {
+        List<Record> records = new ArrayList<>();
+        if (!readHeader()) {
+            return records;
+        }
+        long position = HEADER_SIZE;
+        long size = channel.size();
+        ByteBuffer head = ByteBuffer.allocate(5);
+        while (position + 9 <= size) {
+            head.clear();
+            readFully(head, position);
+            byte type = head.get(0);
+            int length = head.getInt(1);
+            if (length < 0 || position + 9 + length > size) {
+                break;
+            }
+            ByteBuffer data = ByteBuffer.allocate(length);
+            readFully(data, position + 5);
+            ByteBuffer crc = ByteBuffer.allocate(4);
+            readFully(crc, position + 5 + length);
+            if (crc.getInt(0) != checksum(type, data.array(), length)) {
+                logger.warn("Журнал {} поврежден с позиции {}, дальнейшие записи отброшены", file, position);
+                break;
+            }
+            records.add(new Record(type, position + 5, length));
+            position += 9 + length;
+        }
+        // новые записи (при доведении операции до конца) идут за прочитанными
+        end = position;
+        dataEnd = position;
+        return records;
+    }
+
+    /**
+     * @return данные записи
+     */
+    public synchronized ByteBuffer load(Record record) throws IOException {
+        ByteBuffer data = ByteBuffer.allocate(record.length);
+        readFully(data, record.offset);
+        data.flip();
+        return data;
+    }
+
+    /**
+     * @return прогресс переноса, зафиксированный последней контрольной точкой
+     */
+    public synchronized long readProgress() throws IOException {
+        long best = -1;
+        long progress = 0;
+        ByteBuffer slot = ByteBuffer.allocate(20);
+        for (int i = 0; i < 2; i++) {
+            slot.clear();
+            readFully(slot, SLOTS_OFFSET + i * 20);
+            long sequence = slot.getLong(0);
+            long value = slot.getLong(8);
+            if (slot.getInt(16) == checksum((byte) i, slot.array(), 16) && sequence > best) {
+                best = sequence;
+                progress = value;
+            }
+        }
+        slotSequence = Math.max(best, 0);
+        return progress;
+    }
+
+    /**
+     * Очищает журнал и записывает новый заголовок.
+     *
+     * @param length длина файла, к которому относятся последующие правки
+     * @param modified время изменения файла
+     */
+    public synchronized void reset(long length, long modified) throws IOException {
+        channel.truncate(0);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putLong(MAGIC).putLong(length).putLong(modified);
+        channel.write(ByteBuffer.wrap(header.array()), 0);
+        channel.force(true);
+        baseLength = length;
+        baseModified = modified;
+        end = HEADER_SIZE;
+        dataEnd = end;
+        slotSequence = 0;
+        synced = appended;
+    }
+
+    /**
+     * Добавляет запись. Запись станет надежной после ближайшего группового
+     * сброса или вызова {@link #sync}.
+     *
+     * @return номер записи для {@link #awaitDurable}
+     */
+    public synchronized long append(byte type, ByteBuffer data) throws IOException {
+        int length = data.remaining();
+        ByteBuffer record = ByteBuffer.allocate(9 + length);
+        record.put(type).putInt(length).put(data.duplicate());
+        record.putInt(checksum(type, record.array(), 5, length));
+        record.flip();
+        while (record.hasRemaining()) {
+            end += channel.write(record, end);
+        }
+        appended++;
+        notifyAll();
+        return appended;
+    }
+
+    /**
+     * Добавляет данные операции прямой записи; при контрольных точках
+     * журнал обрезается до конца этих данных.
+     */
+    public synchronized long appendData(byte type, ByteBuffer data) throws IOException {
+        long sequence = append(type, data);
+        dataEnd = end;
+        return sequence;
+    }
+
+    /**
+     * Ждет, пока запись с указанным номером не будет сброшена на диск.
+     */
+    public synchronized void awaitDurable(long sequence) throws IOException {
+        boolean interrupted = false;
+        while (synced < sequence && !closed) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (synced < sequence) {
+            throw new IOException("Журнал закрыт до сброса записи");
+        }
+    }
+
+    /**
+     * Сбрасывает все добавленные записи на диск в потоке вызова, не дожидаясь
+     * группового сброса (для операций прямой записи, которые все равно ждут).
+     */
+    public void sync() throws IOException {
+        long target;
+        synchronized (this) {
+            target = appended;
+        }
+        channel.force(false);
+        synchronized (this) {
+            synced = Math.max(synced, target);
+            notifyAll();
+        }
+    }
+
+    /**
+     * Контрольная точка переноса: файл данных уже сброшен на диск вызывающим,
+     * прогресс записывается в свободный слот заголовка, записи MOVE отрезаются.
+     *
+     * @param progress число перенесенных байт
+     */
+    public synchronized void checkpoint(long progress) throws IOException {
+        slotSequence++;
+        int index = (int) (slotSequence & 1);
+        ByteBuffer slot = ByteBuffer.allocate(20);
+        slot.putLong(slotSequence).putLong(progress);
+        slot.putInt(checksum((byte) index, slot.array(), 16));
+        slot.flip();
+        channel.write(slot, SLOTS_OFFSET + index * 20);
+        channel.force(false);
+        channel.truncate(dataEnd);
+        end = dataEnd;
+    }
+
+    /**
+     * Закрывает журнал и удаляет его файл: при штатном закрытии
+     * восстанавливать нечего.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        try {
+            syncer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        raf.close();
+        if (!file.delete()) {
+            logger.warn("Не удалось удалить журнал {}", file);
+        }
+    }
+
+    /**
+     * Групповой сброс: ждет новых записей, дает им накопиться не дольше
+     * {@link #COMMIT_INTERVAL} мс и сбрасывает все разом одним fsync.
+     */
+    private void syncLoop() {
+        long fsyncs = 0;
+        while (true) {
+            long target;
+            synchronized (this) {
+                while (appended == synced && !closed) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (closed) {
+                    break;
+                }
+                if (COMMIT_INTERVAL > 0) {
+                    try {
+                        wait(COMMIT_INTERVAL);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                target = appended;
+            }
+            try {
+                channel.force(false);
+                fsyncs++;
+            } catch (IOException e) {
+                logger.error("Ошибка сброса журнала {}", file, e);
+            }
+            synchronized (this) {
+                synced = Math.max(synced, target);
+                notifyAll();
+            }
+        }
+        logger.debug("Журнал {}: сбросов на диск {}", file, fsyncs);
+    }
+
+    private boolean readHeader() throws IOException {
+        if (channel.size() < HEADER_SIZE) {
+            return false;
+        }
+        ByteBuffer header = ByteBuffer.allocate(24);
+        readFully(header, 0);
+        if (header.getLong(0) != MAGIC) {
+            return false;
+        }
+        baseLength = header.getLong(8);
+        baseModified = header.getLong(16);
+        return true;
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Журнал короче ожидаемого: " + file);
+            }
+        }
+    }
+
+    private static int checksum(byte type, byte[] data, int length) {
+        return checksum(type, data, 0, length);
+    }
+
+    private static int checksum(byte type, byte[] data, int offset, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(type);
+        crc.update(data, offset, length);
+        return (int) crc.getValue();
+    }
+}
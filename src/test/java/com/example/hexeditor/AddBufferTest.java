@@ -0,0 +1,44 @@
+package com.example.hexeditor;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * Буфер добавленных данных с бюджетом в один блок: старые блоки вытесняются
+ * в файл, а чтение через стыки блоков в памяти и в файле возвращает
+ * записанные данные.
+ */
+public class AddBufferTest {
+    @Test
+    public void spilledChunksAreReadBack() throws IOException {
+        byte[] data = new byte[3 * AddBuffer.CHUNK_SIZE + 12345];
+        new Random(5).nextBytes(data);
+        AddBuffer buffer = new AddBuffer(AddBuffer.CHUNK_SIZE);
+        try {
+            assertEquals(0, buffer.append(data, 0, 100));
+            assertEquals(100, buffer.append(data, 100, 2 * AddBuffer.CHUNK_SIZE));
+            long start = buffer.append(data, 100 + 2 * AddBuffer.CHUNK_SIZE, data.length - 100 - 2 * AddBuffer.CHUNK_SIZE);
+            assertEquals(100 + 2 * AddBuffer.CHUNK_SIZE, start);
+            assertEquals(data.length, buffer.length());
+            assertEquals(AddBuffer.CHUNK_SIZE, buffer.getMemoryUsed());
+
+            byte[] all = new byte[data.length];
+            buffer.read(0, all, 0, all.length);
+            assertArrayEquals(data, all);
+
+            // стык вытесненных блоков и стык файла с памятью
+            for (long position : new long[]{AddBuffer.CHUNK_SIZE - 7, 3L * AddBuffer.CHUNK_SIZE - 7}) {
+                byte[] part = new byte[20];
+                buffer.read(position, part, 0, part.length);
+                assertArrayEquals(Arrays.copyOfRange(data, (int) position, (int) position + part.length), part);
+            }
+        } finally {
+            buffer.close();
+        }
+    }
+}
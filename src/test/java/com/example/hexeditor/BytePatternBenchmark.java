@@ -0,0 +1,130 @@
+package com.example.hexeditor;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Скорость {@link BytePattern} на случайных данных: поиск всех совпадений
+ * вперед и назад. Время на операцию — просмотр {@link #SIZE} байт.
+ * Для сравнения {@code naiveMaskedLoop} — прежний поиск
+ * ({@code SearchController.searchWithMask}): двойной цикл с маской на каждый
+ * байт и список Integer всех байт совпадений.
+ * Запуск: {@code mvn -P jmh test-compile exec:exec -Djmh.args="BytePatternBenchmark"}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BytePatternBenchmark {
+    private static final int SIZE = 16 * 1024 * 1024;
+
+    /**
+     * Шаблон и маска через "/"; "??" в шаблоне — любой байт.
+     * Выбираются BYTE_SCAN, HORSPOOL, BYTE_SCAN по опорному байту (пропуски ограничивают
+     * сдвиги Хорспула), BYTE_SCAN по опорному байту и MASKED_HORSPOOL (нет байт с полной маской).
+     */
+    @Param({
+            "4D 5A",
+            "50 45 00 00 4C 01 03 00",
+            "50 45 ?? ?? 4C 01 ?? 00 0B 01",
+            "?? ?? ?? ?? ?? 45 ?? ??",
+            "41 42 43/DF DF DF"
+    })
+    public String pattern;
+
+    private byte[] data;
+    private byte[] bytes;
+    private byte[] mask;
+    private BytePattern compiled;
+
+    @Setup
+    public void setUp() {
+        data = new byte[SIZE];
+        new Random(1).nextBytes(data);
+        String[] parts = pattern.split("/");
+        String[] hex = parts[0].trim().split("\\s+");
+        bytes = new byte[hex.length];
+        mask = new byte[hex.length];
+        for (int i = 0; i < hex.length; i++) {
+            if (hex[i].equals("??")) {
+                mask[i] = 0;
+            } else {
+                bytes[i] = (byte) Integer.parseInt(hex[i], 16);
+                mask[i] = (byte) 0xFF;
+            }
+        }
+        if (parts.length > 1) {
+            String[] maskHex = parts[1].trim().split("\\s+");
+            for (int i = 0; i < maskHex.length; i++) {
+                mask[i] = (byte) Integer.parseInt(maskHex[i], 16);
+            }
+        }
+        compiled = new BytePattern(bytes, mask);
+    }
+
+    /**
+     * Как в {@link SearchController}: представление буфера создается один раз на блок.
+     */
+    @Benchmark
+    public int indexOfAll() {
+        ByteBuffer words = BytePattern.words(data);
+        int count = 0;
+        for (int i = compiled.indexOf(words, 0, SIZE); i >= 0; i = compiled.indexOf(words, i + 1, SIZE)) {
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Прежняя реализация без изменений, кроме источника данных (был {@code readAll()}).
+     */
+    @Benchmark
+    public List<Integer> naiveMaskedLoop() {
+        List<Integer> result = new ArrayList<>();
+        int dataLen = data.length;
+        int patternLen = bytes.length;
+        for (int i = 0; i <= dataLen - patternLen; i++) {
+            boolean match = true;
+            for (int j = 0; j < patternLen; j++) {
+                byte dataByte = data[i + j];
+                byte patternByte = bytes[j];
+                byte maskByte = (mask != null && mask.length == patternLen) ? mask[j] : (byte) 0xFF;
+                if ((dataByte & maskByte) != (patternByte & maskByte)) {
+                    match = false;
+                    break;
+                }
+            }
+            if (match) {
+                for (int j = 0; j < patternLen; j++) {
+                    result.add(i + j);
+                }
+            }
+        }
+        return result;
+    }
+
+    @Benchmark
+    public int lastIndexOfAll() {
+        int count = 0;
+        for (int i = compiled.lastIndexOf(data, 0, SIZE); i >= 0; i = compiled.lastIndexOf(data, 0, i + compiled.length() - 1)) {
+            count++;
+        }
+        return count;
+    }
+}
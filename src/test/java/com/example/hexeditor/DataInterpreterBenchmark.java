@@ -0,0 +1,109 @@
+package com.example.hexeditor;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Стоимость декодирования значения под курсором: примитивные чтения
+ * {@link DataInterpreter} из массива и из {@link ByteBuffer} и полный проход
+ * инспектора по {@link DataInterpreter#DECODERS}. Смещение меняется от вызова
+ * к вызову, чтобы значение не сворачивалось в константу.
+ * Отсутствие выделения памяти в примитивных чтениях проверяется профилировщиком:
+ * {@code mvn -P jmh test-compile exec:exec -Djmh.args="DataInterpreterBenchmark -prof gc"}
+ * (gc.alloc.rate.norm около 0 Б/оп).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DataInterpreterBenchmark {
+    private static final int SIZE = 64 * 1024;
+    private static final int MASK = SIZE - 1;
+
+    @Param({"LITTLE_ENDIAN", "BIG_ENDIAN"})
+    public String byteOrder;
+
+    private byte[] data;
+    private ByteBuffer buffer;
+    private ByteOrder order;
+    private int offset;
+
+    @Setup
+    public void setUp() {
+        data = new byte[SIZE + Long.BYTES];
+        new Random(1).nextBytes(data);
+        buffer = ByteBuffer.wrap(data);
+        order = byteOrder.equals("BIG_ENDIAN") ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN;
+    }
+
+    private int next() {
+        offset = (offset + 7) & MASK;
+        return offset;
+    }
+
+    /**
+     * Все числовые строки строки состояния: 16/32/64 бита со знаком и без, float и double.
+     */
+    @Benchmark
+    public void numbers(Blackhole sink) {
+        int o = next();
+        sink.consume(DataInterpreter.getInt16(data, o, true, order));
+        sink.consume(DataInterpreter.getInt16(data, o, false, order));
+        sink.consume(DataInterpreter.getInt32(data, o, true, order));
+        sink.consume(DataInterpreter.getInt32(data, o, false, order));
+        sink.consume(DataInterpreter.getInt64(data, o, order));
+        sink.consume(DataInterpreter.getFloat(data, o, order));
+        sink.consume(DataInterpreter.getDouble(data, o, order));
+    }
+
+    @Benchmark
+    public long int64() {
+        return DataInterpreter.getInt64(data, next(), order);
+    }
+
+    @Benchmark
+    public double float64() {
+        return DataInterpreter.getDouble(data, next(), order);
+    }
+
+    /**
+     * Чтение из ByteBuffer (всегда little-endian, порядок буфера не учитывается).
+     */
+    @Benchmark
+    public void numbersFromBuffer(Blackhole sink) {
+        int o = next();
+        sink.consume(DataInterpreter.getInt16(buffer, o, true));
+        sink.consume(DataInterpreter.getInt32(buffer, o, false));
+        sink.consume(DataInterpreter.getInt64(buffer, o));
+        sink.consume(DataInterpreter.getFloat(buffer, o));
+        sink.consume(DataInterpreter.getDouble(buffer, o));
+    }
+
+    /**
+     * Обновление инспектора значений: все декодеры с переводом в текст
+     * (строки здесь выделяются неизбежно).
+     */
+    @Benchmark
+    public void inspector(Blackhole sink) {
+        int o = next();
+        for (DataInterpreter.Decoder decoder : DataInterpreter.DECODERS) {
+            sink.consume(decoder.decode(data, o, DataInterpreter.MAX_DECODER_SIZE, order));
+        }
+    }
+}
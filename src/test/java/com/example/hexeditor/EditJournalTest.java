@@ -0,0 +1,118 @@
+package com.example.hexeditor;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Файл журнала отмены: место записей, выпавших из истории, возвращается,
+ * а данные живых записей после сжатия не меняются.
+ */
+public class EditJournalTest {
+    private static final int BUDGET = 1024;
+    private static final int PAYLOAD = 1000;
+    private static final int MAX_ENTRIES = 4;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final EditJournal journal = new EditJournal(BUDGET, MAX_ENTRIES);
+
+    @After
+    public void tearDown() throws IOException {
+        journal.close();
+    }
+
+    @Test
+    public void spillStaysBoundedWhenEntriesFallOffTheLimit() throws IOException {
+        for (int i = 0; i < 200; i++) {
+            journal.record(entry(i));
+        }
+        long live = 2L * PAYLOAD * MAX_ENTRIES;
+        assertTrue("Файл журнала " + journal.getSpillSize(), journal.getSpillSize() <= live + Math.max(live, BUDGET));
+        assertHistory(196, 200);
+    }
+
+    @Test
+    public void clearedRedoIsReclaimed() throws IOException {
+        for (int i = 0; i < MAX_ENTRIES; i++) {
+            journal.record(entry(i));
+        }
+        long full = journal.getSpillSize();
+        assertTrue(full > 0);
+        for (int i = 0; i < MAX_ENTRIES; i++) {
+            assertNotNull(journal.undo());
+        }
+        journal.record(EditJournal.data(0, EditJournal.bytes(new byte[1], 1), EditJournal.bytes(new byte[1], 1)));
+        assertEquals(0, journal.getSpillSize());
+        assertTrue(!journal.canRedo());
+    }
+
+    @Test
+    public void directCopyIsReclaimedAndReadBack() throws IOException {
+        byte[] original = new byte[3 * BUDGET];
+        for (int i = 0; i < original.length; i++) {
+            original[i] = (byte) (i * 31);
+        }
+        File file = folder.newFile("data.bin");
+        Files.write(file.toPath(), original);
+        try (FileBackend backend = new CachedFileBackend(file, 4L * PageCache.DEFAULT_PAGE_SIZE)) {
+            EditJournal.Payload copy = journal.copyOf(backend, 0, original.length);
+            journal.record(EditJournal.data(0, copy, EditJournal.zeros(0)));
+            assertEquals(original.length, journal.getSpillSize());
+            assertArrayEquals(original, read(copy));
+
+            EditJournal.Payload dropped = journal.copyOf(backend, 0, original.length);
+            journal.discard(dropped);
+            assertEquals(original.length, journal.getSpillSize());
+            assertArrayEquals(original, read(copy));
+        }
+        for (int i = 0; i < MAX_ENTRIES; i++) {
+            journal.record(entry(i));
+        }
+        assertHistory(0, MAX_ENTRIES);
+    }
+
+    /**
+     * Проверяет, что в истории отмены записи с from по to (не включая) с исходными данными.
+     */
+    private void assertHistory(int from, int to) throws IOException {
+        EditJournal.Entry[] entries = new EditJournal.Entry[to - from];
+        for (int i = to - 1; i >= from; i--) {
+            entries[i - from] = journal.undo();
+            assertNotNull(entries[i - from]);
+        }
+        assertTrue(!journal.canUndo());
+        for (int i = from; i < to; i++) {
+            assertArrayEquals(fill(i, 0), read(entries[i - from].removed));
+            assertArrayEquals(fill(i, 1), read(entries[i - from].inserted));
+        }
+    }
+
+    private static EditJournal.Entry entry(int i) {
+        return EditJournal.data(i, EditJournal.bytes(fill(i, 0), PAYLOAD), EditJournal.bytes(fill(i, 1), PAYLOAD));
+    }
+
+    private static byte[] fill(int i, int side) {
+        byte[] data = new byte[PAYLOAD];
+        Arrays.fill(data, (byte) (2 * i + side));
+        return data;
+    }
+
+    private byte[] read(EditJournal.Payload payload) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        journal.copy(payload, (offset, data, length) -> out.write(data, 0, length));
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,165 @@
+package com.example.hexeditor;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Индекс 4-грамм на случайных данных, множества которых не помещаются в бюджет
+ * памяти: кандидаты сужают поиск и по блокам, вытесненным в файл индекса.
+ */
+public class GramIndexTest {
+    /** 256 блоков; на случайных данных множества занимают около 2 МиБ */
+    private static final int SIZE = 256 * GramIndex.BLOCK_SIZE;
+    /** Около десятка карт блоков: большая часть индекса только в файле */
+    private static final long BUDGET = 80 * 1024;
+    private static final byte[] PATTERN = "needle-in-a-heap".getBytes(StandardCharsets.US_ASCII);
+    /** В начале (в памяти), на стыке блоков и в вытесненных блоках */
+    private static final long[] PLANTED = {
+            100, 3L * GramIndex.BLOCK_SIZE - 5, 100L * GramIndex.BLOCK_SIZE + 7,
+            200L * GramIndex.BLOCK_SIZE - 1, SIZE - PATTERN.length};
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private byte[] data;
+    private File file;
+    private HexFileModel model;
+
+    @Before
+    public void setUp() throws IOException {
+        data = new byte[SIZE];
+        new Random(11).nextBytes(data);
+        for (long position : PLANTED) {
+            System.arraycopy(PATTERN, 0, data, (int) position, PATTERN.length);
+        }
+        file = folder.newFile("random.bin");
+        Files.write(file.toPath(), data);
+        model = new HexFileModel(file, FileBackend.Kind.CACHED, PageCache.DEFAULT_BUDGET, false);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        model.close();
+    }
+
+    @Test
+    public void candidatesNarrowSearchBeyondMemoryBudget() throws IOException {
+        GramIndex index = GramIndex.build(model.fileSnapshot(), file, BUDGET, progress());
+        assertTrue(index.getMemoryUsed() <= BUDGET);
+        assertEquals(index.getBlockCount(), index.getCoveredBlocks());
+
+        long[] ranges = index.candidates(model.snapshot(), new BytePattern(PATTERN, null));
+        assertNotNull(ranges);
+        assertPlantedCovered(ranges);
+        // блок с совпадением и, возможно, блок с его продолжением
+        assertTrue("Кандидатов " + total(ranges), total(ranges) <= 2L * PLANTED.length * GramIndex.BLOCK_SIZE);
+
+        // одна 4-грамма: на случайных данных она есть примерно в 40% блоков
+        byte[] gram = {PATTERN[0], PATTERN[1], PATTERN[2], PATTERN[3]};
+        long[] short4 = index.candidates(model.snapshot(), new BytePattern(gram, null));
+        assertNotNull(short4);
+        assertTrue("Кандидатов " + total(short4), total(short4) < SIZE / 2);
+
+        assertTrue(model.setIndex(index));
+        assertEquals(naiveCount(), new SearchController(model, null, 1).search(new BytePattern(PATTERN, null),
+                (offset, length) -> { }));
+    }
+
+    @Test
+    public void loadedIndexReadsSpilledBlocksFromSidecar() throws IOException {
+        BytePattern pattern = new BytePattern(PATTERN, null);
+        long[] built = GramIndex.build(model.fileSnapshot(), file, BUDGET, progress())
+                .candidates(model.snapshot(), pattern);
+        GramIndex loaded = GramIndex.load(file, model.fileSnapshot(), BUDGET);
+        assertNotNull(loaded);
+        assertTrue(loaded.getMemoryUsed() <= BUDGET);
+        assertArrayEquals(built, loaded.candidates(model.snapshot(), pattern));
+    }
+
+    @Test
+    public void sidecarReplacedByAnotherBuildMakesSpilledBlocksUnknown() throws IOException {
+        GramIndex stale = GramIndex.build(model.fileSnapshot(), file, BUDGET, progress());
+        GramIndex.build(model.fileSnapshot(), file, BUDGET, progress());
+        // записи чужого файла индекса не читаются: вытесненные блоки — кандидаты
+        assertNull(stale.candidates(model.snapshot(), new BytePattern(PATTERN, null)));
+    }
+
+    @Test
+    public void directWriteMarksSidecarStaleButKeepsSpilledBlocks() throws IOException {
+        GramIndex index = GramIndex.build(model.fileSnapshot(), file, BUDGET, progress());
+        assertTrue(model.setIndex(index));
+        model.setEditMode(HexFileModel.EditMode.WRITE_THROUGH);
+        long position = 150L * GramIndex.BLOCK_SIZE + 3;
+        model.insertBytes(position, PATTERN, true);
+
+        long[] ranges = index.candidates(model.snapshot(), new BytePattern(PATTERN, null));
+        assertNotNull(ranges);
+        assertTrue(contains(ranges, position));
+        assertPlantedCovered(ranges);
+        assertNull(GramIndex.load(file, model.fileSnapshot(), BUDGET));
+    }
+
+    private void assertPlantedCovered(long[] ranges) {
+        for (long position : PLANTED) {
+            assertTrue("Позиция " + position, contains(ranges, position));
+        }
+    }
+
+    private static boolean contains(long[] ranges, long position) {
+        for (int i = 0; i < ranges.length; i += 2) {
+            if (ranges[i] <= position && position < ranges[i + 1]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static long total(long[] ranges) {
+        long total = 0;
+        for (int i = 0; i < ranges.length; i += 2) {
+            total += ranges[i + 1] - ranges[i];
+        }
+        return total;
+    }
+
+    private long naiveCount() {
+        long found = 0;
+        for (int i = 0; i + PATTERN.length <= data.length; i++) {
+            int k = 0;
+            while (k < PATTERN.length && data[i + k] == PATTERN[k]) {
+                k++;
+            }
+            if (k == PATTERN.length) {
+                found++;
+            }
+        }
+        return found;
+    }
+
+    private static FileSaver.Progress progress() {
+        return new FileSaver.Progress() {
+            @Override
+            public void update(long written, long total) {
+            }
+
+            @Override
+            public boolean isCancelled() {
+                return false;
+            }
+        };
+    }
+}
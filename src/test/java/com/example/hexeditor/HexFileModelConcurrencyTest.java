@@ -0,0 +1,257 @@
+package com.example.hexeditor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+/**
+ * Нагрузочная проверка параллельного чтения во время правок.
+ * Файл состоит из блоков по {@link #BLOCK} одинаковых байт, и каждая правка
+ * заменяет, вставляет, удаляет или обнуляет целый блок. Поэтому любое чтение,
+ * видящее одну версию содержимого, возвращает только однородные блоки, а чтение,
+ * захватившее половину правки, — блок из разных байт.
+ * Бэкенды открываются с маленькими окнами и кэшем, чтобы чтения постоянно
+ * пересекали границы окон и страниц и вытесняли их.
+ */
+@RunWith(Parameterized.class)
+public class HexFileModelConcurrencyTest {
+    /** Размер блока; не кратен странице и окну, чтобы блоки их пересекали */
+    private static final int BLOCK = 5000;
+    private static final int INITIAL_BLOCKS = 96;
+    private static final int MIN_BLOCKS = 48;
+    private static final int MAX_BLOCKS = 160;
+    private static final int EDITS = 1000;
+    private static final int BLOCK_READERS = 4;
+    private static final int MAX_READ_BLOCKS = 8;
+    /** Правки продолжаются, пока снимок не прочитан столько раз */
+    private static final int MIN_SNAPSHOT_READS = 50;
+
+    @Parameterized.Parameters(name = "{0}, {1}")
+    public static Collection<Object[]> parameters() {
+        List<Object[]> result = new ArrayList<>();
+        for (FileBackend.Kind kind : FileBackend.Kind.values()) {
+            for (HexFileModel.EditMode mode : HexFileModel.EditMode.values()) {
+                result.add(new Object[]{kind, mode});
+            }
+        }
+        return result;
+    }
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final FileBackend.Kind kind;
+    private final HexFileModel.EditMode mode;
+
+    private final AtomicBoolean done = new AtomicBoolean();
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+    private final AtomicLong blockReads = new AtomicLong();
+    private final AtomicLong snapshotReads = new AtomicLong();
+
+    public HexFileModelConcurrencyTest(FileBackend.Kind kind, HexFileModel.EditMode mode) {
+        this.kind = kind;
+        this.mode = mode;
+    }
+
+    @Test
+    public void readersSeeOnlyWholeEdits() throws Exception {
+        File file = folder.newFile("blocks.bin");
+        List<Integer> expected = new ArrayList<>();
+        byte[] initial = new byte[INITIAL_BLOCKS * BLOCK];
+        for (int b = 0; b < INITIAL_BLOCKS; b++) {
+            expected.add(b % 255 + 1);
+            Arrays.fill(initial, b * BLOCK, (b + 1) * BLOCK, (byte) (b % 255 + 1));
+        }
+        Files.write(file.toPath(), initial);
+
+        FileBackend backend = kind == FileBackend.Kind.CACHED
+                ? new CachedFileBackend(file, 4L * PageCache.DEFAULT_PAGE_SIZE)
+                : new MappedFileBackend(file, 64 * 1024, 3);
+        HexFileModel model = new HexFileModel(file, backend, false);
+        model.setEditMode(mode);
+
+        ExecutorService readers = Executors.newFixedThreadPool(BLOCK_READERS + 1);
+        try {
+            for (int i = 0; i < BLOCK_READERS; i++) {
+                long seed = i;
+                readers.execute(() -> guard(() -> readBlocks(model, new Random(seed))));
+            }
+            readers.execute(() -> guard(() -> readSnapshots(model)));
+
+            Random random = new Random(42);
+            for (int i = 0; (i < EDITS || snapshotReads.get() < MIN_SNAPSHOT_READS) && failure.get() == null; i++) {
+                long seen = blockReads.get();
+                edit(model, expected, random);
+                // правки таблицы фрагментов быстрее чтений: между правками должно пройти хотя бы одно чтение
+                while (blockReads.get() == seen && failure.get() == null) {
+                    Thread.yield();
+                }
+            }
+        } finally {
+            done.set(true);
+            readers.shutdown();
+            assertTrue("Читатели не завершились", readers.awaitTermination(1, TimeUnit.MINUTES));
+        }
+        if (failure.get() != null) {
+            throw new AssertionError("Ошибка в потоке чтения", failure.get());
+        }
+        assertTrue("Блочных чтений не было", blockReads.get() > 0);
+        assertTrue("Чтений снимков не было", snapshotReads.get() > 0);
+
+        assertContent(model, expected);
+        model.close();
+
+        // прямая запись меняет сам файл, таблица фрагментов — нет
+        HexFileModel reopened = new HexFileModel(file, kind, PageCache.DEFAULT_BUDGET, false);
+        try {
+            if (mode == HexFileModel.EditMode.WRITE_THROUGH) {
+                assertContent(reopened, expected);
+            } else {
+                assertTrue("Исходный файл изменен", Arrays.equals(initial, reopened.readAll()));
+            }
+        } finally {
+            reopened.close();
+        }
+    }
+
+    /**
+     * Одна правка целым блоком; длина содержимого держится между
+     * {@link #MIN_BLOCKS} и {@link #MAX_BLOCKS} блоками.
+     */
+    private static void edit(HexFileModel model, List<Integer> expected, Random random) throws IOException {
+        int value = 1 + random.nextInt(255);
+        byte[] block = new byte[BLOCK];
+        Arrays.fill(block, (byte) value);
+        int blocks = expected.size();
+        int op = random.nextInt(4);
+        if (op == 1 && blocks >= MAX_BLOCKS || op == 2 && blocks <= MIN_BLOCKS) {
+            op = 0;
+        }
+        switch (op) {
+            case 0: {
+                int b = random.nextInt(blocks);
+                model.insertBytes((long) b * BLOCK, block, true);
+                expected.set(b, value);
+                break;
+            }
+            case 1: {
+                int b = random.nextInt(blocks + 1);
+                model.insertBytes((long) b * BLOCK, block, false);
+                expected.add(b, value);
+                break;
+            }
+            case 2: {
+                int b = random.nextInt(blocks);
+                model.deleteBytes((long) b * BLOCK, BLOCK, true);
+                expected.remove(b);
+                break;
+            }
+            default: {
+                int b = random.nextInt(blocks);
+                model.deleteBytes((long) b * BLOCK, BLOCK, false);
+                expected.set(b, 0);
+                break;
+            }
+        }
+    }
+
+    /**
+     * Читает случайные диапазоны из нескольких блоков текущего содержимого.
+     */
+    private void readBlocks(HexFileModel model, Random random) throws IOException {
+        byte[] buffer = new byte[MAX_READ_BLOCKS * BLOCK];
+        while (!done.get()) {
+            long length = model.getLength();
+            assertEquals("Длина не кратна блоку", 0, length % BLOCK);
+            long first = random.nextInt((int) (length / BLOCK)) * (long) BLOCK;
+            int read = model.readBlock(first, buffer, 0, (1 + random.nextInt(MAX_READ_BLOCKS)) * BLOCK);
+            assertEquals("Прочитан неполный блок", 0, read % BLOCK);
+            assertUniform(buffer, read, first);
+            blockReads.incrementAndGet();
+        }
+    }
+
+    /**
+     * Читает снимок целиком дважды: снимок не должен меняться. После прямой
+     * записи чтение снимка вправе завершиться ошибкой, но не вернуть смесь версий.
+     */
+    private void readSnapshots(HexFileModel model) throws IOException {
+        while (!done.get()) {
+            HexFileModel.Snapshot snapshot = model.snapshot();
+            try {
+                byte[] first = readAll(snapshot);
+                byte[] second = readAll(snapshot);
+                assertTrue("Содержимое снимка изменилось", Arrays.equals(first, second));
+                assertUniform(first, first.length, 0);
+            } catch (IOException e) {
+                if (snapshot.getFileVersion() == model.fileSnapshot().getFileVersion()) {
+                    throw e;
+                }
+                continue;
+            }
+            snapshotReads.incrementAndGet();
+        }
+    }
+
+    private static byte[] readAll(HexFileModel.Snapshot snapshot) throws IOException {
+        byte[] data = new byte[(int) snapshot.getLength()];
+        for (int off = 0; off < data.length; off += MAX_READ_BLOCKS * BLOCK) {
+            int length = Math.min(MAX_READ_BLOCKS * BLOCK, data.length - off);
+            assertEquals("Снимок прочитан не полностью", length, snapshot.readBlock(off, data, off, length));
+        }
+        return data;
+    }
+
+    private static void assertUniform(byte[] data, int length, long position) {
+        for (int b = 0; b < length; b += BLOCK) {
+            for (int i = b + 1; i < b + BLOCK; i++) {
+                if (data[i] != data[b]) {
+                    fail("Блок с позиции " + (position + b) + " неоднороден: байт " + (i - b)
+                            + " = " + data[i] + ", ожидался " + data[b]);
+                }
+            }
+        }
+    }
+
+    private static void assertContent(HexFileModel model, List<Integer> expected) throws IOException {
+        assertEquals("Длина содержимого", (long) expected.size() * BLOCK, model.getLength());
+        byte[] block = new byte[BLOCK];
+        for (int b = 0; b < expected.size(); b++) {
+            assertEquals(BLOCK, model.readBlock((long) b * BLOCK, block, 0, BLOCK));
+            assertUniform(block, BLOCK, (long) b * BLOCK);
+            assertEquals("Блок " + b, expected.get(b).intValue(), block[0] & 0xFF);
+        }
+    }
+
+    private interface Body {
+        void run() throws Exception;
+    }
+
+    private void guard(Body body) {
+        try {
+            body.run();
+        } catch (Throwable t) {
+            failure.compareAndSet(null, t);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.example.hexeditor;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import javax.swing.JTable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Стоимость перерисовки HEX-таблицы: опрос всех видимых ячеек так, как это
+ * делает рендерер (значение и подсветка), то же после прокрутки на новое окно
+ * (одно блочное чтение) и отрисовка настоящей {@link JTable} в изображение.
+ * Чтение синхронное, поэтому в прокрутку входит и чтение окна из файла.
+ * Выделение памяти на перерисовку проверяется так:
+ * {@code mvn -P jmh test-compile exec:exec -Djmh.args="HexTableModelBenchmark -prof gc"}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class HexTableModelBenchmark {
+    private static final int FILE_SIZE = 64 * 1024 * 1024;
+    private static final int BYTES_PER_ROW = 16;
+    private static final int VISIBLE_ROWS = 48;
+
+    private File file;
+    private HexFileModel fileModel;
+    private HexTableModel model;
+    private JTable table;
+    private BufferedImage image;
+    private Graphics2D graphics;
+    private long row;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        file = File.createTempFile("repaint-bench", ".bin");
+        byte[] data = new byte[FILE_SIZE];
+        new Random(1).nextBytes(data);
+        Files.write(file.toPath(), data);
+        fileModel = new HexFileModel(file, FileBackend.Kind.CACHED, PageCache.DEFAULT_BUDGET, false);
+        model = new HexTableModel(fileModel, BYTES_PER_ROW);
+        model.setVisibleRows(VISIBLE_ROWS);
+        // совпадения поиска через строку, чтобы подсветка не была пустой
+        for (long offset = 0; offset < FILE_SIZE; offset += 2 * BYTES_PER_ROW) {
+            model.addSearchHit(offset, 4);
+        }
+        table = new JTable(model);
+        table.setSize(BYTES_PER_ROW * 30, VISIBLE_ROWS * table.getRowHeight());
+        image = new BufferedImage(table.getWidth(), table.getHeight(), BufferedImage.TYPE_INT_RGB);
+        graphics = image.createGraphics();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        graphics.dispose();
+        fileModel.close();
+        Files.delete(file.toPath());
+    }
+
+    /**
+     * Перерисовка без прокрутки: окно уже загружено.
+     */
+    @Benchmark
+    public void repaintCells(Blackhole sink) {
+        cells(sink);
+    }
+
+    /**
+     * Прокрутка на страницу вперед и перерисовка.
+     */
+    @Benchmark
+    public void scrollAndRepaint(Blackhole sink) {
+        row = (row + VISIBLE_ROWS) % (model.getMaxFirstRow() + 1);
+        model.setFirstRow(row);
+        cells(sink);
+    }
+
+    /**
+     * Полная отрисовка таблицы стандартным рендерером.
+     */
+    @Benchmark
+    public BufferedImage paintTable() {
+        table.paint(graphics);
+        return image;
+    }
+
+    private void cells(Blackhole sink) {
+        int rows = model.getRowCount();
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < BYTES_PER_ROW; c++) {
+                sink.consume(model.getValueAt(r, c));
+                sink.consume(model.isHighlighted(r, c));
+            }
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.hexeditor;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Подсветка результатов поиска снимается, когда содержимое изменилось
+ * после снимка, по которому они найдены.
+ */
+public class HexTableModelTest {
+    private static final int BYTES_PER_ROW = 16;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private HexFileModel model;
+    private HexTableModel table;
+
+    @Before
+    public void setUp() throws IOException {
+        File file = folder.newFile("data.bin");
+        Files.write(file.toPath(), new byte[64 * BYTES_PER_ROW]);
+        model = new HexFileModel(file, FileBackend.Kind.CACHED, PageCache.DEFAULT_BUDGET, false);
+        table = new HexTableModel(model, BYTES_PER_ROW);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        model.close();
+    }
+
+    @Test
+    public void hitsOfCurrentVersionAreHighlighted() {
+        table.getSearchHits().setContentVersion(model.snapshot().getVersion());
+        table.addSearchHit(BYTES_PER_ROW + 2, 3);
+        assertTrue(table.isHighlighted(1, 2));
+        assertTrue(table.isHighlighted(1, 4));
+        assertFalse(table.isHighlighted(1, 5));
+    }
+
+    @Test
+    public void hitsAreNotHighlightedAfterShiftingEdit() throws IOException {
+        table.getSearchHits().setContentVersion(model.snapshot().getVersion());
+        table.addSearchHit(BYTES_PER_ROW + 2, 3);
+        model.insertBytes(0, new byte[]{1}, false);
+        assertFalse(table.isHighlighted(1, 2));
+        assertFalse(table.isHighlighted(1, 3));
+    }
+
+    @Test
+    public void hitsOfOlderSnapshotAreNotHighlighted() throws IOException {
+        HexFileModel.Snapshot snapshot = model.snapshot();
+        model.insertBytes(0, new byte[]{1}, true);
+        table.getSearchHits().setContentVersion(snapshot.getVersion());
+        table.addSearchHit(0, 1);
+        assertFalse(table.isHighlighted(0, 0));
+    }
+}
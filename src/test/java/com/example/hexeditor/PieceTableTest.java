@@ -0,0 +1,214 @@
+package com.example.hexeditor;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * Таблица фрагментов сверяется с простым массивом байт на случайных
+ * вставках, удалениях, заменах и копированиях; позиции чаще всего берутся
+ * на границах фрагментов. Старые таблицы после правок остаются прежними.
+ */
+public class PieceTableTest {
+    private static final int ORIGINAL_SIZE = 4096;
+
+    private final Random random = new Random(3);
+    private final byte[] original = new byte[ORIGINAL_SIZE];
+    private final ByteArrayOutputStream added = new ByteArrayOutputStream();
+
+    public PieceTableTest() {
+        random.nextBytes(original);
+    }
+
+    @Test
+    public void randomEditsMatchByteArray() throws IOException {
+        PieceTable table = PieceTable.ofOriginal(original.length);
+        byte[] expected = original.clone();
+        List<PieceTable> snapshots = new ArrayList<>();
+        List<byte[]> snapshotContents = new ArrayList<>();
+        for (int step = 0; step < 3000; step++) {
+            long position = position(table);
+            int length = random.nextInt(random.nextBoolean() ? 8 : 300);
+            switch (random.nextInt(5)) {
+                case 0: {
+                    byte[] bytes = append(length);
+                    table = table.insert(position, PieceTable.Source.ADDED, added.size() - length, length);
+                    expected = insert(expected, (int) position, bytes);
+                    break;
+                }
+                case 1:
+                    table = table.insert(position, PieceTable.Source.ZEROS, 0, length);
+                    expected = insert(expected, (int) position, new byte[length]);
+                    break;
+                case 2:
+                    table = table.delete(position, length);
+                    expected = delete(expected, (int) position, length);
+                    break;
+                case 3: {
+                    byte[] bytes = append(length);
+                    table = table.delete(position, length)
+                            .insert(position, PieceTable.Source.ADDED, added.size() - length, length);
+                    expected = insert(delete(expected, (int) position, length), (int) position, bytes);
+                    break;
+                }
+                default: {
+                    PieceTable slice = table.slice(position, length);
+                    byte[] copied = Arrays.copyOfRange(expected, (int) position,
+                            (int) Math.min(expected.length, position + length));
+                    assertArrayEquals(copied, content(slice));
+                    long target = position(table);
+                    table = table.insert(target, slice);
+                    expected = insert(expected, (int) target, copied);
+                    break;
+                }
+            }
+            assertEquals(expected.length, table.length());
+            if (step % 50 == 0) {
+                assertArrayEquals("Шаг " + step, expected, content(table));
+                snapshots.add(table);
+                snapshotContents.add(expected);
+            }
+        }
+        assertArrayEquals(expected, content(table));
+        for (int i = 0; i < snapshots.size(); i++) {
+            assertArrayEquals("Снимок " + i, snapshotContents.get(i), content(snapshots.get(i)));
+        }
+    }
+
+    @Test
+    public void sequentialInsertsMergeIntoOnePiece() throws IOException {
+        PieceTable table = PieceTable.ofOriginal(original.length);
+        long position = 1000;
+        append(1);
+        table = table.insert(position, PieceTable.Source.ADDED, added.size() - 1, 1);
+        for (int i = 1; i < 100; i++) {
+            append(1);
+            table = table.insert(position + i, PieceTable.Source.ADDED, added.size() - 1, 1);
+        }
+        // исходный файл, разрезанный вставкой, и один фрагмент ввода
+        assertEquals(3, table.pieceCount());
+
+        table = table.insert(0, PieceTable.Source.ZEROS, 0, 10).insert(10, PieceTable.Source.ZEROS, 0, 5);
+        assertEquals(4, table.pieceCount());
+
+        // несмежный участок буфера не сливается
+        append(2);
+        table = table.insert(15 + position + 100, PieceTable.Source.ADDED, added.size() - 1, 1);
+        assertEquals(5, table.pieceCount());
+    }
+
+    @Test
+    public void visitClipsPiecesAndStopsEarly() throws IOException {
+        byte[] bytes = append(100);
+        PieceTable table = PieceTable.ofOriginal(original.length)
+                .insert(1000, PieceTable.Source.ADDED, 0, 100)
+                .insert(2000, PieceTable.Source.ZEROS, 0, 50);
+        assertEquals(5, table.pieceCount());
+
+        List<long[]> pieces = new ArrayList<>();
+        table.visit(990, 1010, (source, sourceOffset, length) -> {
+            pieces.add(new long[]{source.ordinal(), sourceOffset, length});
+            return true;
+        });
+        assertEquals(3, pieces.size());
+        assertArrayEquals(new long[]{PieceTable.Source.ORIGINAL.ordinal(), 990, 10}, pieces.get(0));
+        assertArrayEquals(new long[]{PieceTable.Source.ADDED.ordinal(), 0, 100}, pieces.get(1));
+        assertArrayEquals(new long[]{PieceTable.Source.ORIGINAL.ordinal(), 1000, 900}, pieces.get(2));
+        assertEquals(bytes[0], content(table)[1000]);
+
+        int[] calls = {0};
+        table.visit(0, table.length(), (source, sourceOffset, length) -> ++calls[0] < 2);
+        assertEquals(2, calls[0]);
+
+        calls[0] = 0;
+        table.visit(table.length(), 10, (source, sourceOffset, length) -> ++calls[0] > 0);
+        table.visit(0, 0, (source, sourceOffset, length) -> ++calls[0] > 0);
+        assertEquals(0, calls[0]);
+    }
+
+    @Test
+    public void emptyOperationsReturnSameTable() {
+        PieceTable table = PieceTable.ofOriginal(original.length);
+        assertSame(table, table.insert(10, PieceTable.Source.ADDED, 0, 0));
+        assertSame(table, table.delete(table.length(), 10));
+        assertSame(table, table.insert(10, PieceTable.empty()));
+        assertSame(PieceTable.empty(), PieceTable.ofOriginal(0));
+        assertEquals(0, table.slice(table.length(), 5).length());
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void insertPastEndFails() {
+        PieceTable.ofOriginal(10).insert(11, PieceTable.Source.ZEROS, 0, 1);
+    }
+
+    /**
+     * Позиция вставки или начала диапазона: в половине случаев — граница фрагмента.
+     */
+    private long position(PieceTable table) throws IOException {
+        if (random.nextBoolean() && table.pieceCount() > 0) {
+            List<Long> boundaries = new ArrayList<>();
+            long[] at = {0};
+            boundaries.add(0L);
+            table.visit(0, table.length(), (source, sourceOffset, length) -> {
+                at[0] += length;
+                boundaries.add(at[0]);
+                return true;
+            });
+            return boundaries.get(random.nextInt(boundaries.size()));
+        }
+        return (long) (random.nextDouble() * (table.length() + 1));
+    }
+
+    private byte[] append(int length) {
+        byte[] bytes = new byte[length];
+        random.nextBytes(bytes);
+        added.write(bytes, 0, length);
+        return bytes;
+    }
+
+    private byte[] content(PieceTable table) throws IOException {
+        byte[] addedBytes = added.toByteArray();
+        byte[] result = new byte[(int) table.length()];
+        int[] at = {0};
+        table.visit(0, table.length(), (source, sourceOffset, length) -> {
+            switch (source) {
+                case ORIGINAL:
+                    System.arraycopy(original, (int) sourceOffset, result, at[0], (int) length);
+                    break;
+                case ADDED:
+                    System.arraycopy(addedBytes, (int) sourceOffset, result, at[0], (int) length);
+                    break;
+                default:
+                    break;
+            }
+            at[0] += (int) length;
+            return true;
+        });
+        assertEquals(result.length, at[0]);
+        return result;
+    }
+
+    private static byte[] insert(byte[] data, int position, byte[] bytes) {
+        byte[] result = new byte[data.length + bytes.length];
+        System.arraycopy(data, 0, result, 0, position);
+        System.arraycopy(bytes, 0, result, position, bytes.length);
+        System.arraycopy(data, position, result, position + bytes.length, data.length - position);
+        return result;
+    }
+
+    private static byte[] delete(byte[] data, int position, int length) {
+        length = Math.min(length, data.length - position);
+        byte[] result = new byte[data.length - length];
+        System.arraycopy(data, 0, result, 0, position);
+        System.arraycopy(data, position + length, result, position, result.length - position);
+        return result;
+    }
+}
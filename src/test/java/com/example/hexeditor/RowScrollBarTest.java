@@ -0,0 +1,89 @@
+package com.example.hexeditor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+/**
+ * Стрелки и щелчки по дорожке в режиме масштабирования двигают окно на строку и на страницу.
+ */
+public class RowScrollBarTest {
+    private static final long TOTAL_ROWS = 1L << 40;
+    private static final int VISIBLE_ROWS = 30;
+
+    @Test
+    public void unitIncrementMovesOneRowWhenScaled() {
+        RowScrollBar bar = new RowScrollBar();
+        bar.setRows(TOTAL_ROWS, VISIBLE_ROWS, 1000);
+        List<Long> rows = follow(bar);
+        assertTrue(bar.isScaled());
+
+        bar.setValue(bar.getValue() + bar.getUnitIncrement(1));
+        assertEquals(1001, bar.getFirstRow());
+        bar.setValue(bar.getValue() + bar.getUnitIncrement(-1));
+        bar.setValue(bar.getValue() + bar.getUnitIncrement(-1));
+        assertEquals(999, bar.getFirstRow());
+        assertEquals(3, rows.size());
+    }
+
+    @Test
+    public void blockIncrementMovesOnePageWhenScaled() {
+        RowScrollBar bar = new RowScrollBar();
+        follow(bar);
+        bar.setRows(TOTAL_ROWS, VISIBLE_ROWS, 1000);
+
+        bar.setValue(bar.getValue() + bar.getBlockIncrement(1));
+        assertEquals(1000 + VISIBLE_ROWS - 1, bar.getFirstRow());
+        bar.setValue(bar.getValue() + bar.getBlockIncrement(-1));
+        assertEquals(1000, bar.getFirstRow());
+    }
+
+    @Test
+    public void incrementsStopAtTheEnds() {
+        RowScrollBar bar = new RowScrollBar();
+        follow(bar);
+        long last = TOTAL_ROWS - VISIBLE_ROWS;
+        bar.setRows(TOTAL_ROWS, VISIBLE_ROWS, last);
+        bar.setValue(bar.getValue() + bar.getUnitIncrement(1));
+        assertEquals(last, bar.getFirstRow());
+        bar.setRows(TOTAL_ROWS, VISIBLE_ROWS, 0);
+        bar.setValue(bar.getValue() + bar.getBlockIncrement(-1));
+        assertEquals(0, bar.getFirstRow());
+    }
+
+    @Test
+    public void unscaledIncrementsAreRows() {
+        RowScrollBar bar = new RowScrollBar();
+        bar.setRows(10_000, VISIBLE_ROWS, 1000);
+        bar.setValue(bar.getValue() + bar.getUnitIncrement(1));
+        assertEquals(1001, bar.getFirstRow());
+        bar.setValue(bar.getValue() + bar.getBlockIncrement(1));
+        assertEquals(1001 + VISIBLE_ROWS - 1, bar.getFirstRow());
+    }
+
+    /**
+     * Ведет себя как окно редактора: на каждое событие перечитывает первую
+     * строку и заново настраивает полосу.
+     */
+    private static List<Long> follow(RowScrollBar bar) {
+        List<Long> rows = new ArrayList<>();
+        boolean[] updating = {false};
+        bar.addAdjustmentListener(e -> {
+            if (updating[0]) {
+                return;
+            }
+            long row = bar.getFirstRow();
+            rows.add(row);
+            updating[0] = true;
+            try {
+                bar.setRows(TOTAL_ROWS, VISIBLE_ROWS, row);
+            } finally {
+                updating[0] = false;
+            }
+        });
+        return rows;
+    }
+}
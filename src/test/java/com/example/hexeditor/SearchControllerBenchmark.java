@@ -0,0 +1,80 @@
+package com.example.hexeditor;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Масштабирование поиска по числу потоков: полный просмотр файла из случайных
+ * байт на пуле из {@link #threads} потоков (1 — последовательный просмотр).
+ * Файл после первой итерации лежит в кэше ОС, поэтому измеряется просмотр, а не диск.
+ * Запуск: {@code mvn -P jmh test-compile exec:exec -Djmh.args="SearchControllerBenchmark"}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SearchControllerBenchmark {
+    @Param({"1", "2", "4", "8", "16"})
+    public int threads;
+
+    @Param({"256"})
+    public int sizeMiB;
+
+    private File file;
+    private HexFileModel model;
+    private ForkJoinPool pool;
+    private SearchController searcher;
+    private BytePattern pattern;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        file = File.createTempFile("search-bench", ".bin");
+        byte[] block = new byte[1024 * 1024];
+        Random random = new Random(1);
+        try (OutputStream out = Files.newOutputStream(file.toPath())) {
+            for (int i = 0; i < sizeMiB; i++) {
+                random.nextBytes(block);
+                out.write(block);
+            }
+        }
+        model = new HexFileModel(file, FileBackend.Kind.CACHED, PageCache.DEFAULT_BUDGET, false);
+        pool = new ForkJoinPool(threads);
+        searcher = new SearchController(model, pool, threads);
+        pattern = new BytePattern(new byte[]{0x50, 0x45, 0x00, 0x00, 0x4C, 0x01}, null);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        pool.shutdown();
+        model.close();
+        Files.delete(file.toPath());
+    }
+
+    @Benchmark
+    public long searchAll() throws IOException {
+        AtomicLong last = new AtomicLong();
+        searcher.search(pattern, (offset, length) -> last.set(offset));
+        return last.get();
+    }
+}
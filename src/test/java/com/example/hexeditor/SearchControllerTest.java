@@ -0,0 +1,243 @@
+package com.example.hexeditor;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Поиск блоками: совпадения на границах блоков, совпадение параллельного
+ * просмотра с последовательным и прекращение выдачи после отмены.
+ */
+public class SearchControllerTest {
+    /** Несколько блоков поиска и неполный последний */
+    private static final int SIZE = 5 * SearchController.CHUNK_SIZE + 12345;
+    private static final byte[] PATTERN = {0x13, 0x37, 0x42};
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private byte[] data;
+    private File file;
+    private HexFileModel model;
+    private ForkJoinPool pool;
+
+    @Before
+    public void setUp() throws IOException {
+        data = new byte[SIZE];
+        new Random(7).nextBytes(data);
+        // совпадения на стыках блоков и в самом конце
+        for (int chunk = 1; chunk <= 5; chunk++) {
+            System.arraycopy(PATTERN, 0, data, chunk * SearchController.CHUNK_SIZE - 1, PATTERN.length);
+        }
+        System.arraycopy(PATTERN, 0, data, SIZE - PATTERN.length, PATTERN.length);
+        file = folder.newFile("data.bin");
+        Files.write(file.toPath(), data);
+        model = new HexFileModel(file, FileBackend.Kind.CACHED, PageCache.DEFAULT_BUDGET, false);
+        pool = new ForkJoinPool(4);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        pool.shutdown();
+        model.close();
+    }
+
+    @Test
+    public void findsAllMatchesSequentiallyAndInParallel() throws IOException {
+        long[] expected = naive();
+        assertTrue(expected.length >= 6);
+        assertArrayEquals(expected, search(new SearchController(model, null, 1)));
+        assertArrayEquals(expected, search(new SearchController(model, pool, 4)));
+    }
+
+    @Test
+    public void findsRegexMatchesSequentiallyAndInParallel() throws IOException {
+        byte[] marker = "MARK".getBytes(StandardCharsets.US_ASCII);
+        for (int chunk = 1; chunk <= 5; chunk++) {
+            System.arraycopy(marker, 0, data, chunk * SearchController.CHUNK_SIZE - 2, marker.length);
+        }
+        Files.write(file.toPath(), data);
+        model.close();
+        model = new HexFileModel(file, FileBackend.Kind.CACHED, PageCache.DEFAULT_BUDGET, false);
+        TextPattern regex = TextPattern.regex("MA[R]K", TextPattern.Encoding.ASCII, false);
+        long[] expected = new long[5];
+        for (int chunk = 1; chunk <= 5; chunk++) {
+            expected[chunk - 1] = chunk * SearchController.CHUNK_SIZE - 2;
+        }
+        assertArrayEquals(expected, search(new SearchController(model, null, 1), regex));
+        assertArrayEquals(expected, search(new SearchController(model, pool, 4), regex));
+    }
+
+    /**
+     * Серия длиннее нескольких {@link TextPattern#MAX_MATCH} через стык блоков
+     * выдается частями не длиннее предела и покрывается целиком.
+     */
+    @Test
+    public void longRegexRunIsCappedAcrossChunks() throws IOException {
+        int runStart = SearchController.CHUNK_SIZE - 100_000;
+        int runEnd = SearchController.CHUNK_SIZE + 100_000;
+        Arrays.fill(data, runStart, runEnd, (byte) 'Z');
+        Files.write(file.toPath(), data);
+        model.close();
+        model = new HexFileModel(file, FileBackend.Kind.CACHED, PageCache.DEFAULT_BUDGET, false);
+        TextPattern regex = TextPattern.regex("Z+", TextPattern.Encoding.ASCII, false);
+        for (SearchController searcher : new SearchController[]{
+                new SearchController(model, null, 1), new SearchController(model, pool, 4)}) {
+            long[] covered = {runStart};
+            searcher.search(model.fileSnapshot(), regex, (offset, length) -> {
+                assertTrue("Длина " + length, length <= TextPattern.MAX_MATCH);
+                if (offset <= covered[0] && offset + length > covered[0]) {
+                    covered[0] = offset + length;
+                }
+            });
+            assertEquals(runEnd, covered[0]);
+        }
+    }
+
+    @Test
+    public void stopsReportingAfterCancel() throws IOException {
+        for (SearchController searcher : new SearchController[]{
+                new SearchController(model, null, 1), new SearchController(model, pool, 4)}) {
+            AtomicBoolean cancelled = new AtomicBoolean();
+            AtomicInteger afterCancel = new AtomicInteger();
+            searcher.search(new BytePattern(PATTERN, null), new SearchController.MatchListener() {
+                @Override
+                public void onMatch(long offset, int length) {
+                    if (cancelled.get()) {
+                        afterCancel.incrementAndGet();
+                    }
+                }
+
+                @Override
+                public void onProgress(long scanned, long total) {
+                    cancelled.set(true);
+                }
+
+                @Override
+                public boolean isCancelled() {
+                    return cancelled.get();
+                }
+            });
+            assertEquals("Совпадения после отмены", 0, afterCancel.get());
+        }
+    }
+
+    /**
+     * Поиск по индексу проверяет отмену после каждого блока, а не после
+     * каждого диапазона: диапазон-кандидат здесь длиннее двух блоков.
+     */
+    @Test
+    public void indexedSearchStopsWithinLongRange() throws IOException {
+        byte[] marker = "INDEXED!".getBytes(StandardCharsets.US_ASCII);
+        byte[] sparse = new byte[6 * SearchController.CHUNK_SIZE];
+        int planted = 0;
+        for (int i = SearchController.CHUNK_SIZE; i < 3 * SearchController.CHUNK_SIZE; i += 1024) {
+            System.arraycopy(marker, 0, sparse, i, marker.length);
+            planted++;
+        }
+        File indexed = folder.newFile("indexed.bin");
+        Files.write(indexed.toPath(), sparse);
+        BytePattern pattern = new BytePattern(marker, null);
+        HexFileModel sparseModel = new HexFileModel(indexed, FileBackend.Kind.CACHED, PageCache.DEFAULT_BUDGET, false);
+        try {
+            GramIndex index = GramIndex.build(sparseModel.fileSnapshot(), indexed, new FileSaver.Progress() {
+                @Override
+                public void update(long written, long total) {
+                }
+
+                @Override
+                public boolean isCancelled() {
+                    return false;
+                }
+            });
+            assertTrue(sparseModel.setIndex(index));
+            long[] ranges = index.candidates(sparseModel.snapshot(), pattern);
+            assertTrue(ranges != null && ranges[1] - ranges[0] >= 2L * SearchController.CHUNK_SIZE);
+
+            AtomicInteger progress = new AtomicInteger();
+            long found = new SearchController(sparseModel, null, 1).search(pattern, new SearchController.MatchListener() {
+                @Override
+                public void onMatch(long offset, int length) {
+                }
+
+                @Override
+                public void onProgress(long scanned, long total) {
+                    progress.incrementAndGet();
+                }
+            });
+            assertEquals(planted, found);
+            assertTrue("Прогресс по блокам", progress.get() > 2);
+
+            AtomicBoolean cancelled = new AtomicBoolean();
+            AtomicInteger matches = new AtomicInteger();
+            AtomicInteger afterCancel = new AtomicInteger();
+            new SearchController(sparseModel, null, 1).search(pattern, new SearchController.MatchListener() {
+                @Override
+                public void onMatch(long offset, int length) {
+                    matches.incrementAndGet();
+                    if (cancelled.get()) {
+                        afterCancel.incrementAndGet();
+                    }
+                }
+
+                @Override
+                public void onProgress(long scanned, long total) {
+                    cancelled.set(true);
+                }
+
+                @Override
+                public boolean isCancelled() {
+                    return cancelled.get();
+                }
+            });
+            assertEquals("Совпадения после отмены", 0, afterCancel.get());
+            assertTrue("Остановка внутри диапазона", matches.get() < planted);
+        } finally {
+            sparseModel.close();
+        }
+    }
+
+    private long[] search(SearchController searcher) throws IOException {
+        long[][] found = {new long[0]};
+        searcher.search(new BytePattern(PATTERN, null), (offset, length) -> {
+            found[0] = Arrays.copyOf(found[0], found[0].length + 1);
+            found[0][found[0].length - 1] = offset;
+        });
+        return found[0];
+    }
+
+    private long[] search(SearchController searcher, TextPattern pattern) throws IOException {
+        long[][] found = {new long[0]};
+        searcher.search(model.fileSnapshot(), pattern, (offset, length) -> {
+            found[0] = Arrays.copyOf(found[0], found[0].length + 1);
+            found[0][found[0].length - 1] = offset;
+        });
+        return found[0];
+    }
+
+    private long[] naive() {
+        long[] found = new long[0];
+        for (int i = 0; i + PATTERN.length <= data.length; i++) {
+            if (data[i] == PATTERN[0] && data[i + 1] == PATTERN[1] && data[i + 2] == PATTERN[2]) {
+                found = Arrays.copyOf(found, found.length + 1);
+                found[found.length - 1] = i;
+            }
+        }
+        return found;
+    }
+}
@@ -0,0 +1,129 @@
+package com.example.hexeditor;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Скорость поиска набора сигнатур за один проход. Одна операция — один МиБ
+ * данных, поэтому результат в ops/s — это МиБ/с (ГБ/с — результат / 1024).
+ * {@code scan} — автомат {@link SignatureSet} по буферу в памяти в одном потоке,
+ * {@code searchFile} — {@link SearchController#searchSignatures} по файлу
+ * с тем же содержимым на пуле по умолчанию (зависимость от числа потоков —
+ * в {@link SearchControllerBenchmark}).
+ * Набор — известные магические числа, дополненные случайными сигнатурами
+ * длиной 4–16 байт, часть из них с пропусками {@code ??} и масками полубайт.
+ * Запуск: {@code mvn -P jmh test-compile exec:exec -Djmh.args="SignatureSetBenchmark"}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SignatureSetBenchmark {
+    private static final int SIZE_MIB = 64;
+    private static final int SIZE = SIZE_MIB * 1024 * 1024;
+    private static final String[] MAGIC = {
+            "4D 5A", "50 4B 03 04", "7F 45 4C 46", "25 50 44 46 2D", "89 50 4E 47 0D 0A 1A 0A",
+            "CA FE BA BE", "FF D8 FF", "47 49 46 38 ?? 61", "1F 8B 08", "52 61 72 21 1A 07",
+            "37 7A BC AF 27 1C", "50 45 00 00 4C 01", "50 45 00 00 64 86", "D0 CF 11 E0 A1 B1 1A E1"
+    };
+
+    @Param({"10", "100", "500"})
+    public int signatures;
+
+    private byte[] data;
+    private SignatureSet set;
+    private File file;
+    private HexFileModel model;
+    private SearchController searcher;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        Random random = new Random(1);
+        data = new byte[SIZE];
+        random.nextBytes(data);
+        List<SignatureSet.Signature> list = new ArrayList<>();
+        for (int i = 0; i < signatures; i++) {
+            String hex = i < MAGIC.length ? MAGIC[i] : randomSignature(random);
+            list.add(SignatureSet.parse("s" + i, hex));
+        }
+        set = new SignatureSet(list);
+        file = File.createTempFile("signature-bench", ".bin");
+        Files.write(file.toPath(), data);
+        model = new HexFileModel(file, FileBackend.Kind.CACHED, PageCache.DEFAULT_BUDGET, false);
+        searcher = new SearchController(model);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        model.close();
+        Files.delete(file.toPath());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIZE_MIB)
+    public int scan() {
+        int[] found = {0};
+        set.scan(data, SIZE, SIZE, (position, signature) -> found[0]++);
+        return found[0];
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIZE_MIB)
+    public long searchFile() throws IOException {
+        AtomicLong last = new AtomicLong();
+        searcher.searchSignatures(set, new SearchController.SignatureListener() {
+            @Override
+            public void onMatch(long offset, int length) {
+                last.set(offset);
+            }
+
+            @Override
+            public void onSignature(int signature, long offset) {
+            }
+        });
+        return last.get();
+    }
+
+    /**
+     * @return случайная сигнатура: байты, пропуски {@code ??} и байты с маской полубайта
+     */
+    private static String randomSignature(Random random) {
+        int length = 4 + random.nextInt(13);
+        StringBuilder hex = new StringBuilder();
+        for (int j = 0; j < length; j++) {
+            int kind = j == 0 ? 0 : random.nextInt(10);
+            String value = String.format("%02X", random.nextInt(256));
+            if (kind == 8) {
+                hex.append("??");
+            } else if (kind == 9) {
+                hex.append(value.charAt(0)).append('?');
+            } else {
+                hex.append(value);
+            }
+            hex.append(' ');
+        }
+        return hex.toString();
+    }
+}
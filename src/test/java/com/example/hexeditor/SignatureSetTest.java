@@ -0,0 +1,165 @@
+package com.example.hexeditor;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * Автомат {@link SignatureSet} сверяется с поиском каждой сигнатуры отдельно
+ * через {@link BytePattern#indexOf} на случайных данных с вставленными
+ * совпадениями. Набор содержит сигнатуры, фрагменты которых являются
+ * суффиксами друг друга (совпадения по ссылкам неудач), дубликаты,
+ * фрагменты из одного байта, маски полубайт, сигнатуры без байт с полной
+ * маской и фрагменты длиннее {@link SignatureSet#MAX_FRAGMENT}.
+ */
+public class SignatureSetTest {
+    private static final int SIZE = 20000;
+    /** Хвост буфера за length: совпадения в нем не выдаются */
+    private static final int TAIL = 64;
+
+    private static final String[] FIXED = {
+            "41 42 43 44", "42 43 44", "43 44", "44", "41 42 41 42", "41 42 43 44",
+            "4? 41 ?? 42 43", "?? 43 ??", "45 ?? ?? 45", "?1 ?2", "4? 4?", "?? ??",
+            "41 42 43 44 45 41 42 43 44 45 41 42 43 44 45 41 42 43 44 45"
+    };
+
+    @Test
+    public void scanMatchesPerSignatureSearchOnSmallAlphabet() {
+        Random random = new Random(21);
+        SignatureSet set = new SignatureSet(signatures(random));
+        for (int round = 0; round < 5; round++) {
+            byte[] data = data(random, set, true);
+            checkEdges(set, data);
+        }
+    }
+
+    @Test
+    public void scanMatchesPerSignatureSearchOnRandomBytes() {
+        Random random = new Random(22);
+        SignatureSet set = new SignatureSet(signatures(random));
+        for (int round = 0; round < 5; round++) {
+            byte[] data = data(random, set, false);
+            checkEdges(set, data);
+        }
+    }
+
+    /**
+     * Совпадения всех сигнатур, фрагменты которых заканчиваются в одном
+     * состоянии, выдаются каждое; дубликат дает отдельное совпадение.
+     */
+    @Test
+    public void suffixFragmentsAreAllReported() {
+        List<SignatureSet.Signature> list = new ArrayList<>();
+        for (int k = 0; k < 6; k++) {
+            list.add(SignatureSet.parse("s" + k, FIXED[k]));
+        }
+        SignatureSet set = new SignatureSet(list);
+        byte[] data = {0x41, 0x42, 0x43, 0x44};
+        List<Long> found = new ArrayList<>();
+        assertEquals(5, set.scan(data, data.length, data.length, (position, signature) ->
+                found.add((long) position << 16 | signature)));
+        Long[] sorted = found.toArray(new Long[0]);
+        Arrays.sort(sorted);
+        assertArrayEquals(new Long[]{0L, 5L, 1L << 16 | 1, 2L << 16 | 2, 3L << 16 | 3}, sorted);
+    }
+
+    private static void checkEdges(SignatureSet set, byte[] data) {
+        int length = data.length - TAIL;
+        int[][] bounds = {
+                {length, length}, {length - 7, length}, {length, length - 3}, {length - 10, length - 10},
+                {0, length}, {1, 1}, {length / 2, length / 2 + 5}
+        };
+        for (int[] bound : bounds) {
+            assertArrayEquals("limit " + bound[0] + ", length " + bound[1],
+                    expected(set, data, bound[0], bound[1]), actual(set, data, bound[0], bound[1]));
+        }
+    }
+
+    private static long[] expected(SignatureSet set, byte[] data, int limit, int length) {
+        List<Long> found = new ArrayList<>();
+        for (int k = 0; k < set.size(); k++) {
+            BytePattern pattern = set.get(k).getPattern();
+            for (int i = pattern.indexOf(data, 0, length); i >= 0 && i < limit; i = pattern.indexOf(data, i + 1, length)) {
+                found.add((long) i << 16 | k);
+            }
+        }
+        return sorted(found);
+    }
+
+    private static long[] actual(SignatureSet set, byte[] data, int limit, int length) {
+        List<Long> found = new ArrayList<>();
+        int count = set.scan(data, limit, length, (position, signature) -> {
+            assertTrue("Позиция " + position, position >= 0 && position < limit
+                    && position + set.get(signature).length() <= length);
+            found.add((long) position << 16 | signature);
+        });
+        assertEquals(found.size(), count);
+        return sorted(found);
+    }
+
+    private static long[] sorted(List<Long> found) {
+        return found.stream().mapToLong(Long::longValue).sorted().toArray();
+    }
+
+    /**
+     * Фиксированный набор и случайные сигнатуры над алфавитом A..E с масками
+     * байт и полубайт.
+     */
+    private static List<SignatureSet.Signature> signatures(Random random) {
+        List<SignatureSet.Signature> list = new ArrayList<>();
+        for (String hex : FIXED) {
+            list.add(SignatureSet.parse("s" + list.size(), hex));
+        }
+        for (int k = 0; k < 40; k++) {
+            int length = 2 + random.nextInt(7);
+            byte[] pattern = new byte[length];
+            byte[] mask = new byte[length];
+            for (int j = 0; j < length; j++) {
+                pattern[j] = (byte) (0x41 + random.nextInt(5));
+                int kind = random.nextInt(6);
+                mask[j] = (byte) (kind == 0 ? 0x00 : kind == 1 ? 0xF0 : kind == 2 ? 0x0F : 0xFF);
+            }
+            list.add(new SignatureSet.Signature("r" + k, pattern, mask));
+        }
+        return list;
+    }
+
+    /**
+     * Данные длиной SIZE + TAIL: байты алфавита A..E или случайные байты;
+     * поверх вставлены экземпляры сигнатур, в том числе в начале, у конца
+     * данных и за ним.
+     */
+    private static byte[] data(Random random, SignatureSet set, boolean smallAlphabet) {
+        byte[] data = new byte[SIZE + TAIL];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = smallAlphabet && random.nextInt(10) > 0
+                    ? (byte) (0x41 + random.nextInt(5)) : (byte) random.nextInt(256);
+        }
+        for (int n = 0; n < 300; n++) {
+            plant(random, set.get(random.nextInt(set.size())), data, random.nextInt(data.length));
+        }
+        for (int k = 0; k < set.size(); k++) {
+            plant(random, set.get(k), data, 0);
+            plant(random, set.get(k), data, SIZE - set.get(k).length() - random.nextInt(3));
+            plant(random, set.get(k), data, SIZE - 1 - random.nextInt(3));
+        }
+        return data;
+    }
+
+    /**
+     * Записывает экземпляр сигнатуры: байты вне маски случайны.
+     */
+    private static void plant(Random random, SignatureSet.Signature signature, byte[] data, int position) {
+        BytePattern pattern = signature.getPattern();
+        for (int j = 0; j < pattern.length() && position + j < data.length; j++) {
+            int mask = pattern.maskAt(j) & 0xFF;
+            data[position + j] = (byte) (pattern.valueAt(j) & mask | random.nextInt(256) & ~mask);
+        }
+    }
+}
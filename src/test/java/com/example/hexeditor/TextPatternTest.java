@@ -0,0 +1,83 @@
+package com.example.hexeditor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+
+/**
+ * Регулярные выражения: совпадение не длиннее {@link TextPattern#MAX_MATCH} байт,
+ * длинная серия выдается частями подряд, границы окна поиска не видны выражению.
+ */
+public class TextPatternTest {
+    private static final int MAX = TextPattern.MAX_MATCH;
+
+    @Test
+    public void longAsciiRunIsSplitAtMaxMatch() {
+        byte[] data = new byte[3 * MAX + 1000];
+        assertPieces(find("\\x00+", TextPattern.Encoding.ASCII, data), 0, data.length, MAX);
+    }
+
+    @Test
+    public void longUtf16RunIsSplitAtMaxMatch() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 2 * MAX; i++) {
+            text.append('A');
+        }
+        byte[] data = text.toString().getBytes(StandardCharsets.UTF_16LE);
+        assertPieces(find("A+", TextPattern.Encoding.UTF16LE, data), 0, data.length, MAX);
+    }
+
+    @Test
+    public void longUtf8RunIsSplitOnCharacterBoundaries() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < MAX; i++) {
+            text.append('€');
+        }
+        byte[] data = text.toString().getBytes(StandardCharsets.UTF_8);
+        // три байта на символ: наибольшая часть — 21845 символов, 65535 байт
+        assertPieces(find("€+", TextPattern.Encoding.UTF8, data), 0, data.length, MAX / 3 * 3);
+    }
+
+    @Test
+    public void boundsDoNotAnchorOrHideContext() {
+        byte[] data = new byte[3 * MAX];
+        Arrays.fill(data, (byte) 'a');
+        data[2 * MAX + 10] = 'b';
+        // просмотр назад видит символ перед окном, ^ не совпадает на границе окна
+        List<long[]> found = find("(?<=a)b", TextPattern.Encoding.ASCII, data);
+        assertEquals(1, found.size());
+        assertEquals(2 * MAX + 10, found.get(0)[0]);
+        assertEquals(1, find("^a", TextPattern.Encoding.ASCII, data).size());
+    }
+
+    private static List<long[]> find(String regex, TextPattern.Encoding encoding, byte[] data) {
+        TextPattern pattern = TextPattern.regex(regex, encoding, false);
+        List<long[]> found = new ArrayList<>();
+        pattern.find(data, 0, data.length, data.length, new char[data.length],
+                (position, length) -> found.add(new long[]{position, length}));
+        return found;
+    }
+
+    /**
+     * Проверяет, что части идут подряд, покрывают [from, to) и все, кроме последней, длины piece.
+     */
+    private static void assertPieces(List<long[]> found, long from, long to, int piece) {
+        assertTrue(found.size() > 1);
+        long next = from;
+        for (int i = 0; i < found.size(); i++) {
+            long[] match = found.get(i);
+            assertEquals(next, match[0]);
+            assertTrue("Длина " + match[1], match[1] <= MAX);
+            if (i < found.size() - 1) {
+                assertEquals(piece, match[1]);
+            }
+            next = match[0] + match[1];
+        }
+        assertEquals(to, next);
+    }
+}
@@ -0,0 +1,187 @@
+package com.example.hexeditor;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.util.Random;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Восстановление по журналу упреждающей записи после сбоя посреди операции
+ * прямой записи. Сбой изображает бэкенд, который после заданного числа записей
+ * пишет половину очередного блока и бросает исключение; журнал копируется
+ * в этот момент, а после закрытия модели возвращается на место, как будто
+ * процесс завершился, не успев его удалить.
+ */
+public class WriteAheadLogRecoveryTest {
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Правки таблицы фрагментов, отмененные до переключения режима, не должны
+     * остаться в начале журнала: иначе прерванная замена на месте не доводится
+     * до конца, и в файле остается половина записи.
+     */
+    @Test
+    public void tornWriteAfterModeSwitchIsFinished() throws IOException {
+        byte[] data = random(256 * 1024, 1);
+        File file = write(data);
+        CrashingBackend backend = new CrashingBackend(file);
+        HexFileModel model = new HexFileModel(file, backend, true);
+        model.insertBytes(1000, new byte[]{1, 2, 3}, false);
+        model.deleteBytes(5000, 100, true);
+        assertTrue(model.undo());
+        assertTrue(model.undo());
+        assertFalse(model.isModified());
+        model.setEditMode(HexFileModel.EditMode.WRITE_THROUGH);
+
+        byte[] replacement = random(8192, 2);
+        long position = 70_000;
+        byte[] wal = crash(model, backend, file, 0, () -> model.insertBytes(position, replacement, true));
+
+        byte[] expected = data.clone();
+        System.arraycopy(replacement, 0, expected, (int) position, replacement.length);
+        assertRecovered(file, wal, expected);
+    }
+
+    /**
+     * Вставка со сдвигом хвоста, прерванная после первого перенесенного блока,
+     * продолжается с места остановки.
+     */
+    @Test
+    public void interruptedShiftIsFinished() throws IOException {
+        byte[] data = random(2 * HexFileModel.MOVE_BLOCK_SIZE + 12345, 3);
+        File file = write(data);
+        CrashingBackend backend = new CrashingBackend(file);
+        HexFileModel model = new HexFileModel(file, backend, true);
+        model.setEditMode(HexFileModel.EditMode.WRITE_THROUGH);
+
+        byte[] inserted = random(5000, 4);
+        long position = 100;
+        byte[] wal = crash(model, backend, file, 1, () -> model.insertBytes(position, inserted, false));
+
+        byte[] expected = new byte[data.length + inserted.length];
+        System.arraycopy(data, 0, expected, 0, (int) position);
+        System.arraycopy(inserted, 0, expected, (int) position, inserted.length);
+        System.arraycopy(data, (int) position, expected, (int) position + inserted.length, data.length - (int) position);
+        assertRecovered(file, wal, expected);
+    }
+
+    /**
+     * Выполняет правку, которая обрывается сбоем после writes успешных записей.
+     *
+     * @return содержимое журнала в момент сбоя
+     */
+    private static byte[] crash(HexFileModel model, CrashingBackend backend, File file, int writes, Edit edit)
+            throws IOException {
+        backend.crashAfter(writes);
+        try {
+            edit.apply();
+            fail("Сбой не произошел");
+        } catch (IOException expected) {
+            // сбой посреди операции
+        }
+        byte[] wal = Files.readAllBytes(walOf(file).toPath());
+        model.close();
+        return wal;
+    }
+
+    private static void assertRecovered(File file, byte[] wal, byte[] expected) throws IOException {
+        Files.write(walOf(file).toPath(), wal);
+        HexFileModel recovered = new HexFileModel(file, FileBackend.Kind.CACHED, PageCache.DEFAULT_BUDGET, true);
+        try {
+            assertFalse(recovered.hasRecoverableEdits());
+            assertArrayEquals(expected, recovered.readAll());
+        } finally {
+            recovered.close();
+        }
+        assertArrayEquals(expected, Files.readAllBytes(file.toPath()));
+    }
+
+    private File write(byte[] data) throws IOException {
+        File file = folder.newFile("data.bin");
+        Files.write(file.toPath(), data);
+        return file;
+    }
+
+    private static File walOf(File file) {
+        return new File(file.getPath() + WriteAheadLog.SUFFIX);
+    }
+
+    private static byte[] random(int length, long seed) {
+        byte[] bytes = new byte[length];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+
+    private interface Edit {
+        void apply() throws IOException;
+    }
+
+    /**
+     * Бэкенд, запись которого обрывается на середине после заданного числа записей.
+     */
+    private static final class CrashingBackend implements FileBackend {
+        private final FileBackend delegate;
+        private int writesLeft = -1;
+
+        CrashingBackend(File file) throws IOException {
+            this.delegate = new CachedFileBackend(file, PageCache.DEFAULT_BUDGET);
+        }
+
+        void crashAfter(int writes) {
+            writesLeft = writes;
+        }
+
+        @Override
+        public long length() throws IOException {
+            return delegate.length();
+        }
+
+        @Override
+        public int read(long position, byte[] dst, int off, int len) throws IOException {
+            return delegate.read(position, dst, off, len);
+        }
+
+        @Override
+        public void write(long position, byte[] src, int off, int len) throws IOException {
+            if (writesLeft == 0) {
+                writesLeft = -1;
+                delegate.write(position, src, off, len / 2);
+                throw new IOException("Сбой записи на позиции " + position);
+            }
+            if (writesLeft > 0) {
+                writesLeft--;
+            }
+            delegate.write(position, src, off, len);
+        }
+
+        @Override
+        public void setLength(long length) throws IOException {
+            delegate.setLength(length);
+        }
+
+        @Override
+        public void force() throws IOException {
+            delegate.force();
+        }
+
+        @Override
+        public void transferTo(long position, long count, WritableByteChannel target) throws IOException {
+            delegate.transferTo(position, count, target);
+        }
+
+        @Override
+        public void close() throws IOException {
+            delegate.close();
+        }
+    }
+}
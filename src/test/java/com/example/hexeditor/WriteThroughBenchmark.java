@@ -0,0 +1,99 @@
+package com.example.hexeditor;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Правки в режиме прямой записи на большом файле: вставка и удаление у начала
+ * файла сдвигают весь хвост ({@link #sizeMiB} МиБ), обнуление затирает
+ * {@link #ZERO_LENGTH} байт без сдвига. Каждая операция выполняется один раз
+ * за итерацию; скорость сдвига — sizeMiB / время. Вставки и удаления
+ * чередуются по итерациям, поэтому длина файла почти не меняется.
+ * В измеренное время входит и сохранение затираемых данных в журнал отмены
+ * (его глубина ограничена, чтобы файл журнала не рос от итерации к итерации).
+ * Запуск: {@code mvn -P jmh test-compile exec:exec -Djmh.args="WriteThroughBenchmark"};
+ * файл создается во временном каталоге, нужно около 1 ГиБ свободного места.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 6)
+@Fork(value = 1, jvmArgsAppend = "-Dhexeditor.undo.limit=4")
+public class WriteThroughBenchmark {
+    /** Позиция правки: у начала файла, чтобы сдвигался почти весь файл */
+    private static final long POSITION = 4096;
+    private static final int EDIT_LENGTH = 4096;
+    private static final long ZERO_LENGTH = 64L * 1024 * 1024;
+
+    @Param({"1024"})
+    public int sizeMiB;
+
+    @Param({"CACHED", "MAPPED"})
+    public FileBackend.Kind kind;
+
+    private File file;
+    private HexFileModel model;
+    private byte[] edit;
+    private boolean inserted;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        file = File.createTempFile("write-through-bench", ".bin");
+        byte[] block = new byte[1024 * 1024];
+        Random random = new Random(1);
+        try (OutputStream out = Files.newOutputStream(file.toPath())) {
+            for (int i = 0; i < sizeMiB; i++) {
+                random.nextBytes(block);
+                out.write(block);
+            }
+        }
+        model = new HexFileModel(file, kind, HexFileModel.CACHE_BUDGET, false);
+        model.setEditMode(HexFileModel.EditMode.WRITE_THROUGH);
+        edit = new byte[EDIT_LENGTH];
+        random.nextBytes(edit);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        model.close();
+        Files.delete(file.toPath());
+    }
+
+    /**
+     * Вставка или удаление (по очереди) с сдвигом хвоста.
+     */
+    @Benchmark
+    public long shiftTail() throws IOException {
+        if (inserted) {
+            model.deleteBytes(POSITION, EDIT_LENGTH, true);
+        } else {
+            model.insertBytes(POSITION, edit, false);
+        }
+        inserted = !inserted;
+        return model.getLength();
+    }
+
+    @Benchmark
+    public long zeroFill() throws IOException {
+        model.deleteBytes(POSITION, ZERO_LENGTH, false);
+        return model.getLength();
+    }
+}